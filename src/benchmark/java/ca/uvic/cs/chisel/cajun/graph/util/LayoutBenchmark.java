@@ -0,0 +1,153 @@
+package ca.uvic.cs.chisel.cajun.graph.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.zest.layouts.InvalidLayoutConfiguration;
+import org.eclipse.zest.layouts.LayoutAlgorithm;
+import org.eclipse.zest.layouts.LayoutEntity;
+import org.eclipse.zest.layouts.LayoutStyles;
+import org.eclipse.zest.layouts.algorithms.SpringLayoutAlgorithm;
+
+import ca.uvic.cs.chisel.cajun.graph.arc.DefaultGraphArc;
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.layout.ForceDirectedLayoutAlgorithm;
+import ca.uvic.cs.chisel.cajun.graph.layout.LayoutArrays;
+import ca.uvic.cs.chisel.cajun.graph.layout.LayoutSnapshot;
+import ca.uvic.cs.chisel.cajun.graph.layout.MultilevelLayoutAlgorithm;
+import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNodeStyle;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNodeStyle;
+import ca.uvic.cs.chisel.cajun.graph.node.LightweightGraphNode;
+
+/**
+ * Prints how long the {@link SpringLayoutAlgorithm}, {@link ForceDirectedLayoutAlgorithm} and
+ * {@link MultilevelLayoutAlgorithm} take to lay out random graphs, and the stress of each layout.
+ * The arguments are the graph sizes (default 500, 2000 and 10000 nodes).  Each graph is a random
+ * tree with an extra arc for every tenth node, which is roughly the shape of an ontology.
+ * <p>
+ * The stress compares the distances in the layout with the number of arcs between the nodes, after
+ * scaling the layout to fit them best.  0 is a perfect fit, lower is better.  It is measured from a
+ * sample of source nodes.  The spring layout takes O(n<sup>2</sup>) time per iteration, so it
+ * is skipped on graphs with more than {@link #SPRING_LIMIT} nodes.
+ * Run it with <code>java -Djava.awt.headless=true -Xmx1g ...</code>
+ */
+public class LayoutBenchmark {
+
+	private static final int[] DEFAULT_SIZES = { 500, 2000, 10000 };
+	private static final int SPRING_LIMIT = 2000;
+	private static final int STRESS_SOURCES = 50;
+	private static final long SEED = 42L;
+
+	public static void main(String[] args) throws InvalidLayoutConfiguration {
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		for (int size : sizes) {
+			List<GraphNode> nodes = new ArrayList<GraphNode>(size);
+			List<GraphArc> arcs = new ArrayList<GraphArc>();
+			createGraph(size, nodes, arcs);
+			System.out.println(size + " nodes, " + arcs.size() + " arcs");
+			if (size <= SPRING_LIMIT) {
+				report("Spring", new SpringLayoutAlgorithm(LayoutStyles.NO_LAYOUT_NODE_RESIZING), nodes, arcs);
+			} else {
+				System.out.println("  Spring: skipped");
+			}
+			report("Force Directed", new ForceDirectedLayoutAlgorithm(), nodes, arcs);
+			report("Multilevel", new MultilevelLayoutAlgorithm(), nodes, arcs);
+		}
+	}
+
+	private static void createGraph(int size, List<GraphNode> nodes, List<GraphArc> arcs) {
+		Random random = new Random(SEED);
+		GraphNodeStyle style = new DefaultGraphNodeStyle();
+		for (int i = 0; i < size; i++) {
+			nodes.add(new LightweightGraphNode(Integer.valueOf(i), "Node " + i, null, null, style));
+		}
+		for (int i = 1; i < size; i++) {
+			arcs.add(new DefaultGraphArc(Integer.valueOf(i), nodes.get(random.nextInt(i)), nodes.get(i)));
+		}
+		for (int i = 0; i < size / 10; i++) {
+			GraphNode src = nodes.get(random.nextInt(size));
+			GraphNode dest = nodes.get(random.nextInt(size));
+			arcs.add(new DefaultGraphArc(Integer.valueOf(size + i), src, dest));
+		}
+	}
+
+	private static void report(String name, LayoutAlgorithm layout, Collection<GraphNode> nodes, Collection<GraphArc> arcs) throws InvalidLayoutConfiguration {
+		LayoutSnapshot snapshot = new LayoutSnapshot(nodes, arcs);
+		long start = System.currentTimeMillis();
+		layout.applyLayout(snapshot.getEntities(), snapshot.getRelationships(), 0, 0, 1000, 1000, false, false);
+		long time = System.currentTimeMillis() - start;
+		System.out.println("  " + name + ": " + time + " ms, stress " + getStress(snapshot));
+	}
+
+	/**
+	 * @return the mean of ((s * distance - hops) / hops)^2 over the sampled pairs, where s is the
+	 * scale that makes it smallest
+	 */
+	private static double getStress(LayoutSnapshot snapshot) {
+		LayoutArrays graph = new LayoutArrays(snapshot.getEntities(), snapshot.getRelationships());
+		int count = graph.getNodeCount();
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
+		int[] hops = new int[count];
+		int[] queue = new int[count];
+		Random random = new Random(SEED);
+		// sums of d/g, (d/g)^2 and the number of pairs
+		double ratio = 0, ratioSquared = 0;
+		long pairs = 0;
+		List<double[]> samples = new ArrayList<double[]>();
+		for (int s = 0; s < Math.min(STRESS_SOURCES, count); s++) {
+			int source = random.nextInt(count);
+			Arrays.fill(hops, -1);
+			hops[source] = 0;
+			queue[0] = source;
+			int head = 0, tail = 1;
+			while (head < tail) {
+				int node = queue[head++];
+				for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+					int neighbour = neighbours[e];
+					if (hops[neighbour] < 0) {
+						hops[neighbour] = hops[node] + 1;
+						queue[tail++] = neighbour;
+					}
+				}
+			}
+			double[] r = new double[tail - 1];
+			for (int i = 1; i < tail; i++) {
+				int node = queue[i];
+				r[i - 1] = getDistance(graph.getEntity(source), graph.getEntity(node)) / hops[node];
+				ratio += r[i - 1];
+				ratioSquared += r[i - 1] * r[i - 1];
+			}
+			pairs += r.length;
+			samples.add(r);
+		}
+		if ((pairs == 0) || (ratioSquared == 0)) {
+			return 0;
+		}
+		double scale = ratio / ratioSquared;
+		double stress = 0;
+		for (double[] r : samples) {
+			for (double value : r) {
+				stress += (scale * value - 1) * (scale * value - 1);
+			}
+		}
+		return stress / pairs;
+	}
+
+	private static double getDistance(LayoutEntity a, LayoutEntity b) {
+		double dx = (a.getXInLayout() + a.getWidthInLayout() / 2) - (b.getXInLayout() + b.getWidthInLayout() / 2);
+		double dy = (a.getYInLayout() + a.getHeightInLayout() / 2) - (b.getYInLayout() + b.getHeightInLayout() / 2);
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+}
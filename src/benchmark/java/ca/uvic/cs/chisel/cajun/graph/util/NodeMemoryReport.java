@@ -0,0 +1,69 @@
+package ca.uvic.cs.chisel.cajun.graph.util;
+
+import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNode;
+import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNodeStyle;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNodeStyle;
+import ca.uvic.cs.chisel.cajun.graph.node.LightweightGraphNode;
+
+/**
+ * Prints the approximate heap used per node for {@link DefaultGraphNode} and
+ * {@link LightweightGraphNode}, and how long it takes to create them.
+ * The first argument is the number of nodes to create (default 20000).
+ * <p>
+ * The numbers are measured from the used heap after garbage collection, so run it with
+ * nothing else going on in the JVM, e.g. <code>java -Djava.awt.headless=true ...</code>
+ */
+public class NodeMemoryReport {
+
+	private static final int DEFAULT_COUNT = 20000;
+
+	public static void main(String[] args) {
+		int count = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COUNT);
+		// load the classes and fonts first
+		createNodes(false, 10);
+		createNodes(true, 10);
+
+		report("DefaultGraphNode", false, count);
+		report("LightweightGraphNode", true, count);
+	}
+
+	private static void report(String name, boolean lightweight, int count) {
+		long before = getUsedMemory();
+		long start = System.currentTimeMillis();
+		GraphNode[] nodes = createNodes(lightweight, count);
+		long time = System.currentTimeMillis() - start;
+		long after = getUsedMemory();
+		System.out.println(name + ": " + ((after - before) / count) + " bytes per node, " + time + " ms to create " + nodes.length + " nodes");
+	}
+
+	private static GraphNode[] createNodes(boolean lightweight, int count) {
+		GraphNode[] nodes = new GraphNode[count];
+		// the lightweight nodes share one style, like the nodes of a DefaultGraphModel
+		GraphNodeStyle style = new DefaultGraphNodeStyle();
+		for (int i = 0; i < count; i++) {
+			String text = "Node number " + i;
+			Object type = "Type " + (i % 5);
+			if (lightweight) {
+				nodes[i] = new LightweightGraphNode(Integer.valueOf(i), text, null, type, style);
+			} else {
+				nodes[i] = new DefaultGraphNode(Integer.valueOf(i), text, null, type);
+			}
+		}
+		return nodes;
+	}
+
+	private static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
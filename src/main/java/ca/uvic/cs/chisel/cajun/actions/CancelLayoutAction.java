@@ -0,0 +1,26 @@
+package ca.uvic.cs.chisel.cajun.actions;
+
+import ca.uvic.cs.chisel.cajun.graph.Graph;
+import ca.uvic.cs.chisel.cajun.resources.ResourceHandler;
+
+/**
+ * Cancels the layouts that are running in the background on the graph.
+ */
+public class CancelLayoutAction extends CajunAction {
+	private static final long serialVersionUID = 2207153524125926375L;
+
+	private Graph graph;
+
+	public CancelLayoutAction(Graph graph) {
+		super("Cancel Layout", ResourceHandler.getIcon("icon_close.gif"), "Cancel the layout");
+		this.graph = graph;
+	}
+
+	@Override
+	public void doAction() {
+		for (LayoutAction layout : graph.getLayouts()) {
+			layout.cancel();
+		}
+	}
+
+}
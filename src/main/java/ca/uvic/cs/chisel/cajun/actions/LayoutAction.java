@@ -4,40 +4,92 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.Icon;
+import javax.swing.SwingUtilities;
 
 import org.eclipse.zest.layouts.InvalidLayoutConfiguration;
 import org.eclipse.zest.layouts.LayoutAlgorithm;
+import org.eclipse.zest.layouts.LayoutEntity;
+import org.eclipse.zest.layouts.LayoutRelationship;
+import org.eclipse.zest.layouts.progress.ProgressEvent;
 import org.eclipse.zest.layouts.progress.ProgressListener;
 
 import ca.uvic.cs.chisel.cajun.graph.AbstractGraph;
+import ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel;
 import ca.uvic.cs.chisel.cajun.graph.Graph;
-import ca.uvic.cs.chisel.cajun.graph.arc.DefaultGraphArc;
+import ca.uvic.cs.chisel.cajun.graph.GraphModel;
 import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
-import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNode;
+import ca.uvic.cs.chisel.cajun.graph.layout.IncrementalLayoutAlgorithm;
+import ca.uvic.cs.chisel.cajun.graph.layout.LayoutComponents;
+import ca.uvic.cs.chisel.cajun.graph.layout.LayoutSnapshot;
+import ca.uvic.cs.chisel.cajun.graph.layout.NativeLayoutAlgorithm;
 import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
 import ca.uvic.cs.chisel.cajun.graph.util.ActivityManager;
+import ca.uvic.cs.chisel.cajun.util.ListenerList;
 import edu.umd.cs.piccolo.PCanvas;
 import edu.umd.cs.piccolo.PNode;
 import edu.umd.cs.piccolo.activities.PActivity;
 import edu.umd.cs.piccolo.activities.PTransformActivity;
 import edu.umd.cs.piccolo.util.PUtil;
 
+/**
+ * Runs a layout on the visible nodes.  The layout runs on a background thread against a
+ * {@link LayoutSnapshot} of the nodes and arcs, and the new locations are applied on the event
+ * dispatch thread once it is done.  Running a layout cancels any other layout that is running
+ * on the same graph.
+ * <p>
+ * In incremental mode only the nodes that have become visible since the last layout are moved.
+ * They are placed around their neighbours by an {@link IncrementalLayoutAlgorithm}, and the nodes
+ * that were already laid out stay where they are.
+ * <p>
+ * If the components are laid out separately, each connected component is laid out by its own
+ * instance of the layout algorithm, in parallel, and the components are then packed together.
+ */
 public class LayoutAction extends CajunAction {
 	private static final long serialVersionUID = -7385859217531335673L;
 	
 	private static final int MAX_NODES_TO_ANIMATE = 200;
 	private static final double DELTA = 0.01;
+	// the space between packed components
+	private static final double COMPONENT_SPACING = 20;
+	// a component is laid out in bounds with at least this many times the area of its nodes
+	private static final double COMPONENT_AREA_FACTOR = 4;
+
+	private static final int PROGRESS_STARTED = 0;
+	private static final int PROGRESS_UPDATED = 1;
+	private static final int PROGRESS_ENDED = 2;
+
+	// shared by all the layouts, created when the first layout runs
+	private static ExecutorService executor;
+	// lays out the connected components, one thread per processor
+	private static ExecutorService componentExecutor;
 
 	private LayoutAlgorithm layout;
 	private Graph graph;
 	private boolean animate;
 	private int maxNodesToAnimate = MAX_NODES_TO_ANIMATE;
 	private boolean resizeNodes;
+	private boolean incremental;
+	private boolean layoutComponents;
+	// the visible nodes after the last layout on the graph, or null if there hasn't been one
+	private Set<GraphNode> laidOutNodes;
 	
 	private ActivityManager manager;
+	private final ListenerList<ProgressListener> progressListeners;
+	// the layout that is running in the background, or null
+	private volatile LayoutTask task;
 
 	/** list of relationship types that the layout should be applied to */
 	private List<Object> layoutRelTypes;
@@ -54,7 +106,20 @@ public class LayoutAction extends CajunAction {
 		this.resizeNodes = false;
 		this.layoutRelTypes = new ArrayList<Object>();
 		
+		this.progressListeners = new ListenerList<ProgressListener>();
 		this.manager = new ActivityManager(graph.getCanvas(), graph.getCanvas().getRoot().getActivityScheduler());
+		// the layout is finished once the nodes stop moving
+		this.manager.addProgressListener(new ProgressListener() {
+			public void progressStarted(ProgressEvent e) {
+			}
+
+			public void progressUpdated(ProgressEvent e) {
+			}
+
+			public void progressEnded(ProgressEvent e) {
+				fireProgress(PROGRESS_ENDED, e);
+			}
+		});
 	}
 	
 	public LayoutAlgorithm getLayout() {
@@ -68,9 +133,58 @@ public class LayoutAction extends CajunAction {
 	public void setLayoutRelTypes(List<Object> layoutRelTypes) {
 		this.layoutRelTypes = layoutRelTypes;
 	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Sets whether the layout only places the nodes that were added since the last layout.
+	 * The first layout on the graph always lays out all the nodes.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isLayoutComponents() {
+		return layoutComponents;
+	}
+
+	/**
+	 * Sets whether each connected component is laid out on its own, in parallel, with the
+	 * components packed together afterwards.  Incremental layouts ignore this.
+	 */
+	public void setLayoutComponents(boolean layoutComponents) {
+		this.layoutComponents = layoutComponents;
+	}
 	
+	/**
+	 * Adds a listener that is notified on the event dispatch thread when the layout starts, as it
+	 * progresses, and when the nodes have been moved or the layout was cancelled.
+	 */
 	public void addProgressListener(ProgressListener listener) {
-		manager.addProgressListener(listener);
+		progressListeners.add(listener);
+	}
+
+	public void removeProgressListener(ProgressListener listener) {
+		progressListeners.remove(listener);
+	}
+
+	/**
+	 * @return true if the layout is running in the background
+	 */
+	public boolean isRunning() {
+		return (task != null);
+	}
+
+	/**
+	 * Stops the layout that is running in the background, the nodes aren't moved.
+	 */
+	public void cancel() {
+		LayoutTask current = task;
+		if (current != null) {
+			current.cancel();
+		}
 	}
 
 	public void doAction() {
@@ -79,26 +193,21 @@ public class LayoutAction extends CajunAction {
 		runLayout();
 	}
 	
+	/**
+	 * Starts the layout on a background thread.  The nodes are moved on the event dispatch thread
+	 * when the layout is done.
+	 */
 	public void runLayout() {
-		// run the layout only on the visible nodes?  Or all nodes?
-		Collection<GraphNode> nodes = graph.getModel().getVisibleNodes();
-		Collection<GraphArc> arcs = graph.getModel().getVisibleArcs();
-		DefaultGraphNode[] entities = nodes.toArray(new DefaultGraphNode[nodes.size()]);
-		
-		Collection<GraphArc> filteredArcs;
-		if (layoutRelTypes.isEmpty()) {
-			// no arcs in the list - so assume all arcs should be used in the layout
-			filteredArcs = arcs;
-		} else {
-			// remove arcs that have been filtered
-			filteredArcs = new ArrayList<GraphArc>();
-			for (GraphArc arc : arcs) {
-				if (layoutRelTypes.contains(arc.getType())) {
-					filteredArcs.add(arc);
-				}
-			}
+		// only one layout runs on the graph at a time
+		for (LayoutAction layout : graph.getLayouts()) {
+			layout.cancel();
 		}
-		DefaultGraphArc[] rels = filteredArcs.toArray(new DefaultGraphArc[filteredArcs.size()]);
+
+		// run the layout only on the visible nodes?  Or all nodes?
+		// the nodes and arcs are copied below, so the model's views don't need to be copied first
+		GraphModel model = graph.getModel();
+		Collection<GraphNode> nodes = (model instanceof DefaultGraphModel ?
+				((DefaultGraphModel) model).getVisibleNodesView() : model.getVisibleNodes());
 
 		PCanvas canvas = graph.getCanvas();
 
@@ -114,54 +223,192 @@ public class LayoutAction extends CajunAction {
 		if (h > 300) {
 			h -= 30;
 		}
-	
-		try {
-			// define a local version of the layout in order to avoid threading issues
-			LayoutAlgorithm layout = getLayoutAlgorithm();
-			layout.applyLayout(entities, rels, x, y, w, h, false, false);
-
-			if (animate && (nodes.size() > maxNodesToAnimate)) {
-				animate = false;
-			}
-
-			//PActivityScheduler scheduler = canvas.getRoot().getActivityScheduler();
-			ArrayList<PActivity> activities = new ArrayList<PActivity>(nodes.size());
-			
-			for (GraphNode node : nodes) {
-				if(!node.isFixedLocation()) {
-					if (animate) {
-						AffineTransform transform = createTransform(node);
-						PActivity activity = createActivity(node, transform);
-						if (activity != null) {
-							activities.add(activity);
-						}
-					} else {
-						node.setLocation(node.getXInLayout(), node.getYInLayout());
+
+		LayoutTask newTask;
+		if (incremental && (laidOutNodes != null)) {
+			newTask = createIncrementalTask(nodes, x, y, w, h);
+			if (newTask == null) {
+				// nothing new to place
+				return;
+			}
+		} else {
+			Collection<GraphArc> arcs = (model instanceof DefaultGraphModel ?
+					((DefaultGraphModel) model).getVisibleArcsView() : model.getVisibleArcs());
+			Collection<GraphArc> filteredArcs;
+			if (layoutRelTypes.isEmpty()) {
+				// no arcs in the list - so assume all arcs should be used in the layout
+				filteredArcs = arcs;
+			} else {
+				// remove arcs that have been filtered
+				filteredArcs = new ArrayList<GraphArc>();
+				for (GraphArc arc : arcs) {
+					if (layoutRelTypes.contains(arc.getType())) {
+						filteredArcs.add(arc);
 					}
 				}
 			}
-			
-			if (animate) {
-				//ActivityManager manager = new ActivityManager(canvas, scheduler, activities);
-				manager.setActivities(activities);
-				// wait until all nodes have finished moving
-				// @tag question : why did Chris put this in here?  it blocks the UI thread
-				//manager.waitForActivitiesToFinish();
-			} else {
-				canvas.repaint();
-			}
-			
-			// ensure that the first selected node is visible in the scroll pane
-//			Collection<GraphNode> selectedNodes = graph.getSelectedNodes();
-//			if (selectedNodes.size() > 0) {
-//				GraphNode first = selectedNodes.iterator().next();
-//				Rectangle2D bounds = first.getBounds();
-//				//graph.getCanvas().scrollRectToVisible(bounds.getBounds());
-//			}
-
-		} catch (InvalidLayoutConfiguration e) {
-			e.printStackTrace();
+			newTask = new LayoutTask(new ArrayList<GraphNode>(nodes), new LayoutSnapshot(nodes, filteredArcs),
+					x, y, w, h, false, layoutComponents, new HashSet<GraphNode>(nodes));
+		}
+		task = newTask;
+		getExecutor().execute(newTask);
+	}
+
+	/**
+	 * Creates the task that places the nodes that weren't visible in the last layout.  The
+	 * snapshot only has the new nodes, the laid out nodes they are connected to, and the
+	 * neighbours of those nodes so that the new nodes are kept away from them.  Everything except
+	 * the new nodes that aren't pinned is fixed.
+	 * @return the task, or null if there are no new nodes
+	 */
+	private LayoutTask createIncrementalTask(Collection<GraphNode> nodes, double x, double y, double w, double h) {
+		List<GraphNode> newNodes = new ArrayList<GraphNode>();
+		for (GraphNode node : nodes) {
+			if (!laidOutNodes.contains(node)) {
+				newNodes.add(node);
+			}
+		}
+		if (newNodes.isEmpty()) {
+			return null;
+		}
+
+		Set<GraphNode> localNodes = new LinkedHashSet<GraphNode>(newNodes);
+		Set<GraphNode> fixedNodes = new HashSet<GraphNode>();
+		Set<GraphArc> localArcs = new LinkedHashSet<GraphArc>();
+		List<GraphNode> anchors = new ArrayList<GraphNode>();
+		for (GraphNode node : newNodes) {
+			if (node.isFixedLocation()) {
+				fixedNodes.add(node);
+			}
+			for (GraphArc arc : node.getArcs()) {
+				GraphNode other = (arc.getSource() == node ? arc.getDestination() : arc.getSource());
+				if (arc.isVisible() && other.isVisible() && isLayoutArc(arc)) {
+					localArcs.add(arc);
+					if (localNodes.add(other)) {
+						fixedNodes.add(other);
+						anchors.add(other);
+					}
+				}
+			}
+		}
+		for (GraphNode anchor : anchors) {
+			for (GraphArc arc : anchor.getArcs()) {
+				GraphNode other = (arc.getSource() == anchor ? arc.getDestination() : arc.getSource());
+				if (other.isVisible() && localNodes.add(other)) {
+					fixedNodes.add(other);
+				}
+			}
+		}
+
+		// the nodes that can move are the only ones that need to be animated
+		List<GraphNode> movingNodes = new ArrayList<GraphNode>(newNodes.size());
+		for (GraphNode node : newNodes) {
+			if (!fixedNodes.contains(node)) {
+				movingNodes.add(node);
+			}
+		}
+		return new LayoutTask(movingNodes, new LayoutSnapshot(localNodes, localArcs, fixedNodes),
+				x, y, w, h, true, false, new HashSet<GraphNode>(nodes));
+	}
+
+	private boolean isLayoutArc(GraphArc arc) {
+		return layoutRelTypes.isEmpty() || layoutRelTypes.contains(arc.getType());
+	}
+
+	/**
+	 * Moves the nodes to their locations in the layout.
+	 * @return true if the nodes are being animated
+	 */
+	private boolean moveNodes(Collection<GraphNode> nodes) {
+		if (animate && (nodes.size() > maxNodesToAnimate)) {
+			animate = false;
+		}
+
+		//PActivityScheduler scheduler = canvas.getRoot().getActivityScheduler();
+		ArrayList<PActivity> activities = new ArrayList<PActivity>(nodes.size());
+		
+		for (GraphNode node : nodes) {
+			if(!node.isFixedLocation()) {
+				if (animate) {
+					AffineTransform transform = createTransform(node);
+					PActivity activity = createActivity(node, transform);
+					if (activity != null) {
+						activities.add(activity);
+					}
+				} else {
+					node.setLocation(node.getXInLayout(), node.getYInLayout());
+				}
+			}
+		}
+		
+		if (animate) {
+			//ActivityManager manager = new ActivityManager(canvas, scheduler, activities);
+			manager.setActivities(activities);
+			// wait until all nodes have finished moving
+			// @tag question : why did Chris put this in here?  it blocks the UI thread
+			//manager.waitForActivitiesToFinish();
+		} else {
+			graph.getCanvas().repaint();
 		}
+		return animate && !activities.isEmpty();
+	}
+
+	private void fireProgress(int type, ProgressEvent event) {
+		Object[] array = progressListeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			ProgressListener listener = progressListeners.get(array, i);
+			if (listener != null) {
+				if (type == PROGRESS_STARTED) {
+					listener.progressStarted(event);
+				} else if (type == PROGRESS_UPDATED) {
+					listener.progressUpdated(event);
+				} else {
+					listener.progressEnded(event);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fires the progress event on the event dispatch thread.
+	 */
+	private void fireProgressLater(final int type, final ProgressEvent event) {
+		if (progressListeners.isEmpty()) {
+			return;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				fireProgress(type, event);
+			}
+		});
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Graph Layout");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	private static synchronized ExecutorService getComponentExecutor() {
+		if (componentExecutor == null) {
+			componentExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Graph Layout Component");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+		}
+		return componentExecutor;
 	}
 
 	protected AffineTransform createTransform(GraphNode node) {
@@ -220,16 +467,23 @@ public class LayoutAction extends CajunAction {
 	}
 
 	/**
-	 * Creates a new instance of the LayoutAlgorithm using reflection.
+	 * Creates a new instance of the LayoutAlgorithm.  The native layouts are copied with their
+	 * settings, the others are created using reflection and only get the style.
 	 * 
 	 * @return
 	 */
 	@SuppressWarnings("unchecked")
 	private LayoutAlgorithm getLayoutAlgorithm() {
+		if (layout instanceof NativeLayoutAlgorithm) {
+			return ((NativeLayoutAlgorithm) layout).copy();
+		}
 		Class<LayoutAlgorithm> c;
 		try {
 			c = (Class<LayoutAlgorithm>) Class.forName(layout.getClass().getName());
-			return c.newInstance();
+			LayoutAlgorithm algorithm = c.newInstance();
+			// the no argument constructors don't take the style, e.g. not resizing the nodes
+			algorithm.setStyle(layout.getStyle());
+			return algorithm;
 		} catch (ClassNotFoundException e) {
 			//  Auto-generated catch block
 			e.printStackTrace();
@@ -243,4 +497,231 @@ public class LayoutAction extends CajunAction {
 
 		return null;
 	}
+
+	/**
+	 * Runs the layout on the snapshot in the background, then moves the nodes on the event
+	 * dispatch thread.  The layout algorithm is created on the background thread because the
+	 * zest layouts must run on the thread that created them.
+	 */
+	private class LayoutTask implements Runnable, ProgressListener {
+
+		private final Collection<GraphNode> nodes;
+		private final LayoutSnapshot snapshot;
+		private final double x, y, w, h;
+		private final boolean incremental;
+		private final boolean components;
+		private final Set<GraphNode> visibleNodes;
+		private volatile boolean cancelled;
+		private boolean started;
+		private LayoutAlgorithm layout;
+		private int reportedStep;
+
+		/**
+		 * @param nodes the nodes to move when the layout is done
+		 * @param incremental true to use an {@link IncrementalLayoutAlgorithm} instead of the layout
+		 * @param components true to lay out each connected component separately
+		 * @param visibleNodes the visible nodes, which are all laid out once the nodes are moved
+		 */
+		public LayoutTask(Collection<GraphNode> nodes, LayoutSnapshot snapshot, double x, double y, double w, double h,
+				boolean incremental, boolean components, Set<GraphNode> visibleNodes) {
+			this.nodes = nodes;
+			this.snapshot = snapshot;
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+			this.incremental = incremental;
+			this.components = components;
+			this.visibleNodes = visibleNodes;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public void run() {
+			boolean completed = false;
+			if (!cancelled) {
+				started = true;
+				fireProgressLater(PROGRESS_STARTED, new ProgressEvent(0, 1));
+				try {
+					if (components) {
+						completed = layoutComponents();
+					} else {
+						// define a local version of the layout in order to avoid threading issues
+						layout = (incremental ? new IncrementalLayoutAlgorithm() : getLayoutAlgorithm());
+						if (layout != null) {
+							layout.addProgressListener(this);
+							layout.applyLayout(snapshot.getEntities(), snapshot.getRelationships(), x, y, w, h, false, false);
+							completed = !cancelled;
+						}
+					}
+				} catch (InvalidLayoutConfiguration e) {
+					e.printStackTrace();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+			final boolean apply = completed;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					finish(apply);
+				}
+			});
+		}
+
+		/**
+		 * Lays out each connected component with its own layout algorithm on the component
+		 * threads, largest first, then packs the components.  Single nodes aren't laid out.
+		 * @return true if the layout wasn't cancelled
+		 */
+		private boolean layoutComponents() {
+			LayoutComponents split = new LayoutComponents(snapshot.getEntities(), snapshot.getRelationships());
+			int total = snapshot.getNodeCount();
+			int done = 0;
+			int submitted = 0;
+			CompletionService<Integer> service = new ExecutorCompletionService<Integer>(getComponentExecutor());
+			for (int c = 0; c < split.getComponentCount(); c++) {
+				LayoutEntity[] entities = split.getEntities(c);
+				if (entities.length > 1) {
+					// give each component its share of the bounds, or more room if its nodes need it
+					double scale = Math.sqrt((double) entities.length / total);
+					double area = 0;
+					for (LayoutEntity entity : entities) {
+						area += COMPONENT_AREA_FACTOR * (entity.getWidthInLayout() + COMPONENT_SPACING) * (entity.getHeightInLayout() + COMPONENT_SPACING);
+					}
+					double aspectRatio = ((w > 0) && (h > 0) ? w / h : 1);
+					double componentWidth = Math.max(scale * w, Math.sqrt(area * aspectRatio));
+					double componentHeight = Math.max(scale * h, Math.sqrt(area / aspectRatio));
+					service.submit(new ComponentLayout(this, entities, split.getRelationships(c), componentWidth, componentHeight));
+					submitted++;
+				} else {
+					done += entities.length;
+				}
+			}
+			reportProgress(done, total);
+			try {
+				// wait for all of them, even if cancelled, so that none are still running afterwards
+				for (int i = 0; i < submitted; i++) {
+					try {
+						done += service.take().get().intValue();
+						reportProgress(done, total);
+					} catch (ExecutionException e) {
+						e.getCause().printStackTrace();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			if (cancelled) {
+				return false;
+			}
+			split.pack(x, y, w, h, COMPONENT_SPACING);
+			return true;
+		}
+
+		private void finish(boolean apply) {
+			if (task == this) {
+				task = null;
+			}
+			boolean animating = false;
+			if (apply && !cancelled) {
+				snapshot.apply();
+				animating = moveNodes(nodes);
+				// any layout on the graph can place the new nodes around these ones next time
+				for (LayoutAction action : graph.getLayouts()) {
+					action.laidOutNodes = visibleNodes;
+				}
+			}
+			if (started && !animating) {
+				fireProgress(PROGRESS_ENDED, new ProgressEvent(1, 1));
+			}
+		}
+
+		public void progressStarted(ProgressEvent e) {
+			progressUpdated(e);
+		}
+
+		/**
+		 * Called by the layout on the background thread.  Stops the layout if it was cancelled,
+		 * otherwise passes on the progress.
+		 */
+		public void progressUpdated(ProgressEvent e) {
+			if (cancelled) {
+				layout.stop();
+				return;
+			}
+			reportProgress(e.getStepsCompleted(), e.getTotalNumberOfSteps());
+		}
+
+		/**
+		 * Passes on about 20 updates per layout.
+		 */
+		private void reportProgress(int step, int total) {
+			if ((step < reportedStep) || (20 * (step - reportedStep) >= total)) {
+				reportedStep = step;
+				fireProgressLater(PROGRESS_UPDATED, new ProgressEvent(Math.min(step, total), total));
+			}
+		}
+
+		public void progressEnded(ProgressEvent e) {
+		}
+
+	}
+
+	/**
+	 * Lays out one connected component on a component thread, with its own instance of the
+	 * layout algorithm.  The algorithm is stopped at its next progress event once the task is
+	 * cancelled.
+	 */
+	private class ComponentLayout implements Callable<Integer>, ProgressListener {
+
+		private final LayoutTask task;
+		private final LayoutEntity[] entities;
+		private final LayoutRelationship[] relationships;
+		private final double w, h;
+		private LayoutAlgorithm layout;
+
+		public ComponentLayout(LayoutTask task, LayoutEntity[] entities, LayoutRelationship[] relationships, double w, double h) {
+			this.task = task;
+			this.entities = entities;
+			this.relationships = relationships;
+			this.w = w;
+			this.h = h;
+		}
+
+		/**
+		 * @return the number of nodes in the component
+		 */
+		public Integer call() throws InvalidLayoutConfiguration {
+			if (!task.isCancelled()) {
+				layout = getLayoutAlgorithm();
+				if (layout != null) {
+					layout.addProgressListener(this);
+					layout.applyLayout(entities, relationships, 0, 0, w, h, false, false);
+				}
+			}
+			return Integer.valueOf(entities.length);
+		}
+
+		public void progressStarted(ProgressEvent e) {
+			progressUpdated(e);
+		}
+
+		public void progressUpdated(ProgressEvent e) {
+			if (task.isCancelled()) {
+				layout.stop();
+			}
+		}
+
+		public void progressEnded(ProgressEvent e) {
+		}
+
+	}
+
 }
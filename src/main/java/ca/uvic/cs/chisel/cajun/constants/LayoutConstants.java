@@ -27,6 +27,7 @@ public class LayoutConstants {
     public static final String LAYOUT_UML = "LAYOUT_UML";
     public static final String LAYOUT_TOUCHGRAPH = "TouchGraph";
     public static final String LAYOUT_FORCE_DIRECTED = "Force Directed";
+    public static final String LAYOUT_MULTILEVEL = "Multilevel Force Directed";
     public static final String LAYOUT_MOTION = "Motion";
 	public static final String LAYOUT_HIERARCHICAL = "Hierarchical";
     public static final String LAYOUT_ORTHOGONAL= "Orthogonal";
@@ -0,0 +1,211 @@
+package ca.uvic.cs.chisel.cajun.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.Icon;
+
+import org.eclipse.zest.layouts.LayoutBendPoint;
+import org.eclipse.zest.layouts.LayoutEntity;
+import org.eclipse.zest.layouts.constraints.LayoutConstraint;
+
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArcStyle;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * A plain {@link GraphArc} that isn't a Piccolo node and can't be displayed.
+ * Like the default arcs, two arcs are equal if their user objects are equal.
+ * 
+ * @see CoreGraphModel
+ */
+public class CoreGraphArc implements GraphArc {
+
+	private final Object userObject;
+	private final GraphNode src;
+	private final GraphNode dest;
+	private Object type;
+	private String tooltip;
+	private GraphArcStyle style;
+	private Map<Object, Object> attributes;
+
+	private boolean selected;
+	private boolean highlighted;
+	private boolean inverted;
+	private boolean visible;
+	private int curveFactor;
+
+	private Object layoutInformation;
+
+	public CoreGraphArc(Object userObject, GraphNode src, GraphNode dest, Object type) {
+		if ((userObject == null) || (src == null) || (dest == null)) {
+			throw new NullPointerException("All graph arcs must have a user object and source and destination nodes.");
+		}
+		this.userObject = userObject;
+		this.src = src;
+		this.dest = dest;
+		this.type = (type == null ? UNKNOWN_TYPE : type);
+		this.visible = true;
+	}
+
+	public Object getUserObject() {
+		return userObject;
+	}
+
+	public Object getType() {
+		return type;
+	}
+
+	public void setType(Object type) {
+		this.type = (type == null ? UNKNOWN_TYPE : type);
+	}
+
+	public GraphNode getSource() {
+		return src;
+	}
+
+	public GraphNode getDestination() {
+		return dest;
+	}
+
+	public String getTooltip() {
+		if (tooltip == null) {
+			return toString();
+		}
+		return tooltip;
+	}
+
+	public void setTooltip(String tooltip) {
+		this.tooltip = tooltip;
+	}
+
+	/**
+	 * @return the style, null unless one has been set
+	 */
+	public GraphArcStyle getArcStyle() {
+		return style;
+	}
+
+	public void setArcStyle(GraphArcStyle style) {
+		this.style = style;
+	}
+
+	/**
+	 * @return null, core arcs don't have icons
+	 */
+	public Icon getIcon() {
+		return null;
+	}
+
+	public void addAttribute(Object key, Object value) {
+		if (value == null) {
+			if (attributes != null) {
+				attributes.remove(key);
+			}
+		} else {
+			if (attributes == null) {
+				attributes = new HashMap<Object, Object>(4);
+			}
+			attributes.put(key, value);
+		}
+	}
+
+	public Object getAttribute(Object key) {
+		return (attributes != null ? attributes.get(key) : null);
+	}
+
+	public boolean isSelected() {
+		return selected;
+	}
+
+	public void setSelected(boolean selected) {
+		this.selected = selected;
+	}
+
+	public boolean isHighlighted() {
+		return highlighted;
+	}
+
+	public void setHighlighted(boolean highlighted) {
+		this.highlighted = highlighted;
+	}
+
+	public boolean isInverted() {
+		return inverted;
+	}
+
+	public void setInverted(boolean inverted) {
+		this.inverted = inverted;
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+
+	/**
+	 * Like the default arcs, an arc is only shown if both of its nodes are visible.
+	 */
+	public void setVisible(boolean visible) {
+		this.visible = visible && src.isVisible() && dest.isVisible();
+	}
+
+	public int getCurveFactor() {
+		return curveFactor;
+	}
+
+	public void setCurveFactor(int curveFactor) {
+		this.curveFactor = curveFactor;
+	}
+
+	public void updateArcPath() {
+	}
+
+	public void moveToFront() {
+	}
+
+	public void moveToBack() {
+	}
+
+	public LayoutEntity getSourceInLayout() {
+		return src;
+	}
+
+	public LayoutEntity getDestinationInLayout() {
+		return dest;
+	}
+
+	public Object getLayoutInformation() {
+		return layoutInformation;
+	}
+
+	public void setLayoutInformation(Object layoutInformation) {
+		this.layoutInformation = layoutInformation;
+	}
+
+	public void setBendPoints(LayoutBendPoint[] bendPoints) {
+	}
+
+	public void clearBendPoints() {
+	}
+
+	public void populateLayoutConstraint(LayoutConstraint constraint) {
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return (o instanceof CoreGraphArc) && userObject.equals(((CoreGraphArc) o).userObject);
+	}
+
+	@Override
+	public int hashCode() {
+		return userObject.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		GraphNode from = (inverted ? dest : src);
+		GraphNode to = (inverted ? src : dest);
+		return from + " -- " + type + " --> " + to;
+	}
+
+}
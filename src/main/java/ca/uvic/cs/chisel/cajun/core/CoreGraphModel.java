@@ -0,0 +1,318 @@
+package ca.uvic.cs.chisel.cajun.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uvic.cs.chisel.cajun.graph.AdjacencySnapshot;
+import ca.uvic.cs.chisel.cajun.graph.GraphModel;
+import ca.uvic.cs.chisel.cajun.graph.GraphModelListener;
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+import ca.uvic.cs.chisel.cajun.util.ListenerList;
+
+/**
+ * A {@link GraphModel} of {@link CoreGraphNode}s and {@link CoreGraphArc}s that doesn't use
+ * Swing or Piccolo.  Use it for server side or batch processing of graphs that aren't displayed,
+ * e.g. with the {@link AdjacencySnapshot} based algorithms.
+ * <p>
+ * This class and the graph model interfaces it uses are packaged on their own in the
+ * <code>core</code> jar, see the pom.
+ */
+public class CoreGraphModel implements GraphModel, AdjacencySnapshot.Provider {
+
+	private ListenerList<GraphModelListener> listeners;
+	private Map<Object, GraphNode> nodes;
+	private Map<Object, GraphArc> arcs;
+	private Set<Object> nodeTypes;
+	private Set<Object> arcTypes;
+
+	// built on demand and discarded whenever a node or arc is added or removed
+	private AdjacencySnapshot adjacencySnapshot;
+
+	public CoreGraphModel() {
+		this.listeners = new ListenerList<GraphModelListener>();
+		this.nodes = new LinkedHashMap<Object, GraphNode>();
+		this.arcs = new LinkedHashMap<Object, GraphArc>();
+		this.nodeTypes = new LinkedHashSet<Object>();
+		this.arcTypes = new LinkedHashSet<Object>();
+	}
+
+	public void clear() {
+		if ((nodes.size() > 0) || (arcs.size() > 0)) {
+			nodes.clear();
+			arcs.clear();
+			nodeTypes.clear();
+			arcTypes.clear();
+			adjacencySnapshot = null;
+			fireGraphClearedEvent();
+		}
+	}
+
+	public void addGraphModelListener(GraphModelListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeGraphModelListener(GraphModelListener listener) {
+		listeners.remove(listener);
+	}
+
+	protected void fireGraphClearedEvent() {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener listener = listeners.get(array, i);
+			if (listener != null) {
+				listener.graphCleared();
+			}
+		}
+	}
+
+	protected void fireNodeTypeAddedEvent(Object nodeType) {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener listener = listeners.get(array, i);
+			if (listener != null) {
+				listener.graphNodeTypeAdded(nodeType);
+			}
+		}
+	}
+
+	protected void fireNodeAddedEvent(GraphNode node) {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener listener = listeners.get(array, i);
+			if (listener != null) {
+				listener.graphNodeAdded(node);
+			}
+		}
+	}
+
+	protected void fireNodeRemovedEvent(GraphNode node) {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener listener = listeners.get(array, i);
+			if (listener != null) {
+				listener.graphNodeRemoved(node);
+			}
+		}
+	}
+
+	protected void fireArcTypeAddedEvent(Object arcType) {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener listener = listeners.get(array, i);
+			if (listener != null) {
+				listener.graphArcTypeAdded(arcType);
+			}
+		}
+	}
+
+	protected void fireArcAddedEvent(GraphArc arc) {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener listener = listeners.get(array, i);
+			if (listener != null) {
+				listener.graphArcAdded(arc);
+			}
+		}
+	}
+
+	protected void fireArcRemovedEvent(GraphArc arc) {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener listener = listeners.get(array, i);
+			if (listener != null) {
+				listener.graphArcRemoved(arc);
+			}
+		}
+	}
+
+	/**
+	 * @return the current snapshot, cached until the next node or arc is added or removed
+	 */
+	public AdjacencySnapshot getAdjacencySnapshot() {
+		if (adjacencySnapshot == null) {
+			adjacencySnapshot = new AdjacencySnapshot(nodes.values(), arcs.values());
+		}
+		return adjacencySnapshot;
+	}
+
+	// NODES
+
+	public GraphNode addNode(Object userObject) {
+		return addNode(userObject, String.valueOf(userObject), null);
+	}
+
+	/**
+	 * Adds a node, or returns the existing node with the same user object.
+	 */
+	public GraphNode addNode(Object userObject, String text, Object type) {
+		if (userObject == null) {
+			throw new NullPointerException("All graph nodes must have a user object.");
+		}
+		GraphNode node = nodes.get(userObject);
+		if (node == null) {
+			node = createNode(userObject, text, type);
+			nodes.put(userObject, node);
+			adjacencySnapshot = null;
+			if (nodeTypes.add(node.getType())) {
+				fireNodeTypeAddedEvent(node.getType());
+			}
+			fireNodeAddedEvent(node);
+		}
+		return node;
+	}
+
+	protected GraphNode createNode(Object userObject, String text, Object type) {
+		return new CoreGraphNode(userObject, text, type);
+	}
+
+	/**
+	 * Removes the node and its arcs.
+	 */
+	public void removeNode(Object userObject) {
+		GraphNode node = (userObject != null ? nodes.get(userObject) : null);
+		if (node != null) {
+			for (GraphArc arc : node.getArcs()) {
+				removeArc(arc.getUserObject());
+			}
+			nodes.remove(userObject);
+			adjacencySnapshot = null;
+			fireNodeRemovedEvent(node);
+		}
+	}
+
+	public Collection<GraphNode> getAllNodes() {
+		return Collections.unmodifiableCollection(nodes.values());
+	}
+
+	/**
+	 * Returns a copy of the nodes that are visible.
+	 */
+	public Collection<GraphNode> getVisibleNodes() {
+		List<GraphNode> visibleNodes = new ArrayList<GraphNode>(nodes.size());
+		for (GraphNode node : nodes.values()) {
+			if (node.isVisible()) {
+				visibleNodes.add(node);
+			}
+		}
+		return visibleNodes;
+	}
+
+	public GraphNode getNode(Object userObject) {
+		return (userObject != null ? nodes.get(userObject) : null);
+	}
+
+	public boolean containsNode(GraphNode node) {
+		return (node != null) && (nodes.get(node.getUserObject()) == node);
+	}
+
+	public Collection<GraphNode> getConnectedNodes(Object nodeUserObject) {
+		GraphNode node = getNode(nodeUserObject);
+		if (node != null) {
+			return node.getConnectedNodes();
+		}
+		return Collections.emptyList();
+	}
+
+	public Collection<GraphArc> getArcs(Object nodeUserObject) {
+		GraphNode node = getNode(nodeUserObject);
+		if (node != null) {
+			return node.getArcs();
+		}
+		return Collections.emptyList();
+	}
+
+	public Collection<Object> getNodeTypes() {
+		return new ArrayList<Object>(nodeTypes);
+	}
+
+	// ARCS
+
+	/**
+	 * Adds an arc between the two nodes, or returns the existing arc with the same user object.
+	 * The nodes must be in this model.
+	 */
+	public GraphArc addArc(Object userObject, GraphNode src, GraphNode dest, Object type) {
+		if (userObject == null) {
+			throw new NullPointerException("All graph arcs must have a user object.");
+		}
+		if (!containsNode(src) || !containsNode(dest)) {
+			throw new IllegalArgumentException("The source and destination nodes must be in this model.");
+		}
+		GraphArc arc = arcs.get(userObject);
+		if (arc == null) {
+			arc = createArc(userObject, src, dest, type);
+			arcs.put(userObject, arc);
+			src.addArc(arc);
+			if (dest != src) {
+				dest.addArc(arc);
+			}
+			adjacencySnapshot = null;
+			if (arcTypes.add(arc.getType())) {
+				fireArcTypeAddedEvent(arc.getType());
+			}
+			fireArcAddedEvent(arc);
+		}
+		return arc;
+	}
+
+	protected GraphArc createArc(Object userObject, GraphNode src, GraphNode dest, Object type) {
+		return new CoreGraphArc(userObject, src, dest, type);
+	}
+
+	public void removeArc(Object userObject) {
+		GraphArc arc = (userObject != null ? arcs.remove(userObject) : null);
+		if (arc != null) {
+			arc.getSource().removeArc(arc);
+			arc.getDestination().removeArc(arc);
+			adjacencySnapshot = null;
+			fireArcRemovedEvent(arc);
+		}
+	}
+
+	public Collection<GraphArc> getAllArcs() {
+		return Collections.unmodifiableCollection(arcs.values());
+	}
+
+	/**
+	 * Returns a copy of the arcs that are visible.
+	 */
+	public Collection<GraphArc> getVisibleArcs() {
+		List<GraphArc> visibleArcs = new ArrayList<GraphArc>(arcs.size());
+		for (GraphArc arc : arcs.values()) {
+			if (arc.isVisible()) {
+				visibleArcs.add(arc);
+			}
+		}
+		return visibleArcs;
+	}
+
+	public GraphArc getArc(Object userObject) {
+		return (userObject != null ? arcs.get(userObject) : null);
+	}
+
+	public boolean containsArc(GraphArc arc) {
+		return (arc != null) && arcs.containsKey(arc.getUserObject());
+	}
+
+	public GraphNode getSourceNode(Object arcUserObject) {
+		GraphArc arc = getArc(arcUserObject);
+		return (arc != null ? arc.getSource() : null);
+	}
+
+	public GraphNode getDestinationNode(Object arcUserObject) {
+		GraphArc arc = getArc(arcUserObject);
+		return (arc != null ? arc.getDestination() : null);
+	}
+
+	public Collection<Object> getArcTypes() {
+		return new ArrayList<Object>(arcTypes);
+	}
+
+}
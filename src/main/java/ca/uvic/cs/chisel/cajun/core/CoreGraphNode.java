@@ -0,0 +1,287 @@
+package ca.uvic.cs.chisel.cajun.core;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.zest.layouts.constraints.LabelLayoutConstraint;
+import org.eclipse.zest.layouts.constraints.LayoutConstraint;
+
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNodeStyle;
+
+/**
+ * A plain {@link GraphNode} that isn't a Piccolo node and can't be displayed.
+ * It only stores the graph structure and the layout bounds, so it can be used without Swing
+ * or Piccolo, e.g. for batch jobs that analyse or lay out large graphs.
+ * 
+ * @see CoreGraphModel
+ */
+public class CoreGraphNode implements GraphNode {
+
+	private final Object userObject;
+	private String text;
+	private Object type;
+	private String tooltip;
+	private GraphNodeStyle style;
+	private Map<Object, Object> attributes;
+
+	private boolean selected;
+	private boolean highlighted;
+	private boolean matching;
+	private boolean visible;
+	private boolean fixedLocation;
+
+	private double x, y, width, height;
+	private double xInLayout, yInLayout;
+	private Object layoutInformation;
+
+	// self arcs are in both lists
+	private List<GraphArc> incomingArcs;
+	private List<GraphArc> outgoingArcs;
+
+	public CoreGraphNode(Object userObject, String text, Object type) {
+		if (userObject == null) {
+			throw new NullPointerException("All graph nodes must have a user object.");
+		}
+		this.userObject = userObject;
+		this.text = (text == null ? "" : text);
+		this.type = (type == null ? UNKNOWN_TYPE : type);
+		this.visible = true;
+		this.incomingArcs = new ArrayList<GraphArc>(2);
+		this.outgoingArcs = new ArrayList<GraphArc>(2);
+	}
+
+	public Object getUserObject() {
+		return userObject;
+	}
+
+	public Object getType() {
+		return type;
+	}
+
+	public void setType(Object type) {
+		this.type = (type == null ? UNKNOWN_TYPE : type);
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(String text) {
+		this.text = (text == null ? "" : text);
+	}
+
+	public String getTooltip() {
+		return (tooltip == null ? text : tooltip);
+	}
+
+	public void setTooltip(String tooltip) {
+		this.tooltip = tooltip;
+	}
+
+	/**
+	 * @return the style, null unless one has been set
+	 */
+	public GraphNodeStyle getNodeStyle() {
+		return style;
+	}
+
+	public void setNodeStyle(GraphNodeStyle style) {
+		this.style = style;
+	}
+
+	public void addAttribute(Object key, Object value) {
+		if (value == null) {
+			if (attributes != null) {
+				attributes.remove(key);
+			}
+		} else {
+			if (attributes == null) {
+				attributes = new HashMap<Object, Object>(4);
+			}
+			attributes.put(key, value);
+		}
+	}
+
+	public Object getAttribute(Object key) {
+		return (attributes != null ? attributes.get(key) : null);
+	}
+
+	public Collection<GraphNode> getConnectedNodes() {
+		Set<GraphNode> connectedNodes = new LinkedHashSet<GraphNode>();
+		for (GraphArc arc : outgoingArcs) {
+			connectedNodes.add(arc.getDestination());
+		}
+		for (GraphArc arc : incomingArcs) {
+			connectedNodes.add(arc.getSource());
+		}
+		connectedNodes.remove(this);
+		return new ArrayList<GraphNode>(connectedNodes);
+	}
+
+	public Collection<GraphArc> getArcs() {
+		return getArcs(true, true);
+	}
+
+	public Collection<GraphArc> getArcs(boolean incoming, boolean outgoing) {
+		if (incoming && outgoing) {
+			List<GraphArc> arcs = new ArrayList<GraphArc>(outgoingArcs);
+			for (GraphArc arc : incomingArcs) {
+				if (arc.getSource() != this) {
+					arcs.add(arc);
+				}
+			}
+			return arcs;
+		} else if (incoming) {
+			return Collections.unmodifiableList(incomingArcs);
+		} else if (outgoing) {
+			return Collections.unmodifiableList(outgoingArcs);
+		}
+		return Collections.emptyList();
+	}
+
+	// the model only adds each arc once, so there is no duplicate check
+	public void addArc(GraphArc arc) {
+		if (arc.getSource() == this) {
+			outgoingArcs.add(arc);
+		}
+		if (arc.getDestination() == this) {
+			incomingArcs.add(arc);
+		}
+	}
+
+	public void removeArc(GraphArc arc) {
+		outgoingArcs.remove(arc);
+		incomingArcs.remove(arc);
+	}
+
+	public boolean isSelected() {
+		return selected;
+	}
+
+	public void setSelected(boolean selected) {
+		this.selected = selected;
+	}
+
+	public boolean isHighlighted() {
+		return highlighted;
+	}
+
+	public void setHighlighted(boolean highlighted) {
+		this.highlighted = highlighted;
+	}
+
+	public boolean isMatching() {
+		return matching;
+	}
+
+	public void setMatching(boolean matching) {
+		this.matching = matching;
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+	}
+
+	public boolean isFixedLocation() {
+		return fixedLocation;
+	}
+
+	public void setFixedLocation(boolean fixedLocation) {
+		this.fixedLocation = fixedLocation;
+	}
+
+	public void moveToFront() {
+	}
+
+	public void moveToBack() {
+	}
+
+	public Rectangle2D getBounds() {
+		return new Rectangle2D.Double(x, y, width, height);
+	}
+
+	public boolean setBounds(double x, double y, double w, double h) {
+		if ((this.x == x) && (this.y == y) && (this.width == w) && (this.height == h)) {
+			return false;
+		}
+		this.x = x;
+		this.y = y;
+		this.width = w;
+		this.height = h;
+		return true;
+	}
+
+	public boolean setLocation(double x, double y) {
+		return setBounds(x, y, width, height);
+	}
+
+	public boolean setSize(double w, double h) {
+		return setBounds(x, y, w, h);
+	}
+
+	public double getXInLayout() {
+		return xInLayout;
+	}
+
+	public double getYInLayout() {
+		return yInLayout;
+	}
+
+	public double getWidthInLayout() {
+		return width;
+	}
+
+	public double getHeightInLayout() {
+		return height;
+	}
+
+	public void setLocationInLayout(double x, double y) {
+		xInLayout = x;
+		yInLayout = y;
+	}
+
+	public void setSizeInLayout(double width, double height) {
+	}
+
+	public Object getLayoutInformation() {
+		return layoutInformation;
+	}
+
+	public void setLayoutInformation(Object layoutInformation) {
+		this.layoutInformation = layoutInformation;
+	}
+
+	public void populateLayoutConstraint(LayoutConstraint constraint) {
+		if (constraint instanceof LabelLayoutConstraint) {
+			LabelLayoutConstraint labelConstraint = (LabelLayoutConstraint) constraint;
+			labelConstraint.label = text;
+			labelConstraint.pointSize = 18;
+		}
+	}
+
+	public int compareTo(Object o) {
+		if (o instanceof CoreGraphNode) {
+			return text.compareToIgnoreCase(((CoreGraphNode) o).text);
+		}
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+}
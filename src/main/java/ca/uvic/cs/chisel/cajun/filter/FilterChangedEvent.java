@@ -3,13 +3,39 @@ package ca.uvic.cs.chisel.cajun.filter;
 public class FilterChangedEvent {
 
 	private FilterManager filterManager;
+	private Object nodeType;
+	private Object arcType;
 
 	public FilterChangedEvent(FilterManager filterManager) {
+		this(filterManager, null, null);
+	}
+	
+	/**
+	 * @param nodeType the node type whose visibility changed, or null
+	 * @param arcType the arc type whose visibility changed, or null
+	 */
+	public FilterChangedEvent(FilterManager filterManager, Object nodeType, Object arcType) {
 		this.filterManager = filterManager;
+		this.nodeType = nodeType;
+		this.arcType = arcType;
 	}
 	
 	public FilterManager getFilterManager() {
 		return filterManager;
 	}
 	
+	/**
+	 * @return the node type whose visibility changed, or null if this wasn't a node type change
+	 */
+	public Object getNodeType() {
+		return nodeType;
+	}
+	
+	/**
+	 * @return the arc type whose visibility changed, or null if this wasn't an arc type change
+	 */
+	public Object getArcType() {
+		return arcType;
+	}
+	
 }
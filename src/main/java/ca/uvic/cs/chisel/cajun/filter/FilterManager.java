@@ -3,31 +3,72 @@ package ca.uvic.cs.chisel.cajun.filter;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
+import javax.swing.SwingUtilities;
+
+import org.eclipse.zest.layouts.progress.ProgressEvent;
+import org.eclipse.zest.layouts.progress.ProgressListener;
+
+import ca.uvic.cs.chisel.cajun.graph.AdjacencySnapshot;
+import ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel;
 import ca.uvic.cs.chisel.cajun.graph.Graph;
 import ca.uvic.cs.chisel.cajun.graph.GraphItem;
 import ca.uvic.cs.chisel.cajun.graph.GraphModel;
 import ca.uvic.cs.chisel.cajun.graph.GraphModelAdapter;
+import ca.uvic.cs.chisel.cajun.graph.GraphModelEvent;
 import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNode;
 import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+import ca.uvic.cs.chisel.cajun.util.ListenerList;
 
 public class FilterManager {
 
+	private static final int PROGRESS_STARTED = 0;
+	private static final int PROGRESS_UPDATED = 1;
+	private static final int PROGRESS_ENDED = 2;
+
+	// how many nodes or arcs are evaluated between the checks for cancellation
+	private static final int STEP_SIZE = 1024;
+
 	private Graph graph;
 
-	private List<FilterChangedListener> listeners;
+	private ListenerList<FilterChangedListener> listeners;
 	private List<GraphFilter> filters;
 
-	// maps the node types to their visibilities
-	private Map<Object, Boolean> nodeTypesVisibilityMap;
+	// maps the node types to their visibilities, the maps are replaced instead of changed
+	// so the type filters can be evaluated on the background thread
+	private volatile Map<Object, Boolean> nodeTypesVisibilityMap;
 	// maps the arc types to their visibilities
-	private Map<Object, Boolean> arcTypesVisibilityMap;
+	private volatile Map<Object, Boolean> arcTypesVisibilityMap;
+
+	private GraphFilter nodeTypeFilter;
+	private GraphFilter arcTypeFilter;
+
+	// the filter results that are applied to the graph
+	private FilterState state;
+	// incremented to cancel the evaluation running in the background
+	private final AtomicInteger generation;
+	// true if an evaluation was started in the background and hasn't been applied
+	private boolean evaluating;
+	// incremented when nodes or arcs are added or removed, so an evaluation can tell that the
+	// model changed even if it doesn't provide its snapshot
+	private volatile int modelChanges;
+	private ExecutorService executor;
+	private ListenerList<ProgressListener> progressListeners;
 
 	public FilterManager(Graph graph) {
 		this.graph = graph;
@@ -38,24 +79,34 @@ public class FilterManager {
 		// by adding it to the graph it will always be attached to the current model even when a new model is set
 		this.graph.addGraphModelListener(listener);
 
-		this.listeners = new ArrayList<FilterChangedListener>();
+		this.listeners = new ListenerList<FilterChangedListener>();
 		this.filters = new ArrayList<GraphFilter>();
 
 		this.nodeTypesVisibilityMap = new HashMap<Object, Boolean>();
 		this.arcTypesVisibilityMap = new HashMap<Object, Boolean>();
+		this.generation = new AtomicInteger();
+		this.progressListeners = new ListenerList<ProgressListener>();
 
 		// populate the node and arc types map (all visible by default)
 		updateNodeAndArcTypes();
 
 		// add the node and arc type filters
-		filters.add(new NodeTypeFilter());
-		filters.add(new ArcTypeFilter());
+		this.nodeTypeFilter = new NodeTypeFilter();
+		this.arcTypeFilter = new ArcTypeFilter();
+		filters.add(nodeTypeFilter);
+		filters.add(arcTypeFilter);
 	}
 
 	public void addFilterChangedListener(FilterChangedListener listener) {
-		if (!this.listeners.contains(listener)) {
-			this.listeners.add(listener);
-		}
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Adds a listener that is only weakly referenced, so it doesn't have to be removed when
+	 * it is no longer used.  The caller must keep a reference to it.
+	 */
+	public void addWeakFilterChangedListener(FilterChangedListener listener) {
+		this.listeners.addWeak(listener);
 	}
 
 	public void removeFilterChangedListener(FilterChangedListener listener) {
@@ -76,10 +127,14 @@ public class FilterManager {
 	}
 
 	protected void fireFiltersChanged() {
-		if (listeners.size() > 0) {
-			ArrayList<FilterChangedListener> copy = new ArrayList<FilterChangedListener>(listeners);
-			FilterChangedEvent fce = new FilterChangedEvent(this);
-			for (FilterChangedListener listener : copy) {
+		fireFiltersChanged(new FilterChangedEvent(this));
+	}
+
+	protected void fireFiltersChanged(FilterChangedEvent fce) {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			FilterChangedListener listener = listeners.get(array, i);
+			if (listener != null) {
 				listener.filtersChanged(fce);
 			}
 		}
@@ -93,53 +148,277 @@ public class FilterManager {
 		return (filters.size() > 0);
 	}
 
+	/**
+	 * Re-evaluates all the filters for every node and arc, and shows or hides only the nodes
+	 * and arcs whose visibility changed.  Any evaluation that is running in the background is
+	 * cancelled.
+	 */
 	public void applyFilters(GraphModel model) {
-		applyNodeFilters(model);
-		applyArcFilters(model);
+		cancelEvaluation();
+		FilterState result = new FilterState(AdjacencySnapshot.create(model), getFilterArray());
+		for (GraphFilter filter : result.filters) {
+			result.evaluate(filter, null, null, null, null);
+		}
+		state = result;
+		applyVisibility(result, result.getAllNodeIds(), result.getAllArcIds());
 	}
 
-	private void applyNodeFilters(GraphModel model) {
-		Collection<GraphNode> nodes = model.getAllNodes();
-		for (GraphNode node : nodes) {
-			//boolean oldVisibility = node.isVisible();
-			boolean newVisibility = true; // visible by default
-			for (GraphFilter filter : filters) {
-				// only apply this filter if it is a node filter
-				if (filter.isNodeFilter()) {
-					newVisibility = filter.isVisible(node);
+	/**
+	 * Applies the filters after the given filter change.  When only the visibility of one node or
+	 * arc type changed, and the model hasn't changed since the filters were last applied, then
+	 * only the type filter is re-evaluated, and only for the nodes or arcs of that type.
+	 * Otherwise all the filters are applied to every node and arc.
+	 */
+	public void applyFilters(GraphModel model, FilterChangedEvent fce) {
+		AdjacencySnapshot current = AdjacencySnapshot.create(model);
+		if (isIncremental(current, fce)) {
+			cancelEvaluation();
+			FilterState result = new FilterState(state);
+			BitSet changedNodes = new BitSet(current.getNodeCount());
+			BitSet changedArcs = new BitSet(current.getArcCount());
+			result.evaluate(getTypeFilter(fce), getTypedItems(model, fce), changedNodes, changedArcs, null);
+			state = result;
+			applyVisibility(result, changedNodes, changedArcs);
+		} else {
+			applyFilters(model);
+		}
+	}
 
-					// we stop once one filter says this node should be hidden
-					if (!newVisibility) {
-						break;
-					}
+	/**
+	 * Evaluates the filters on a background thread, and then shows or hides the nodes and arcs
+	 * whose visibility changed on the event dispatch thread.  Calling this again, or calling
+	 * {@link #applyFilters(GraphModel)}, before the evaluation finishes cancels it, so only the
+	 * last change is applied.  If the model changes during the evaluation then it is restarted.
+	 * <p>
+	 * Only the type filters and the {@link PredicateFilter}s that don't contain another filter are
+	 * evaluated in the background, the other filters are evaluated before this returns.
+	 * This must be called on the event dispatch thread.
+	 * @param fce the filter change, or null to re-evaluate all the filters
+	 * @param whenApplied run on the event dispatch thread after the visibilities are changed,
+	 * can be null
+	 */
+	public void applyFiltersLater(GraphModel model, FilterChangedEvent fce, Runnable whenApplied) {
+		AdjacencySnapshot current = AdjacencySnapshot.create(model);
+		boolean incremental = isIncremental(current, fce);
+		int gen = cancelEvaluation();
+		Evaluation evaluation;
+		if (incremental) {
+			// the type filters only read the type visibility maps, so they are thread safe
+			evaluation = new Evaluation(gen, model, new FilterState(state), null, getTypeFilter(fce),
+					getTypedItems(model, fce), whenApplied);
+		} else {
+			FilterState result = new FilterState(current, getFilterArray());
+			List<GraphFilter> backgroundFilters = new ArrayList<GraphFilter>();
+			for (GraphFilter filter : result.filters) {
+				if (isThreadSafe(filter, current)) {
+					backgroundFilters.add(filter);
+				} else {
+					result.evaluate(filter, null, null, null, null);
 				}
 			}
-			//if (oldVisibility != newVisibility) {
-			node.setVisible(newVisibility);
-			//}
+			evaluation = new Evaluation(gen, model, result, backgroundFilters, null, null, whenApplied);
 		}
+		evaluating = true;
+		getExecutor().execute(evaluation);
 	}
 
-	private void applyArcFilters(GraphModel model) {
-		Collection<GraphArc> arcs = model.getAllArcs();
-		for (GraphArc arc : arcs) {
-			boolean oldVisibility = arc.isVisible();
-			boolean newVisibility = true; // visible by default
-			for (GraphFilter filter : filters) {
-				// only apply this filter if it is an arc filter
-				if (filter.isArcFilter()) {
-					newVisibility = filter.isVisible(arc);
+	/**
+	 * Stops any evaluation that is running in the background from being applied.
+	 * @return the new generation
+	 */
+	private int cancelEvaluation() {
+		evaluating = false;
+		return generation.incrementAndGet();
+	}
 
-					// we stop once one filter says this arc should be hidden
-					if (!newVisibility) {
-						break;
-					}
+	/**
+	 * Re-evaluates the filters for the nodes and arcs whose type or text changed.  The model
+	 * keeps the same snapshot when items change, so if the filters have been applied to it only
+	 * the changed items are re-evaluated.  Otherwise the filters are applied to everything again.
+	 */
+	private void itemsChanged(Collection<GraphNode> changedNodes, Collection<GraphArc> changedArcs) {
+		GraphModel model = graph.getModel();
+		AdjacencySnapshot current = AdjacencySnapshot.create(model);
+		if (evaluating || (state == null) || (state.snapshot != current) || !Arrays.asList(state.filters).equals(filters)) {
+			state = null;
+			fireFiltersChanged();
+			return;
+		}
+		List<GraphItem> items = new ArrayList<GraphItem>(changedNodes.size() + changedArcs.size());
+		items.addAll(changedNodes);
+		items.addAll(changedArcs);
+		FilterState result = new FilterState(state);
+		BitSet nodeIds = new BitSet(current.getNodeCount());
+		BitSet arcIds = new BitSet(current.getArcCount());
+		for (GraphFilter filter : result.filters) {
+			result.evaluate(filter, items, nodeIds, arcIds, null);
+		}
+		// check the changed items even if none of their bits changed
+		for (GraphNode node : changedNodes) {
+			int id = current.getNodeId(node);
+			if (id != -1) {
+				nodeIds.set(id);
+			}
+		}
+		for (GraphArc arc : changedArcs) {
+			int id = current.getArcId(arc);
+			if (id != -1) {
+				arcIds.set(id);
+			}
+		}
+		state = result;
+		applyVisibility(result, nodeIds, arcIds);
+	}
+
+	/**
+	 * @return true if the filter can be evaluated on the background thread, the type filters and
+	 * the predicate filters that don't contain a {@link GraphFilter} are
+	 */
+	private boolean isThreadSafe(GraphFilter filter, AdjacencySnapshot snapshot) {
+		if ((filter == nodeTypeFilter) || (filter == arcTypeFilter)) {
+			return true;
+		}
+		// the plan is cached, so it isn't compiled again in the background
+		return (filter instanceof PredicateFilter) && ((PredicateFilter) filter).getPlan(snapshot).isParallel();
+	}
+
+	/**
+	 * The incremental update only works if the current state is up to date, apart from the
+	 * change to the type visibility.
+	 */
+	private boolean isIncremental(AdjacencySnapshot current, FilterChangedEvent fce) {
+		return (fce != null) && ((fce.getNodeType() != null) || (fce.getArcType() != null)) && !evaluating &&
+				(state != null) && (state.snapshot == current) && Arrays.asList(state.filters).equals(filters);
+	}
+
+	private GraphFilter getTypeFilter(FilterChangedEvent fce) {
+		return (fce.getNodeType() != null ? nodeTypeFilter : arcTypeFilter);
+	}
+
+	/**
+	 * @return a copy of the nodes or arcs whose type changed visibility
+	 */
+	private List<GraphItem> getTypedItems(GraphModel model, FilterChangedEvent fce) {
+		if (fce.getNodeType() != null) {
+			return new ArrayList<GraphItem>(getNodesOfType(model, fce.getNodeType()));
+		}
+		return new ArrayList<GraphItem>(getArcsOfType(model, fce.getArcType()));
+	}
+
+	private GraphFilter[] getFilterArray() {
+		return filters.toArray(new GraphFilter[filters.size()]);
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Graph Filters");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
 				}
+			});
+		}
+		return executor;
+	}
+
+	private Collection<GraphNode> getNodesOfType(GraphModel model, Object nodeType) {
+		if (model instanceof DefaultGraphModel) {
+			return ((DefaultGraphModel) model).getNodesOfType(nodeType);
+		}
+		List<GraphNode> nodes = new ArrayList<GraphNode>();
+		for (GraphNode node : model.getAllNodes()) {
+			if (nodeType.equals(node.getType())) {
+				nodes.add(node);
 			}
-			if (oldVisibility != newVisibility) {
-				arc.setVisible(newVisibility);
+		}
+		return nodes;
+	}
+
+	private Collection<GraphArc> getArcsOfType(GraphModel model, Object arcType) {
+		if (model instanceof DefaultGraphModel) {
+			return ((DefaultGraphModel) model).getArcsOfType(arcType);
+		}
+		List<GraphArc> arcs = new ArrayList<GraphArc>();
+		for (GraphArc arc : model.getAllArcs()) {
+			if (arcType.equals(arc.getType())) {
+				arcs.add(arc);
 			}
 		}
+		return arcs;
+	}
+
+	/**
+	 * Shows or hides the given nodes and arcs, only changing the ones whose visibility is
+	 * different.  The arcs of the nodes that change are updated too.
+	 * An arc is only visible if its filters and both of its nodes are visible.
+	 */
+	private void applyVisibility(FilterState state, BitSet nodeIds, BitSet arcIds) {
+		AdjacencySnapshot snapshot = state.snapshot;
+		int[] outOffsets = snapshot.getOutOffsets();
+		int[] outArcIds = snapshot.getOutArcIds();
+		int[] inOffsets = snapshot.getInOffsets();
+		int[] inArcIds = snapshot.getInArcIds();
+		for (int id = nodeIds.nextSetBit(0); id >= 0; id = nodeIds.nextSetBit(id + 1)) {
+			GraphNode node = snapshot.getNode(id);
+			boolean visible = state.isNodeVisible(id);
+			if (node.isVisible() != visible) {
+				if (node instanceof DefaultGraphNode) {
+					// the arcs are updated below
+					((DefaultGraphNode) node).setVisible(visible, false);
+				} else {
+					node.setVisible(visible);
+				}
+				for (int i = outOffsets[id]; i < outOffsets[id + 1]; i++) {
+					arcIds.set(outArcIds[i]);
+				}
+				for (int i = inOffsets[id]; i < inOffsets[id + 1]; i++) {
+					arcIds.set(inArcIds[i]);
+				}
+			}
+		}
+		for (int id = arcIds.nextSetBit(0); id >= 0; id = arcIds.nextSetBit(id + 1)) {
+			GraphArc arc = snapshot.getArc(id);
+			boolean visible = state.isArcVisible(id) && arc.getSource().isVisible() && arc.getDestination().isVisible();
+			if (arc.isVisible() != visible) {
+				arc.setVisible(visible);
+			}
+		}
+	}
+
+	public void addProgressListener(ProgressListener listener) {
+		progressListeners.add(listener);
+	}
+
+	public void removeProgressListener(ProgressListener listener) {
+		progressListeners.remove(listener);
+	}
+
+	/**
+	 * Fires the progress event on the event dispatch thread.
+	 */
+	private void fireProgressLater(final int type, final ProgressEvent event) {
+		if (progressListeners.isEmpty()) {
+			return;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				Object[] array = progressListeners.getArray();
+				for (int i = 0; i < array.length; i++) {
+					ProgressListener listener = progressListeners.get(array, i);
+					if (listener != null) {
+						if (type == PROGRESS_STARTED) {
+							listener.progressStarted(event);
+						} else if (type == PROGRESS_UPDATED) {
+							listener.progressUpdated(event);
+						} else {
+							listener.progressEnded(event);
+						}
+					}
+				}
+			}
+		});
 	}
 
 	public Collection<Object> getNodeTypes() {
@@ -151,8 +430,9 @@ public class FilterManager {
 	}
 
 	public boolean isNodeTypeVisible(Object nodeType) {
-		if (nodeTypesVisibilityMap.containsKey(nodeType)) {
-			return nodeTypesVisibilityMap.get(nodeType);
+		Boolean visible = nodeTypesVisibilityMap.get(nodeType);
+		if (visible != null) {
+			return visible;
 		}
 		// visible by default
 		return true;
@@ -165,8 +445,10 @@ public class FilterManager {
 			old = nodeTypesVisibilityMap.get(nodeType);
 		}
 		if (old != visible) {
-			nodeTypesVisibilityMap.put(nodeType, visible);
-			fireFiltersChanged();
+			Map<Object, Boolean> newMap = new HashMap<Object, Boolean>(nodeTypesVisibilityMap);
+			newMap.put(nodeType, visible);
+			nodeTypesVisibilityMap = newMap;
+			fireFiltersChanged(new FilterChangedEvent(this, nodeType, null));
 		}
 	}
 
@@ -179,8 +461,9 @@ public class FilterManager {
 	}
 
 	public boolean isArcTypeVisible(Object arcType) {
-		if (arcTypesVisibilityMap.containsKey(arcType)) {
-			return arcTypesVisibilityMap.get(arcType);
+		Boolean visible = arcTypesVisibilityMap.get(arcType);
+		if (visible != null) {
+			return visible;
 		}
 		// visible by default
 		return true;
@@ -193,8 +476,10 @@ public class FilterManager {
 			old = arcTypesVisibilityMap.get(arcType);
 		}
 		if (old != visible) {
-			arcTypesVisibilityMap.put(arcType, visible);
-			fireFiltersChanged();
+			Map<Object, Boolean> newMap = new HashMap<Object, Boolean>(arcTypesVisibilityMap);
+			newMap.put(arcType, visible);
+			arcTypesVisibilityMap = newMap;
+			fireFiltersChanged(new FilterChangedEvent(this, null, arcType));
 		}
 	}
 
@@ -212,10 +497,11 @@ public class FilterManager {
 		GraphModel model = graph.getModel();
 		Collection<Object> newArcTypes = model.getArcTypes();
 		if (newArcTypes.isEmpty()) {
-			arcTypesVisibilityMap.clear();
+			arcTypesVisibilityMap = new HashMap<Object, Boolean>();
 		} else {
+			Map<Object, Boolean> newMap = new HashMap<Object, Boolean>(arcTypesVisibilityMap);
 			// first remove any node types that no longer exist
-			for (Iterator<Object> iter = arcTypesVisibilityMap.keySet().iterator(); iter.hasNext();) {
+			for (Iterator<Object> iter = newMap.keySet().iterator(); iter.hasNext();) {
 				Object oldArcType = iter.next();
 				if (!newArcTypes.contains(oldArcType)) {
 					iter.remove();
@@ -223,10 +509,11 @@ public class FilterManager {
 			}
 			// now add any that don't already exist (visible by default)
 			for (Object arcType : newArcTypes) {
-				if (!arcTypesVisibilityMap.containsKey(arcType)) {
-					arcTypesVisibilityMap.put(arcType, true);
+				if (!newMap.containsKey(arcType)) {
+					newMap.put(arcType, true);
 				}
 			}
+			arcTypesVisibilityMap = newMap;
 		}
 	}
 
@@ -236,10 +523,11 @@ public class FilterManager {
 		// preserving the original node type visibilities
 		Collection<Object> newNodeTypes = model.getNodeTypes();
 		if (newNodeTypes.isEmpty()) {
-			nodeTypesVisibilityMap.clear();
+			nodeTypesVisibilityMap = new HashMap<Object, Boolean>();
 		} else {
+			Map<Object, Boolean> newMap = new HashMap<Object, Boolean>(nodeTypesVisibilityMap);
 			// first remove any node types that no longer exist
-			for (Iterator<Object> iter = nodeTypesVisibilityMap.keySet().iterator(); iter.hasNext();) {
+			for (Iterator<Object> iter = newMap.keySet().iterator(); iter.hasNext();) {
 				Object oldNodeType = iter.next();
 				if (!newNodeTypes.contains(oldNodeType)) {
 					iter.remove();
@@ -247,10 +535,11 @@ public class FilterManager {
 			}
 			// now add any that don't already exist (visible by default)
 			for (Object nodeType : newNodeTypes) {
-				if (!nodeTypesVisibilityMap.containsKey(nodeType)) {
-					nodeTypesVisibilityMap.put(nodeType, true);
+				if (!newMap.containsKey(nodeType)) {
+					newMap.put(nodeType, true);
 				}
 			}
+			nodeTypesVisibilityMap = newMap;
 		}
 	}
 
@@ -265,6 +554,7 @@ public class FilterManager {
 
 		public void propertyChange(PropertyChangeEvent evt) {
 			if (Graph.GRAPH_MODEL_PROPERTY.equals(evt.getPropertyName())) {
+				modelChanges++;
 				updateNodeAndArcTypes();
 			}
 		}
@@ -279,11 +569,54 @@ public class FilterManager {
 			updateNodeTypes();
 		}
 
+		@Override
+		public void graphNodeAdded(GraphNode node) {
+			modelChanges++;
+		}
+
+		@Override
+		public void graphNodeRemoved(GraphNode node) {
+			modelChanges++;
+		}
+
+		@Override
+		public void graphArcAdded(GraphArc arc) {
+			modelChanges++;
+		}
+
+		@Override
+		public void graphArcRemoved(GraphArc arc) {
+			modelChanges++;
+		}
+
 		@Override
 		public void graphCleared() {
+			modelChanges++;
 			updateNodeAndArcTypes();
 		}
 
+		@Override
+		public void graphChanged(GraphModelEvent event) {
+			if (event.isCleared() || !event.getNodes().isEmpty() || !event.getArcs().isEmpty() ||
+					!event.getRemovedNodes().isEmpty() || !event.getRemovedArcs().isEmpty()) {
+				modelChanges++;
+			}
+			// update the types once for the whole batch
+			if (event.isCleared()) {
+				updateNodeAndArcTypes();
+			} else {
+				if (!event.getNodeTypes().isEmpty()) {
+					updateNodeTypes();
+				}
+				if (!event.getArcTypes().isEmpty()) {
+					updateArcTypes();
+				}
+				if (!event.getChangedNodes().isEmpty() || !event.getChangedArcs().isEmpty()) {
+					itemsChanged(event.getChangedNodes(), event.getChangedArcs());
+				}
+			}
+		}
+
 	}
 
 	private class NodeTypeFilter implements GraphFilter {
@@ -318,4 +651,303 @@ public class FilterManager {
 
 	}
 
+	/**
+	 * The node and arc ids that each filter hides, for one snapshot of the model.  The bitsets
+	 * aren't changed once they are added, re-evaluating a filter replaces its bitsets, so a copy
+	 * of a state can share them.
+	 */
+	private static class FilterState {
+
+		private final AdjacencySnapshot snapshot;
+		private final GraphFilter[] filters;
+		private final Map<GraphFilter, BitSet> hiddenNodes;
+		private final Map<GraphFilter, BitSet> hiddenArcs;
+
+		public FilterState(AdjacencySnapshot snapshot, GraphFilter[] filters) {
+			this.snapshot = snapshot;
+			this.filters = filters;
+			this.hiddenNodes = new HashMap<GraphFilter, BitSet>();
+			this.hiddenArcs = new HashMap<GraphFilter, BitSet>();
+		}
+
+		public FilterState(FilterState state) {
+			this.snapshot = state.snapshot;
+			this.filters = state.filters;
+			this.hiddenNodes = new HashMap<GraphFilter, BitSet>(state.hiddenNodes);
+			this.hiddenArcs = new HashMap<GraphFilter, BitSet>(state.hiddenArcs);
+		}
+
+		/**
+		 * Re-evaluates the filter and replaces the bitsets of the node and arc ids that it hides.
+		 * @param items the nodes or arcs to re-evaluate, or null for all of them
+		 * @param changedNodes if not null, the ids of the nodes whose bit changed are set
+		 * @param changedArcs if not null, the ids of the arcs whose bit changed are set
+		 * @param evaluation the background evaluation to check for cancellation, or null
+		 */
+		public void evaluate(GraphFilter filter, Collection<? extends GraphItem> items, BitSet changedNodes,
+				BitSet changedArcs, Evaluation evaluation) {
+			if ((items == null) && (filter instanceof PredicateFilter)) {
+				evaluatePlan((PredicateFilter) filter, evaluation);
+				return;
+			}
+			if (filter.isNodeFilter()) {
+				hiddenNodes.put(filter, evaluate(filter, items, true, hiddenNodes.get(filter), changedNodes, evaluation));
+			}
+			if (filter.isArcFilter()) {
+				hiddenArcs.put(filter, evaluate(filter, items, false, hiddenArcs.get(filter), changedArcs, evaluation));
+			}
+		}
+
+		private BitSet evaluate(GraphFilter filter, Collection<? extends GraphItem> items, boolean nodes,
+				BitSet oldHidden, BitSet changed, Evaluation evaluation) {
+			int count = (nodes ? snapshot.getNodeCount() : snapshot.getArcCount());
+			BitSet hidden;
+			if (items == null) {
+				hidden = new BitSet(count);
+				for (int id = 0; id < count; id++) {
+					if ((evaluation != null) && ((id % STEP_SIZE) == STEP_SIZE - 1)) {
+						evaluation.step(STEP_SIZE);
+					}
+					GraphItem item = (nodes ? snapshot.getNode(id) : snapshot.getArc(id));
+					hidden.set(id, !filter.isVisible(item));
+				}
+			} else {
+				hidden = (oldHidden != null ? (BitSet) oldHidden.clone() : new BitSet(count));
+				for (GraphItem item : items) {
+					int id = -1;
+					if (nodes && (item instanceof GraphNode)) {
+						id = snapshot.getNodeId((GraphNode) item);
+					} else if (!nodes && (item instanceof GraphArc)) {
+						id = snapshot.getArcId((GraphArc) item);
+					}
+					if ((id != -1) && (hidden.get(id) == filter.isVisible(item))) {
+						hidden.flip(id);
+						changed.set(id);
+					}
+				}
+			}
+			return hidden;
+		}
+
+		/**
+		 * Evaluates the compiled predicate for all the nodes and arcs, in parallel for large graphs.
+		 */
+		private void evaluatePlan(PredicateFilter filter, Evaluation evaluation) {
+			FilterPlan plan = filter.getPlan(snapshot);
+			BooleanSupplier cancelled = (evaluation != null ? evaluation.cancelled : null);
+			if (filter.isNodeFilter()) {
+				BitSet hidden = plan.evaluateNodes(cancelled);
+				hidden.flip(0, snapshot.getNodeCount());
+				hiddenNodes.put(filter, hidden);
+				if (evaluation != null) {
+					evaluation.step(snapshot.getNodeCount());
+				}
+			}
+			if (filter.isArcFilter()) {
+				BitSet hidden = plan.evaluateArcs(cancelled);
+				hidden.flip(0, snapshot.getArcCount());
+				hiddenArcs.put(filter, hidden);
+				if (evaluation != null) {
+					evaluation.step(snapshot.getArcCount());
+				}
+			}
+		}
+
+		/**
+		 * @return true if none of the filters hides the node
+		 */
+		public boolean isNodeVisible(int id) {
+			return isVisible(hiddenNodes, id);
+		}
+
+		/**
+		 * @return true if none of the filters hides the arc, this doesn't check its nodes
+		 */
+		public boolean isArcVisible(int id) {
+			return isVisible(hiddenArcs, id);
+		}
+
+		private boolean isVisible(Map<GraphFilter, BitSet> bits, int id) {
+			for (GraphFilter filter : filters) {
+				BitSet hidden = bits.get(filter);
+				if ((hidden != null) && hidden.get(id)) {
+					return false;
+				}
+			}
+			return true; // visible by default
+		}
+
+		public BitSet getAllNodeIds() {
+			BitSet ids = new BitSet(snapshot.getNodeCount());
+			ids.set(0, snapshot.getNodeCount());
+			return ids;
+		}
+
+		public BitSet getAllArcIds() {
+			BitSet ids = new BitSet(snapshot.getArcCount());
+			ids.set(0, snapshot.getArcCount());
+			return ids;
+		}
+
+		private BitSet getVisibleIds(Map<GraphFilter, BitSet> bits, BitSet all) {
+			for (GraphFilter filter : filters) {
+				BitSet hidden = bits.get(filter);
+				if (hidden != null) {
+					all.andNot(hidden);
+				}
+			}
+			return all;
+		}
+
+		/**
+		 * Compares the result with the current visibility of the nodes and arcs.  The nodes and
+		 * arcs are shown and hidden on the event dispatch thread, so this must be called on it.
+		 * @param nodeIds the ids of the nodes whose visibility will change are set
+		 * @param arcIds the ids of the arcs whose visibility will change are set
+		 */
+		public void getChangedIds(BitSet nodeIds, BitSet arcIds) {
+			BitSet visibleNodes = getVisibleIds(hiddenNodes, getAllNodeIds());
+			BitSet visibleArcs = getVisibleIds(hiddenArcs, getAllArcIds());
+			int[] outOffsets = snapshot.getOutOffsets();
+			int[] outTargets = snapshot.getOutTargets();
+			int[] outArcIds = snapshot.getOutArcIds();
+			for (int id = 0; id < snapshot.getNodeCount(); id++) {
+				boolean nodeVisible = visibleNodes.get(id);
+				if (snapshot.getNode(id).isVisible() != nodeVisible) {
+					nodeIds.set(id);
+				}
+				for (int i = outOffsets[id]; i < outOffsets[id + 1]; i++) {
+					int arcId = outArcIds[i];
+					boolean visible = nodeVisible && visibleArcs.get(arcId) && visibleNodes.get(outTargets[i]);
+					if (snapshot.getArc(arcId).isVisible() != visible) {
+						arcIds.set(arcId);
+					}
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Evaluates the filters on the background thread, and then applies the result on the event
+	 * dispatch thread unless a newer evaluation or change has replaced it.
+	 */
+	private class Evaluation implements Runnable {
+
+		private final int gen;
+		private final GraphModel model;
+		private final FilterState result;
+		// the filters to evaluate for every node and arc, the others have already been evaluated
+		private final List<GraphFilter> filters;
+		// the type filter and the items to re-evaluate instead, or null
+		private final GraphFilter typeFilter;
+		private final List<GraphItem> typedItems;
+		private final Runnable whenApplied;
+		private final int totalSteps;
+		private final int startChanges;
+		private int completedSteps;
+		private int reportedSteps;
+		private boolean started;
+		// true once a newer evaluation or change has replaced this one
+		private final BooleanSupplier cancelled;
+
+		public Evaluation(int gen, GraphModel model, FilterState result, List<GraphFilter> filters,
+				GraphFilter typeFilter, List<GraphItem> typedItems, Runnable whenApplied) {
+			this.gen = gen;
+			this.model = model;
+			this.result = result;
+			this.filters = filters;
+			this.typeFilter = typeFilter;
+			this.typedItems = typedItems;
+			this.whenApplied = whenApplied;
+			AdjacencySnapshot snapshot = result.snapshot;
+			int steps = 0;
+			if (typedItems == null) {
+				for (GraphFilter filter : filters) {
+					steps += (filter.isNodeFilter() ? snapshot.getNodeCount() : 0);
+					steps += (filter.isArcFilter() ? snapshot.getArcCount() : 0);
+				}
+			}
+			this.totalSteps = steps;
+			this.startChanges = modelChanges;
+			this.cancelled = new BooleanSupplier() {
+				public boolean getAsBoolean() {
+					return (Evaluation.this.gen != generation.get());
+				}
+			};
+		}
+
+		public void run() {
+			try {
+				step(0);
+				started = true;
+				fireProgressLater(PROGRESS_STARTED, new ProgressEvent(0, totalSteps));
+				AdjacencySnapshot snapshot = result.snapshot;
+				final BitSet nodeIds = new BitSet(snapshot.getNodeCount());
+				final BitSet arcIds = new BitSet(snapshot.getArcCount());
+				if (typeFilter != null) {
+					result.evaluate(typeFilter, typedItems, nodeIds, arcIds, this);
+				} else {
+					for (GraphFilter filter : filters) {
+						result.evaluate(filter, null, null, null, this);
+					}
+					// the ids that change are found on the event dispatch thread
+				}
+				step(0);
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						apply(nodeIds, arcIds);
+					}
+				});
+			} catch (CancellationException e) {
+				// a newer evaluation replaced this one
+				end();
+			}
+		}
+
+		/**
+		 * Updates the progress.
+		 * @throws CancellationException if this evaluation has been replaced
+		 */
+		public void step(int steps) {
+			if (gen != generation.get()) {
+				throw new CancellationException();
+			}
+			completedSteps += steps;
+			if ((steps > 0) && (20 * (completedSteps - reportedSteps) >= totalSteps)) {
+				reportedSteps = completedSteps;
+				fireProgressLater(PROGRESS_UPDATED, new ProgressEvent(Math.min(completedSteps, totalSteps), totalSteps));
+			}
+		}
+
+		private void end() {
+			if (started) {
+				fireProgressLater(PROGRESS_ENDED, new ProgressEvent(totalSteps, totalSteps));
+			}
+		}
+
+		private void apply(BitSet nodeIds, BitSet arcIds) {
+			end();
+			if (gen != generation.get()) {
+				return;
+			}
+			evaluating = false;
+			if ((modelChanges != startChanges) ||
+					((model instanceof AdjacencySnapshot.Provider) && (AdjacencySnapshot.create(model) != result.snapshot))) {
+				// the model changed while the filters were evaluated
+				applyFiltersLater(model, null, whenApplied);
+				return;
+			}
+			if (typeFilter == null) {
+				result.getChangedIds(nodeIds, arcIds);
+			}
+			state = result;
+			applyVisibility(result, nodeIds, arcIds);
+			if (whenApplied != null) {
+				whenApplied.run();
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,271 @@
+package ca.uvic.cs.chisel.cajun.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+import ca.uvic.cs.chisel.cajun.graph.AdjacencySnapshot;
+import ca.uvic.cs.chisel.cajun.graph.GraphItem;
+
+/**
+ * A {@link GraphPredicate} compiled for one {@link AdjacencySnapshot}.  The predicate tree is
+ * flattened into a list of instructions: tests, nots, and jumps that skip the rest of an and or
+ * an or once its result is known.  Work that doesn't depend on the item, like finding a
+ * neighbourhood, is done once when the plan is compiled.
+ * <p>
+ * {@link #evaluateNodes()} and {@link #evaluateArcs()} evaluate the plan for every node or arc in
+ * the snapshot.  Large snapshots are split into ranges that are evaluated in parallel in the
+ * common {@link ForkJoinPool}, so the items must not be changed while this is running.
+ */
+public class FilterPlan {
+
+	/** Snapshots with at least this many nodes or arcs are evaluated in parallel */
+	public static final int PARALLEL_THRESHOLD = 8192;
+
+	// the number of 64 bit words of results that each fork/join task computes
+	private static final int WORDS_PER_TASK = 64;
+
+	private static final int NOT = -1;
+	private static final int JUMP_IF_FALSE = -2;
+	private static final int JUMP_IF_TRUE = -3;
+
+	private final AdjacencySnapshot snapshot;
+	// the index of the test to run, or one of the instructions above
+	private final int[] instructions;
+	// the instruction to go to for the jumps
+	private final int[] jumpTargets;
+	private final Test[] tests;
+	private final boolean parallel;
+
+	private FilterPlan(Builder builder) {
+		this.snapshot = builder.snapshot;
+		this.instructions = Arrays.copyOf(builder.instructions, builder.size);
+		this.jumpTargets = Arrays.copyOf(builder.jumpTargets, builder.size);
+		this.tests = builder.tests.toArray(new Test[builder.tests.size()]);
+		this.parallel = builder.parallel;
+	}
+
+	public static FilterPlan compile(GraphPredicate predicate, AdjacencySnapshot snapshot) {
+		if ((predicate == null) || (snapshot == null)) {
+			throw new NullPointerException("The predicate and snapshot can't be null.");
+		}
+		Builder builder = new Builder(snapshot);
+		predicate.compile(builder);
+		return new FilterPlan(builder);
+	}
+
+	public AdjacencySnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return false if the plan contains a {@link GraphFilter}, which is always evaluated on
+	 * the calling thread
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * @param item the node or arc
+	 * @param id the snapshot id of the node or arc
+	 * @return true if the item matches the predicate
+	 */
+	public boolean evaluate(GraphItem item, int id) {
+		boolean value = true;
+		for (int i = 0; i < instructions.length; i++) {
+			int instruction = instructions[i];
+			if (instruction >= 0) {
+				value = tests[instruction].test(item, id);
+			} else if (instruction == NOT) {
+				value = !value;
+			} else if ((instruction == JUMP_IF_FALSE) != value) {
+				// the next instruction is the jump target
+				i = jumpTargets[i] - 1;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return the ids of the nodes that match the predicate
+	 */
+	public BitSet evaluateNodes() {
+		return evaluateNodes(null);
+	}
+
+	/**
+	 * @param cancelled checked every 64 nodes, or null
+	 * @return the ids of the nodes that match the predicate
+	 * @throws CancellationException if cancelled returns true
+	 */
+	public BitSet evaluateNodes(BooleanSupplier cancelled) {
+		return evaluate(true, snapshot.getNodeCount(), cancelled);
+	}
+
+	/**
+	 * @return the ids of the arcs that match the predicate
+	 */
+	public BitSet evaluateArcs() {
+		return evaluateArcs(null);
+	}
+
+	/**
+	 * @param cancelled checked every 64 arcs, or null
+	 * @return the ids of the arcs that match the predicate
+	 * @throws CancellationException if cancelled returns true
+	 */
+	public BitSet evaluateArcs(BooleanSupplier cancelled) {
+		return evaluate(false, snapshot.getArcCount(), cancelled);
+	}
+
+	private BitSet evaluate(boolean nodes, int count, BooleanSupplier cancelled) {
+		// each range of words is only written by one task
+		long[] words = new long[(count + 63) >> 6];
+		EvaluateTask task = new EvaluateTask(nodes, count, words, 0, words.length, cancelled);
+		if (parallel && (count >= PARALLEL_THRESHOLD)) {
+			ForkJoinPool.commonPool().invoke(task);
+		} else {
+			task.evaluate();
+		}
+		return BitSet.valueOf(words);
+	}
+
+	@Override
+	public String toString() {
+		return "FilterPlan: " + instructions.length + " instructions, " + tests.length + " tests";
+	}
+
+	/**
+	 * One test in the plan.  Tests must be thread safe unless the plan isn't parallel.
+	 */
+	interface Test {
+
+		/**
+		 * @param id the snapshot id of the node or arc
+		 */
+		public boolean test(GraphItem item, int id);
+
+	}
+
+	/**
+	 * Collects the instructions while a predicate is compiled.
+	 */
+	static class Builder {
+
+		private final AdjacencySnapshot snapshot;
+		private int[] instructions;
+		private int[] jumpTargets;
+		private int size;
+		private List<Test> tests;
+		private boolean parallel;
+
+		Builder(AdjacencySnapshot snapshot) {
+			this.snapshot = snapshot;
+			this.instructions = new int[16];
+			this.jumpTargets = new int[16];
+			this.tests = new ArrayList<Test>();
+			this.parallel = true;
+		}
+
+		public AdjacencySnapshot getSnapshot() {
+			return snapshot;
+		}
+
+		public void setParallel(boolean parallel) {
+			this.parallel = parallel;
+		}
+
+		public void addTest(Test test) {
+			tests.add(test);
+			add(tests.size() - 1);
+		}
+
+		public void addNot() {
+			add(NOT);
+		}
+
+		/**
+		 * Adds a jump, the target is set later with {@link #setJumpTarget(int)}.
+		 * @param whenTrue true to jump if the current value is true, false to jump if it is false
+		 * @return the index of the jump instruction
+		 */
+		public int addJump(boolean whenTrue) {
+			return add(whenTrue ? JUMP_IF_TRUE : JUMP_IF_FALSE);
+		}
+
+		/**
+		 * Makes the jump go to the next instruction that is added.
+		 */
+		public void setJumpTarget(int jump) {
+			jumpTargets[jump] = size;
+		}
+
+		private int add(int instruction) {
+			if (size == instructions.length) {
+				instructions = Arrays.copyOf(instructions, 2 * size);
+				jumpTargets = Arrays.copyOf(jumpTargets, 2 * size);
+			}
+			instructions[size] = instruction;
+			return size++;
+		}
+
+	}
+
+	/**
+	 * Evaluates the plan for a range of words of the result, splitting it in half until the
+	 * ranges are small enough.
+	 */
+	private class EvaluateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean nodes;
+		private final int count;
+		private final long[] words;
+		private final int fromWord;
+		private final int toWord;
+		private final BooleanSupplier cancelled;
+
+		public EvaluateTask(boolean nodes, int count, long[] words, int fromWord, int toWord,
+				BooleanSupplier cancelled) {
+			this.nodes = nodes;
+			this.count = count;
+			this.words = words;
+			this.fromWord = fromWord;
+			this.toWord = toWord;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		protected void compute() {
+			if (toWord - fromWord <= WORDS_PER_TASK) {
+				evaluate();
+			} else {
+				int middle = (fromWord + toWord) >>> 1;
+				invokeAll(new EvaluateTask(nodes, count, words, fromWord, middle, cancelled),
+						new EvaluateTask(nodes, count, words, middle, toWord, cancelled));
+			}
+		}
+
+		public void evaluate() {
+			int end = Math.min(count, toWord << 6);
+			for (int id = fromWord << 6; id < end; id++) {
+				if (((id & 63) == 0) && (cancelled != null) && cancelled.getAsBoolean()) {
+					throw new CancellationException();
+				}
+				GraphItem item = (nodes ? snapshot.getNode(id) : snapshot.getArc(id));
+				if (FilterPlan.this.evaluate(item, id)) {
+					words[id >> 6] |= (1L << id);
+				}
+			}
+		}
+
+	}
+
+}
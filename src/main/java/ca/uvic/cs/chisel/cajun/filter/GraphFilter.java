@@ -2,6 +2,14 @@ package ca.uvic.cs.chisel.cajun.filter;
 
 import ca.uvic.cs.chisel.cajun.graph.GraphItem;
 
+/**
+ * Decides which nodes and arcs are visible.
+ * <p>
+ * {@link FilterManager#applyFiltersLater(ca.uvic.cs.chisel.cajun.graph.GraphModel, FilterChangedEvent, Runnable)}
+ * only evaluates the node and arc type filters and the {@link PredicateFilter}s that don't contain
+ * another filter on its background thread.  Other filters are always evaluated on the event
+ * dispatch thread, so they can read the nodes and arcs like any other Swing code.
+ */
 public interface GraphFilter {
 
 	/**
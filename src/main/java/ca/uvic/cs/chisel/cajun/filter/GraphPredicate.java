@@ -0,0 +1,491 @@
+package ca.uvic.cs.chisel.cajun.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import ca.uvic.cs.chisel.cajun.graph.AdjacencySnapshot;
+import ca.uvic.cs.chisel.cajun.graph.GraphItem;
+import ca.uvic.cs.chisel.cajun.graph.GraphTraversal;
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * A condition on graph nodes and arcs that can be combined with and, or and not, e.g.
+ * <pre>
+ * GraphPredicate p = GraphPredicate.type("class").and(GraphPredicate.degree(5, Integer.MAX_VALUE))
+ *         .or(GraphPredicate.withinHops(selectedNodes, 2));
+ * filterManager.addFilter(new PredicateFilter(p, true, false));
+ * </pre>
+ * The text, degree and neighbourhood predicates only match nodes, they are always false for
+ * arcs.  Predicates are immutable.
+ * <p>
+ * {@link #test(GraphItem)} evaluates the predicate on one item.  The {@link FilterManager}
+ * compiles the predicate into a {@link FilterPlan} instead, which evaluates it over all the
+ * nodes or arcs of a snapshot.
+ */
+public abstract class GraphPredicate {
+
+	GraphPredicate() {
+	}
+
+	/**
+	 * @return true if the node or arc matches
+	 */
+	public abstract boolean test(GraphItem item);
+
+	/**
+	 * Adds the instructions for this predicate to the plan.
+	 */
+	abstract void compile(FilterPlan.Builder builder);
+
+	public GraphPredicate and(GraphPredicate other) {
+		return and(new GraphPredicate[] { this, other });
+	}
+
+	public GraphPredicate or(GraphPredicate other) {
+		return or(new GraphPredicate[] { this, other });
+	}
+
+	public GraphPredicate negate() {
+		return not(this);
+	}
+
+	/**
+	 * Matches the nodes or arcs whose type is one of the given types.
+	 */
+	public static GraphPredicate type(Object... types) {
+		return type(Arrays.asList(types));
+	}
+
+	public static GraphPredicate type(Collection<? extends Object> types) {
+		return new TypePredicate(new HashSet<Object>(types));
+	}
+
+	/**
+	 * Matches the nodes whose text contains the given text, ignoring case.
+	 */
+	public static GraphPredicate textContains(String text) {
+		if (text == null) {
+			throw new NullPointerException("The text can't be null.");
+		}
+		return new TextPredicate(Pattern.compile(Pattern.quote(text), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+	}
+
+	/**
+	 * Matches the nodes whose text contains a match for the pattern.
+	 */
+	public static GraphPredicate textMatches(Pattern pattern) {
+		if (pattern == null) {
+			throw new NullPointerException("The pattern can't be null.");
+		}
+		return new TextPredicate(pattern);
+	}
+
+	/**
+	 * Matches the nodes and arcs that have the given attribute.
+	 */
+	public static GraphPredicate hasAttribute(Object key) {
+		return new AttributePredicate(key, null);
+	}
+
+	/**
+	 * Matches the nodes and arcs whose attribute equals the value.
+	 */
+	public static GraphPredicate attribute(Object key, Object value) {
+		if (value == null) {
+			throw new NullPointerException("The attribute value can't be null, use hasAttribute(key).negate().");
+		}
+		return new AttributePredicate(key, value);
+	}
+
+	/**
+	 * Matches the nodes that have between min and max arcs, inclusive.
+	 */
+	public static GraphPredicate degree(int min, int max) {
+		return degree(min, max, GraphTraversal.BOTH);
+	}
+
+	/**
+	 * Matches the nodes that have between min and max arcs, inclusive.
+	 * @param direction which arcs to count, one of {@link GraphTraversal#OUTGOING},
+	 * {@link GraphTraversal#INCOMING} or {@link GraphTraversal#BOTH}
+	 */
+	public static GraphPredicate degree(int min, int max, int direction) {
+		if ((direction & GraphTraversal.BOTH) == 0) {
+			throw new IllegalArgumentException("Invalid direction: " + direction);
+		}
+		return new DegreePredicate(min, max, direction);
+	}
+
+	/**
+	 * Matches the nodes that are within the given number of hops of any of the nodes,
+	 * following arcs in both directions.  The nodes themselves are included.
+	 */
+	public static GraphPredicate withinHops(Collection<GraphNode> nodes, int hops) {
+		if (hops < 0) {
+			throw new IllegalArgumentException("The number of hops can't be negative: " + hops);
+		}
+		return new NeighbourhoodPredicate(new ArrayList<GraphNode>(nodes), hops);
+	}
+
+	/**
+	 * Matches the nodes and arcs that the filter says are visible.
+	 * Plans that contain a filter are never evaluated in parallel, since the filter might not be
+	 * thread safe.
+	 */
+	public static GraphPredicate filter(GraphFilter filter) {
+		if (filter == null) {
+			throw new NullPointerException("The filter can't be null.");
+		}
+		return new FilterPredicate(filter);
+	}
+
+	public static GraphPredicate and(GraphPredicate... predicates) {
+		return new CompositePredicate(true, predicates);
+	}
+
+	public static GraphPredicate or(GraphPredicate... predicates) {
+		return new CompositePredicate(false, predicates);
+	}
+
+	public static GraphPredicate not(GraphPredicate predicate) {
+		if (predicate == null) {
+			throw new NullPointerException("The predicate can't be null.");
+		}
+		if (predicate instanceof NotPredicate) {
+			return ((NotPredicate) predicate).predicate;
+		}
+		return new NotPredicate(predicate);
+	}
+
+	/**
+	 * A predicate that is evaluated by a single test in the plan.
+	 */
+	private static abstract class LeafPredicate extends GraphPredicate implements FilterPlan.Test {
+
+		@Override
+		void compile(FilterPlan.Builder builder) {
+			builder.addTest(createTest(builder.getSnapshot()));
+		}
+
+		/**
+		 * @return the test to use in a plan for the snapshot, by default this predicate
+		 */
+		FilterPlan.Test createTest(AdjacencySnapshot snapshot) {
+			return this;
+		}
+
+		public boolean test(GraphItem item, int id) {
+			return test(item);
+		}
+
+	}
+
+	private static class TypePredicate extends LeafPredicate {
+
+		private final Set<Object> types;
+
+		public TypePredicate(Set<Object> types) {
+			this.types = types;
+		}
+
+		@Override
+		public boolean test(GraphItem item) {
+			return types.contains(item.getType());
+		}
+
+		@Override
+		public String toString() {
+			return "type" + types;
+		}
+
+	}
+
+	private static class TextPredicate extends LeafPredicate {
+
+		private final Pattern pattern;
+
+		public TextPredicate(Pattern pattern) {
+			this.pattern = pattern;
+		}
+
+		@Override
+		public boolean test(GraphItem item) {
+			if (item instanceof GraphNode) {
+				String text = ((GraphNode) item).getText();
+				return (text != null) && pattern.matcher(text).find();
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "text(" + pattern + ")";
+		}
+
+	}
+
+	private static class AttributePredicate extends LeafPredicate {
+
+		private final Object key;
+		private final Object value;
+
+		public AttributePredicate(Object key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public boolean test(GraphItem item) {
+			Object itemValue = item.getAttribute(key);
+			return (value == null ? itemValue != null : value.equals(itemValue));
+		}
+
+		@Override
+		public String toString() {
+			return "attribute(" + key + (value != null ? "=" + value : "") + ")";
+		}
+
+	}
+
+	private static class DegreePredicate extends LeafPredicate {
+
+		private final int min;
+		private final int max;
+		private final int direction;
+
+		public DegreePredicate(int min, int max, int direction) {
+			this.min = min;
+			this.max = max;
+			this.direction = direction;
+		}
+
+		@Override
+		public boolean test(GraphItem item) {
+			if (item instanceof GraphNode) {
+				boolean incoming = ((direction & GraphTraversal.INCOMING) != 0);
+				boolean outgoing = ((direction & GraphTraversal.OUTGOING) != 0);
+				int degree = ((GraphNode) item).getArcs(incoming, outgoing).size();
+				return (degree >= min) && (degree <= max);
+			}
+			return false;
+		}
+
+		@Override
+		FilterPlan.Test createTest(final AdjacencySnapshot snapshot) {
+			final int[] outOffsets = snapshot.getOutOffsets();
+			final int[] outTargets = snapshot.getOutTargets();
+			final int[] inOffsets = snapshot.getInOffsets();
+			return new FilterPlan.Test() {
+				public boolean test(GraphItem item, int id) {
+					if (!(item instanceof GraphNode)) {
+						return false;
+					}
+					int degree = 0;
+					if ((direction & GraphTraversal.OUTGOING) != 0) {
+						degree += outOffsets[id + 1] - outOffsets[id];
+					}
+					if ((direction & GraphTraversal.INCOMING) != 0) {
+						degree += inOffsets[id + 1] - inOffsets[id];
+					}
+					if (direction == GraphTraversal.BOTH) {
+						// self arcs are only counted once, like GraphNode.getArcs()
+						for (int i = outOffsets[id]; i < outOffsets[id + 1]; i++) {
+							if (outTargets[i] == id) {
+								degree--;
+							}
+						}
+					}
+					return (degree >= min) && (degree <= max);
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return "degree(" + min + ".." + max + ")";
+		}
+
+	}
+
+	private static class NeighbourhoodPredicate extends LeafPredicate {
+
+		private final List<GraphNode> nodes;
+		private final int hops;
+
+		public NeighbourhoodPredicate(List<GraphNode> nodes, int hops) {
+			this.nodes = nodes;
+			this.hops = hops;
+		}
+
+		/**
+		 * Searches outwards from the item, this is slow for more than a few hops.
+		 */
+		@Override
+		public boolean test(GraphItem item) {
+			if (!(item instanceof GraphNode)) {
+				return false;
+			}
+			Set<GraphNode> targets = new HashSet<GraphNode>(nodes);
+			Set<GraphNode> visited = new HashSet<GraphNode>();
+			List<GraphNode> level = Collections.singletonList((GraphNode) item);
+			visited.add((GraphNode) item);
+			for (int depth = 0; !level.isEmpty(); depth++) {
+				List<GraphNode> next = new ArrayList<GraphNode>();
+				for (GraphNode node : level) {
+					if (targets.contains(node)) {
+						return true;
+					}
+					if (depth < hops) {
+						for (GraphNode neighbour : node.getConnectedNodes()) {
+							if (visited.add(neighbour)) {
+								next.add(neighbour);
+							}
+						}
+					}
+				}
+				level = next;
+			}
+			return false;
+		}
+
+		/**
+		 * The neighbourhood is found once for the whole snapshot.
+		 */
+		@Override
+		FilterPlan.Test createTest(AdjacencySnapshot snapshot) {
+			final BitSet ids = new GraphTraversal(snapshot).getNeighbourhoodIds(nodes, hops);
+			return new FilterPlan.Test() {
+				public boolean test(GraphItem item, int id) {
+					return (item instanceof GraphNode) && ids.get(id);
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return "withinHops(" + nodes.size() + " nodes, " + hops + ")";
+		}
+
+	}
+
+	private static class FilterPredicate extends LeafPredicate {
+
+		private final GraphFilter filter;
+
+		public FilterPredicate(GraphFilter filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		public boolean test(GraphItem item) {
+			if (item instanceof GraphArc ? filter.isArcFilter() : filter.isNodeFilter()) {
+				return filter.isVisible(item);
+			}
+			return true;
+		}
+
+		@Override
+		void compile(FilterPlan.Builder builder) {
+			builder.setParallel(false);
+			super.compile(builder);
+		}
+
+		@Override
+		public String toString() {
+			return "filter(" + filter + ")";
+		}
+
+	}
+
+	private static class CompositePredicate extends GraphPredicate {
+
+		private final boolean and;
+		private final GraphPredicate[] predicates;
+
+		public CompositePredicate(boolean and, GraphPredicate[] predicates) {
+			if (predicates.length == 0) {
+				throw new IllegalArgumentException("At least one predicate is needed.");
+			}
+			for (GraphPredicate predicate : predicates) {
+				if (predicate == null) {
+					throw new NullPointerException("The predicates can't be null.");
+				}
+			}
+			this.and = and;
+			this.predicates = predicates.clone();
+		}
+
+		@Override
+		public boolean test(GraphItem item) {
+			for (GraphPredicate predicate : predicates) {
+				if (predicate.test(item) != and) {
+					return !and;
+				}
+			}
+			return and;
+		}
+
+		/**
+		 * Each predicate but the last is followed by a jump to the end, so the remaining
+		 * predicates are skipped once the result is known.
+		 */
+		@Override
+		void compile(FilterPlan.Builder builder) {
+			int[] jumps = new int[predicates.length - 1];
+			for (int i = 0; i < predicates.length; i++) {
+				predicates[i].compile(builder);
+				if (i < jumps.length) {
+					jumps[i] = builder.addJump(!and);
+				}
+			}
+			for (int jump : jumps) {
+				builder.setJumpTarget(jump);
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(and ? "and(" : "or(");
+			for (int i = 0; i < predicates.length; i++) {
+				sb.append(i > 0 ? ", " : "").append(predicates[i]);
+			}
+			return sb.append(')').toString();
+		}
+
+	}
+
+	private static class NotPredicate extends GraphPredicate {
+
+		private final GraphPredicate predicate;
+
+		public NotPredicate(GraphPredicate predicate) {
+			this.predicate = predicate;
+		}
+
+		@Override
+		public boolean test(GraphItem item) {
+			return !predicate.test(item);
+		}
+
+		@Override
+		void compile(FilterPlan.Builder builder) {
+			predicate.compile(builder);
+			builder.addNot();
+		}
+
+		@Override
+		public String toString() {
+			return "not(" + predicate + ")";
+		}
+
+	}
+
+}
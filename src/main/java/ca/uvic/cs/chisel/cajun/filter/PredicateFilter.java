@@ -0,0 +1,67 @@
+package ca.uvic.cs.chisel.cajun.filter;
+
+import ca.uvic.cs.chisel.cajun.graph.AdjacencySnapshot;
+import ca.uvic.cs.chisel.cajun.graph.GraphItem;
+
+/**
+ * A filter that shows the nodes and/or arcs that match a {@link GraphPredicate}, and hides
+ * the rest.  The {@link FilterManager} compiles the predicate into a {@link FilterPlan} when it
+ * applies the filter to the whole graph.
+ */
+public class PredicateFilter implements GraphFilter {
+
+	private final GraphPredicate predicate;
+	private final boolean nodeFilter;
+	private final boolean arcFilter;
+
+	// the last plan, reused until the snapshot changes
+	private volatile FilterPlan plan;
+
+	/**
+	 * @param predicate the nodes and arcs to show
+	 * @param nodeFilter true to filter the nodes
+	 * @param arcFilter true to filter the arcs
+	 */
+	public PredicateFilter(GraphPredicate predicate, boolean nodeFilter, boolean arcFilter) {
+		if (predicate == null) {
+			throw new NullPointerException("The predicate can't be null.");
+		}
+		this.predicate = predicate;
+		this.nodeFilter = nodeFilter;
+		this.arcFilter = arcFilter;
+	}
+
+	public GraphPredicate getPredicate() {
+		return predicate;
+	}
+
+	public boolean isNodeFilter() {
+		return nodeFilter;
+	}
+
+	public boolean isArcFilter() {
+		return arcFilter;
+	}
+
+	public boolean isVisible(GraphItem item) {
+		return predicate.test(item);
+	}
+
+	/**
+	 * @return the predicate compiled for the snapshot
+	 */
+	public FilterPlan getPlan(AdjacencySnapshot snapshot) {
+		FilterPlan current = plan;
+		if ((current == null) || (current.getSnapshot() != snapshot)) {
+			current = FilterPlan.compile(predicate, snapshot);
+			plan = current;
+		}
+		return current;
+	}
+
+	@Override
+	public String toString() {
+		return "PredicateFilter: " + predicate;
+	}
+
+}
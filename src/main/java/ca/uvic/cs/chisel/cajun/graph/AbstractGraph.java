@@ -14,6 +14,7 @@ import javax.swing.BorderFactory;
 import javax.swing.JComponent;
 import javax.swing.JPopupMenu;
 import javax.swing.JToolTip;
+import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 
 import org.eclipse.zest.layouts.LayoutStyles;
@@ -36,6 +37,8 @@ import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
 import ca.uvic.cs.chisel.cajun.graph.arc.GraphArcStyle;
 import ca.uvic.cs.chisel.cajun.graph.handlers.GraphPopupListener;
 import ca.uvic.cs.chisel.cajun.graph.handlers.KeyHandlerDelegate;
+import ca.uvic.cs.chisel.cajun.graph.layout.ForceDirectedLayoutAlgorithm;
+import ca.uvic.cs.chisel.cajun.graph.layout.MultilevelLayoutAlgorithm;
 import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNodeStyle;
 import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
 import ca.uvic.cs.chisel.cajun.graph.node.GraphNodeCollectionEvent;
@@ -74,6 +77,8 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 
 	private List<LayoutAction> layouts;
 	private LayoutAction lastLayout;
+	// added to every layout, including the layouts that are added later
+	private List<ProgressListener> layoutListeners;
 
 	// we keep track of these listeners, and make sure they are always
 	// added to the current model (and removed from the old models)
@@ -98,6 +103,14 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 		public void graphArcRemoved(GraphArc arc) {
 			removeGraphArc(arc);
 		}
+		public void graphChanged(GraphModelEvent event) {
+			if (event.isCleared()) {
+				clear();
+			}
+			removeGraphItems(event.getRemovedNodes(), event.getRemovedArcs());
+			addGraphItems(event.getNodes(), event.getArcs());
+			updateGraphItems(event.getChangedNodes(), event.getChangedArcs());
+		}
 	};
 
 	private GraphNodeCollectionListener selectionListener = new GraphNodeCollectionListener() {
@@ -135,8 +148,18 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 
 	private FilterChangedListener filterListener = new FilterChangedListener() {
 		public void filtersChanged(FilterChangedEvent fce) {
-			filterManager.applyFilters(model);
-			
+			if (SwingUtilities.isEventDispatchThread()) {
+				// evaluate the filters in the background so quick changes don't block the UI
+				filterManager.applyFiltersLater(model, fce, repaintRunnable);
+			} else {
+				filterManager.applyFilters(model, fce);
+				repaint();
+			}
+		}
+	};
+
+	private Runnable repaintRunnable = new Runnable() {
+		public void run() {
 			repaint();
 		}
 	};
@@ -155,6 +178,7 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 		this.graphModelListeners = new ArrayList<GraphModelListener>();
 
 		this.layouts = new ArrayList<LayoutAction>();
+		this.layoutListeners = new ArrayList<ProgressListener>();
 		addDefaultLayouts();
 
 		this.graphPopupListener = new GraphPopupListener();
@@ -225,12 +249,23 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 		return this;
 	}
 	
+	/**
+	 * Adds the listener to all the layouts, and to any layouts that are added later.
+	 */
 	public void addLayoutListener(ProgressListener listener) {
+		layoutListeners.add(listener);
 		for(LayoutAction layout : layouts) {
 			layout.addProgressListener(listener);
 		}
 	}
 
+	public void removeLayoutListener(ProgressListener listener) {
+		layoutListeners.remove(listener);
+		for (LayoutAction layout : layouts) {
+			layout.removeProgressListener(listener);
+		}
+	}
+
 	public PCanvas getCanvas() {
 		return this;
 	}
@@ -322,6 +357,11 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 		matchingNodes.setNodes(nodes);
 	}
 
+	@Override
+	public void addMatchingNodes(Collection<GraphNode> nodes) {
+		matchingNodes.addNodes(nodes);
+	}
+
 	public GraphModel getModel() {
 		return model;
 	}
@@ -447,6 +487,22 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 		}
 	}
 
+	/**
+	 * Repaints the nodes and arcs whose text or type changed.
+	 */
+	protected void updateGraphItems(Collection<GraphNode> changedNodes, Collection<GraphArc> changedArcs) {
+		for (GraphNode node : changedNodes) {
+			if (node instanceof PNode) {
+				((PNode) node).invalidatePaint();
+			}
+		}
+		for (GraphArc arc : changedArcs) {
+			if (arc instanceof PNode) {
+				((PNode) arc).invalidatePaint();
+			}
+		}
+	}
+
 	protected void removeGraphItems(Collection<GraphNode> nodesToRemove, Collection<GraphArc> arcsToRemove) {
 		for (GraphNode node : nodesToRemove) {
 			removeGraphNode(node);
@@ -461,6 +517,8 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 		addLayout(new LayoutAction(LayoutConstants.LAYOUT_GRID_BY_ALPHA, ResourceHandler.getIcon("icon_grid_layout.gif"), new GridLayoutAlgorithm(style), this));
 		addLayout(new LayoutAction(LayoutConstants.LAYOUT_RADIAL, ResourceHandler.getIcon("icon_radial_layout.gif"), new RadialLayoutAlgorithm(style), this));
 		addLayout(new LayoutAction(LayoutConstants.LAYOUT_SPRING, ResourceHandler.getIcon("icon_spring_layout.gif"), new SpringLayoutAlgorithm(style), this));
+		addLayout(new LayoutAction(LayoutConstants.LAYOUT_FORCE_DIRECTED, ResourceHandler.getIcon("icon_force_layout.gif"), new ForceDirectedLayoutAlgorithm(style), this));
+		addLayout(new LayoutAction(LayoutConstants.LAYOUT_MULTILEVEL, ResourceHandler.getIcon("icon_multilevel_layout.gif"), new MultilevelLayoutAlgorithm(style), this));
 		addLayout(new LayoutAction(LayoutConstants.LAYOUT_TREE_VERTICAL, ResourceHandler.getIcon("icon_tree_layout.gif"), new TreeLayoutAlgorithm(style), this));
 		addLayout(new LayoutAction(LayoutConstants.LAYOUT_TREE_HORIZONTAL, ResourceHandler.getIcon("icon_tree_layout_horizontal.gif"), new HorizontalTreeLayoutAlgorithm(style), this));
 		addLayout(new LayoutAction(LayoutConstants.LAYOUT_DIRECTED_VERTICAL, ResourceHandler.getIcon("icon_tree_layout.gif"), new DirectedGraphLayoutAlgorithm(style), this));
@@ -473,6 +531,9 @@ public abstract class AbstractGraph extends PCanvas implements Graph {
 	public void addLayout(LayoutAction layout) {
 		if (!this.layouts.contains(layout)) {
 			this.layouts.add(layout);
+			for (ProgressListener listener : layoutListeners) {
+				layout.addProgressListener(listener);
+			}
 			if (lastLayout == null) {
 				lastLayout = layout;
 			}
@@ -0,0 +1,219 @@
+package ca.uvic.cs.chisel.cajun.graph;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * An immutable, array based view of the nodes and arcs in a {@link GraphModel}.
+ * Every node and arc is given a dense int id, and the arcs are stored in compressed sparse row
+ * form - the outgoing arcs of node <code>n</code> are at indices
+ * <code>outOffsets[n]</code> (inclusive) to <code>outOffsets[n + 1]</code> (exclusive) in the
+ * <code>outTargets</code> and <code>outArcIds</code> arrays, and the same for the incoming arcs.
+ * <p>
+ * Graph algorithms can walk these arrays without allocating anything.
+ * The arrays returned by the getters are shared and must not be modified.
+ * A snapshot does not change when the model changes, use
+ * {@link DefaultGraphModel#getAdjacencySnapshot()} to get a current one.
+ */
+public class AdjacencySnapshot {
+
+	private final GraphNode[] nodes;
+	private final GraphArc[] arcs;
+	private final Map<GraphNode, Integer> nodeIds;
+	private final Map<GraphArc, Integer> arcIds;
+
+	private final int[] arcSources;
+	private final int[] arcDestinations;
+
+	private final int[] outOffsets;
+	private final int[] outTargets;
+	private final int[] outArcIds;
+
+	private final int[] inOffsets;
+	private final int[] inSources;
+	private final int[] inArcIds;
+
+	/**
+	 * Creates a snapshot of the given nodes and arcs. Arcs with a source or destination node that
+	 * isn't in the nodes collection are given an id but are left out of the adjacency arrays.
+	 */
+	public AdjacencySnapshot(Collection<GraphNode> allNodes, Collection<GraphArc> allArcs) {
+		int n = allNodes.size();
+		int m = allArcs.size();
+		this.nodes = allNodes.toArray(new GraphNode[n]);
+		this.arcs = allArcs.toArray(new GraphArc[m]);
+		this.nodeIds = new IdentityHashMap<GraphNode, Integer>(n);
+		this.arcIds = new IdentityHashMap<GraphArc, Integer>(m);
+		for (int i = 0; i < n; i++) {
+			nodeIds.put(nodes[i], i);
+		}
+
+		this.arcSources = new int[m];
+		this.arcDestinations = new int[m];
+		this.outOffsets = new int[n + 1];
+		this.inOffsets = new int[n + 1];
+		for (int i = 0; i < m; i++) {
+			GraphArc arc = arcs[i];
+			arcIds.put(arc, i);
+			int src = getNodeId(arc.getSource());
+			int dest = getNodeId(arc.getDestination());
+			arcSources[i] = src;
+			arcDestinations[i] = dest;
+			if ((src != -1) && (dest != -1)) {
+				outOffsets[src + 1]++;
+				inOffsets[dest + 1]++;
+			}
+		}
+		// convert the degree counts into offsets
+		for (int i = 0; i < n; i++) {
+			outOffsets[i + 1] += outOffsets[i];
+			inOffsets[i + 1] += inOffsets[i];
+		}
+
+		this.outTargets = new int[outOffsets[n]];
+		this.outArcIds = new int[outOffsets[n]];
+		this.inSources = new int[inOffsets[n]];
+		this.inArcIds = new int[inOffsets[n]];
+		int[] outNext = new int[n];
+		int[] inNext = new int[n];
+		System.arraycopy(outOffsets, 0, outNext, 0, n);
+		System.arraycopy(inOffsets, 0, inNext, 0, n);
+		for (int i = 0; i < m; i++) {
+			int src = arcSources[i];
+			int dest = arcDestinations[i];
+			if ((src != -1) && (dest != -1)) {
+				int out = outNext[src]++;
+				outTargets[out] = dest;
+				outArcIds[out] = i;
+				int in = inNext[dest]++;
+				inSources[in] = src;
+				inArcIds[in] = i;
+			}
+		}
+	}
+
+	/**
+	 * Creates a snapshot of all the nodes and arcs in the model.
+	 * If the model is a {@link Provider}, e.g. a {@link DefaultGraphModel},
+	 * then its cached snapshot is returned.
+	 */
+	public static AdjacencySnapshot create(GraphModel model) {
+		if (model instanceof Provider) {
+			return ((Provider) model).getAdjacencySnapshot();
+		}
+		return new AdjacencySnapshot(model.getAllNodes(), model.getAllArcs());
+	}
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	public int getArcCount() {
+		return arcs.length;
+	}
+
+	public GraphNode getNode(int nodeId) {
+		return nodes[nodeId];
+	}
+
+	public GraphArc getArc(int arcId) {
+		return arcs[arcId];
+	}
+
+	/**
+	 * @return the id of the node, or -1 if the node isn't in this snapshot
+	 */
+	public int getNodeId(GraphNode node) {
+		Integer id = nodeIds.get(node);
+		return (id != null ? id.intValue() : -1);
+	}
+
+	/**
+	 * @return the id of the arc, or -1 if the arc isn't in this snapshot
+	 */
+	public int getArcId(GraphArc arc) {
+		Integer id = arcIds.get(arc);
+		return (id != null ? id.intValue() : -1);
+	}
+
+	/**
+	 * @return the source node id of the arc, or -1 if the source isn't in this snapshot
+	 */
+	public int getSourceId(int arcId) {
+		return arcSources[arcId];
+	}
+
+	/**
+	 * @return the destination node id of the arc, or -1 if the destination isn't in this snapshot
+	 */
+	public int getDestinationId(int arcId) {
+		return arcDestinations[arcId];
+	}
+
+	public int getOutDegree(int nodeId) {
+		return outOffsets[nodeId + 1] - outOffsets[nodeId];
+	}
+
+	public int getInDegree(int nodeId) {
+		return inOffsets[nodeId + 1] - inOffsets[nodeId];
+	}
+
+	/**
+	 * @return the number of incoming and outgoing arcs, self arcs are counted twice
+	 */
+	public int getDegree(int nodeId) {
+		return getOutDegree(nodeId) + getInDegree(nodeId);
+	}
+
+	/** @return the offsets into the outgoing arrays, has one more entry than there are nodes */
+	public int[] getOutOffsets() {
+		return outOffsets;
+	}
+
+	/** @return the destination node ids of the outgoing arcs */
+	public int[] getOutTargets() {
+		return outTargets;
+	}
+
+	/** @return the arc ids of the outgoing arcs */
+	public int[] getOutArcIds() {
+		return outArcIds;
+	}
+
+	/** @return the offsets into the incoming arrays, has one more entry than there are nodes */
+	public int[] getInOffsets() {
+		return inOffsets;
+	}
+
+	/** @return the source node ids of the incoming arcs */
+	public int[] getInSources() {
+		return inSources;
+	}
+
+	/** @return the arc ids of the incoming arcs */
+	public int[] getInArcIds() {
+		return inArcIds;
+	}
+
+	@Override
+	public String toString() {
+		return "AdjacencySnapshot: nodes=" + nodes.length + ", arcs=" + arcs.length;
+	}
+
+	/**
+	 * Implemented by models that cache their snapshot.
+	 */
+	public interface Provider {
+
+		/**
+		 * @return the current snapshot, never null
+		 */
+		public AdjacencySnapshot getAdjacencySnapshot();
+
+	}
+
+}
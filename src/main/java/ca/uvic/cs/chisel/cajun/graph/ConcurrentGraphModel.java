@@ -0,0 +1,370 @@
+package ca.uvic.cs.chisel.cajun.graph;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * A {@link GraphModel} that can be changed from any thread.
+ * <p>
+ * The add and remove methods don't change the model right away, they queue the change and
+ * return. The queued changes are applied on the event dispatch thread at most once every flush
+ * interval, as a single batch update of the underlying {@link DefaultGraphModel}, so the
+ * listeners get one {@link GraphModelListener#graphChanged(GraphModelEvent)} event per flush on
+ * the event dispatch thread.
+ * <p>
+ * Reads on the event dispatch thread go straight to the underlying model. Reads from other
+ * threads return copies made under a read lock, so they see the model as it was after the last
+ * flush and never a half applied batch.
+ * Listeners should be added and removed on the event dispatch thread.
+ */
+public class ConcurrentGraphModel implements GraphModel, AdjacencySnapshot.Provider {
+
+	/** Roughly once per frame. */
+	public static final int DEFAULT_FLUSH_INTERVAL = 40;
+
+	private final DefaultGraphModel model;
+	private final ReadWriteLock lock;
+
+	private final Queue<Runnable> pendingChanges;
+	private final AtomicBoolean flushScheduled;
+	private final Timer flushTimer;
+
+	public ConcurrentGraphModel() {
+		this(new DefaultGraphModel());
+	}
+
+	/**
+	 * Wraps the given model.  After this the model should only be changed through this class.
+	 */
+	public ConcurrentGraphModel(DefaultGraphModel model) {
+		if (model == null) {
+			throw new NullPointerException("The graph model can't be null.");
+		}
+		this.model = model;
+		this.lock = new ReentrantReadWriteLock();
+		this.pendingChanges = new ConcurrentLinkedQueue<Runnable>();
+		this.flushScheduled = new AtomicBoolean(false);
+		this.flushTimer = new Timer(DEFAULT_FLUSH_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				flush();
+			}
+		});
+		this.flushTimer.setRepeats(false);
+	}
+
+	/**
+	 * Returns the underlying model.  It must only be used on the event dispatch thread.
+	 */
+	public DefaultGraphModel getModel() {
+		return model;
+	}
+
+	public int getFlushInterval() {
+		return flushTimer.getInitialDelay();
+	}
+
+	/**
+	 * Sets the minimum time in milliseconds between applying the queued changes.
+	 */
+	public void setFlushInterval(int millis) {
+		flushTimer.setInitialDelay(millis);
+	}
+
+	/**
+	 * @return true if there are changes waiting to be applied
+	 */
+	public boolean hasPendingChanges() {
+		return !pendingChanges.isEmpty();
+	}
+
+	/**
+	 * Applies all the queued changes now as a single batch update.
+	 * Must be called on the event dispatch thread.
+	 */
+	public void flush() {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			throw new IllegalStateException("flush() must be called on the event dispatch thread");
+		}
+		// anything queued after this point schedules another flush
+		flushScheduled.set(false);
+		if (pendingChanges.isEmpty()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			model.beginUpdate();
+			try {
+				Runnable change;
+				while ((change = pendingChanges.poll()) != null) {
+					change.run();
+				}
+			} finally {
+				// the listeners are notified here, still on the event dispatch thread
+				model.endUpdate();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void queue(Runnable change) {
+		pendingChanges.add(change);
+		if (flushScheduled.compareAndSet(false, true)) {
+			flushTimer.restart();
+		}
+	}
+
+	// Mutators - these can be called from any thread
+
+	public void clear() {
+		queue(new Runnable() {
+			public void run() {
+				model.clear();
+			}
+		});
+	}
+
+	public void addNode(Object userObject) {
+		addNode(userObject, String.valueOf(userObject), null, null);
+	}
+
+	public void addNode(final Object userObject, final String text, final Icon icon, final Object type) {
+		if (userObject == null) {
+			throw new NullPointerException("All graph nodes must have a user object.");
+		}
+		queue(new Runnable() {
+			public void run() {
+				model.addNode(userObject, text, icon, type);
+			}
+		});
+	}
+
+	public void removeNode(final Object userObject) {
+		queue(new Runnable() {
+			public void run() {
+				model.removeNode(userObject);
+			}
+		});
+	}
+
+	public void addArc(Object userObject, Object srcUserObject, Object destUserObject, Object type) {
+		addArc(userObject, srcUserObject, destUserObject, type, null);
+	}
+
+	/**
+	 * Queues a new arc between the nodes with the given user objects.
+	 * If either node doesn't exist when the arc is added then a default node is created for it.
+	 */
+	public void addArc(final Object userObject, final Object srcUserObject, final Object destUserObject,
+			final Object type, final Icon icon) {
+		if ((userObject == null) || (srcUserObject == null) || (destUserObject == null)) {
+			throw new NullPointerException("All graph arcs must have a user object and source and destination user objects.");
+		}
+		queue(new Runnable() {
+			public void run() {
+				GraphNode src = model.addNode(srcUserObject);
+				GraphNode dest = model.addNode(destUserObject);
+				model.addArc(userObject, src, dest, type, icon);
+			}
+		});
+	}
+
+	public void removeArc(final Object userObject) {
+		queue(new Runnable() {
+			public void run() {
+				model.removeArc(userObject);
+			}
+		});
+	}
+
+	// Readers
+
+	public Collection<GraphNode> getAllNodes() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return model.getAllNodes();
+		}
+		lock.readLock().lock();
+		try {
+			return new ArrayList<GraphNode>(model.getAllNodes());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Collection<GraphNode> getVisibleNodes() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return model.getVisibleNodes();
+		}
+		// node visibilities change on the event dispatch thread without the lock,
+		// so check each node instead of copying the model's visible nodes
+		ArrayList<GraphNode> visibleNodes = new ArrayList<GraphNode>();
+		for (GraphNode node : getAllNodes()) {
+			if (node.isVisible()) {
+				visibleNodes.add(node);
+			}
+		}
+		return visibleNodes;
+	}
+
+	public GraphNode getNode(Object userObject) {
+		lock.readLock().lock();
+		try {
+			return model.getNode(userObject);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean containsNode(GraphNode node) {
+		lock.readLock().lock();
+		try {
+			return model.containsNode(node);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Collection<GraphNode> getConnectedNodes(Object nodeUserObject) {
+		lock.readLock().lock();
+		try {
+			return model.getConnectedNodes(nodeUserObject);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Collection<GraphArc> getArcs(Object nodeUserObject) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return model.getArcs(nodeUserObject);
+		}
+		lock.readLock().lock();
+		try {
+			return new ArrayList<GraphArc>(model.getArcs(nodeUserObject));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Collection<Object> getNodeTypes() {
+		lock.readLock().lock();
+		try {
+			return model.getNodeTypes();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Collection<GraphArc> getAllArcs() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return model.getAllArcs();
+		}
+		lock.readLock().lock();
+		try {
+			return new ArrayList<GraphArc>(model.getAllArcs());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Collection<GraphArc> getVisibleArcs() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return model.getVisibleArcs();
+		}
+		ArrayList<GraphArc> visibleArcs = new ArrayList<GraphArc>();
+		for (GraphArc arc : getAllArcs()) {
+			if (arc.isVisible()) {
+				visibleArcs.add(arc);
+			}
+		}
+		return visibleArcs;
+	}
+
+	public GraphArc getArc(Object userObject) {
+		lock.readLock().lock();
+		try {
+			return model.getArc(userObject);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean containsArc(GraphArc arc) {
+		lock.readLock().lock();
+		try {
+			return model.containsArc(arc);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public GraphNode getSourceNode(Object arcUserObject) {
+		lock.readLock().lock();
+		try {
+			return model.getSourceNode(arcUserObject);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public GraphNode getDestinationNode(Object arcUserObject) {
+		lock.readLock().lock();
+		try {
+			return model.getDestinationNode(arcUserObject);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Collection<Object> getArcTypes() {
+		lock.readLock().lock();
+		try {
+			return model.getArcTypes();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the adjacency snapshot of the model after the last flush.
+	 * Snapshots are immutable so they can be used on any thread.
+	 */
+	public AdjacencySnapshot getAdjacencySnapshot() {
+		// building the snapshot caches it in the model, so this needs the write lock
+		lock.writeLock().lock();
+		try {
+			return model.getAdjacencySnapshot();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void addGraphModelListener(GraphModelListener listener) {
+		model.addGraphModelListener(listener);
+	}
+
+	/**
+	 * @see DefaultGraphModel#addWeakGraphModelListener(GraphModelListener)
+	 */
+	public void addWeakGraphModelListener(GraphModelListener listener) {
+		model.addWeakGraphModelListener(listener);
+	}
+
+	public void removeGraphModelListener(GraphModelListener listener) {
+		model.removeGraphModelListener(listener);
+	}
+
+}
@@ -1,10 +1,16 @@
 package ca.uvic.cs.chisel.cajun.graph;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -13,11 +19,16 @@ import javax.swing.Icon;
 import ca.uvic.cs.chisel.cajun.graph.arc.DefaultGraphArc;
 import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
 import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNode;
+import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNodeStyle;
 import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNodeStyle;
+import ca.uvic.cs.chisel.cajun.graph.node.LightweightGraphNode;
+import ca.uvic.cs.chisel.cajun.util.ListenerList;
+import edu.umd.cs.piccolo.PNode;
 
-public class DefaultGraphModel implements GraphModel {
+public class DefaultGraphModel implements GraphModel, AdjacencySnapshot.Provider {
 
-	private Collection<GraphModelListener> listeners;
+	private ListenerList<GraphModelListener> listeners;
 
 	private Map<Object, GraphNode> nodes;
 	private Map<Object, GraphArc> arcs;
@@ -25,109 +36,318 @@ public class DefaultGraphModel implements GraphModel {
 	private Set<Object> nodeTypes;
 	private Set<Object> arcTypes;
 	
+	// the nodes and arcs grouped by their type
+	private Map<Object, Set<GraphNode>> nodesByType;
+	private Map<Object, Set<GraphArc>> arcsByType;
+	
+	// the visible nodes and arcs, kept up to date as the node and arc visibilities change
+	private Set<GraphNode> visibleNodes;
+	private Set<GraphArc> visibleArcs;
+	private Collection<GraphNode> visibleNodesView;
+	private Collection<GraphArc> visibleArcsView;
+	
+	private PropertyChangeListener visibilityListener = new PropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent evt) {
+			Object source = evt.getSource();
+			if (source instanceof GraphNode) {
+				updateVisibility((GraphNode) source);
+			} else if (source instanceof GraphArc) {
+				updateVisibility((GraphArc) source);
+			}
+		}
+	};
+	
+	// the number of nested beginUpdate() calls, and the changes collected during the update
+	private int updateDepth;
+	private PendingChanges pendingChanges;
+	
+	// built on demand and discarded whenever a node or arc is added or removed
+	private AdjacencySnapshot adjacencySnapshot;
+	
+	// the arcs between each source and destination pair, in the order they were added
+	private Map<ArcKey, List<GraphArc>> arcsByEndpoints;
+	// the node pairs that need their arcs arranged at the end of the batch update
+	private Set<ArcKey> pendingArrangements;
+	
+	private boolean lightweightNodes;
+	// shared by the lightweight nodes of this model, until the graph sets its own style
+	private GraphNodeStyle lightweightNodeStyle;
+	
 	public DefaultGraphModel() {
-		this.listeners = new ArrayList<GraphModelListener>();
+		this.listeners = new ListenerList<GraphModelListener>();
 		this.nodes = new HashMap<Object, GraphNode>();
 		this.arcs = new HashMap<Object, GraphArc>();
 		this.nodeTypes = new HashSet<Object>();
 		this.arcTypes = new HashSet<Object>();
+		this.nodesByType = new HashMap<Object, Set<GraphNode>>();
+		this.arcsByType = new HashMap<Object, Set<GraphArc>>();
+		this.arcsByEndpoints = new HashMap<ArcKey, List<GraphArc>>();
+		this.visibleNodes = new LinkedHashSet<GraphNode>();
+		this.visibleArcs = new LinkedHashSet<GraphArc>();
+		this.visibleNodesView = Collections.unmodifiableSet(visibleNodes);
+		this.visibleArcsView = Collections.unmodifiableSet(visibleArcs);
 	}
 
 	public void clear() {
 		if ((nodes.size() > 0) || (arcs.size() > 0)) {
+			for (GraphNode node : nodes.values()) {
+				unwatchVisibility(node);
+			}
+			for (GraphArc arc : arcs.values()) {
+				unwatchVisibility(arc);
+			}
+			visibleNodes.clear();
+			visibleArcs.clear();
 			nodes.clear();
 			arcs.clear();
+			adjacencySnapshot = null;
 			nodeTypes.clear();
 			arcTypes.clear();
+			nodesByType.clear();
+			arcsByType.clear();
+			arcsByEndpoints.clear();
+			if (pendingArrangements != null) {
+				pendingArrangements.clear();
+			}
 			fireGraphClearedEvent();
 		}
 	}
 
 	public void addGraphModelListener(GraphModelListener listener) {
-		if (!listeners.contains(listener)) {
-			listeners.add(listener);
-		}
+		listeners.add(listener);
+	}
+
+	/**
+	 * Adds a listener that is only weakly referenced, so it doesn't have to be removed when
+	 * it is no longer used.  The caller must keep a reference to it.
+	 */
+	public void addWeakGraphModelListener(GraphModelListener listener) {
+		listeners.addWeak(listener);
 	}
 
 	public void removeGraphModelListener(GraphModelListener listener) {
 		listeners.remove(listener);
 	}
+	
+	/**
+	 * Starts a batch update. Until the matching {@link #endUpdate()} call no events are fired,
+	 * instead the changes are collected and delivered to the listeners as one
+	 * {@link GraphModelEvent} through {@link GraphModelListener#graphChanged(GraphModelEvent)}.
+	 * Calls can be nested, the event is fired when the outermost update ends.
+	 */
+	public void beginUpdate() {
+		if (updateDepth == 0) {
+			pendingChanges = new PendingChanges();
+			pendingArrangements = new LinkedHashSet<ArcKey>();
+		}
+		updateDepth++;
+	}
+
+	/**
+	 * Ends a batch update started with {@link #beginUpdate()}.
+	 * If this ends the outermost update then the collected changes are fired.
+	 */
+	public void endUpdate() {
+		if (updateDepth == 0) {
+			throw new IllegalStateException("endUpdate() called without a matching beginUpdate()");
+		}
+		updateDepth--;
+		if (updateDepth == 0) {
+			Set<ArcKey> arrangements = pendingArrangements;
+			pendingArrangements = null;
+			for (ArcKey key : arrangements) {
+				arrangeArcs(key.src, key.dest);
+			}
+			GraphModelEvent event = pendingChanges.createEvent();
+			pendingChanges = null;
+			if (!event.isEmpty()) {
+				fireGraphChangedEvent(event);
+			}
+		}
+	}
+
+	/**
+	 * @return true if a batch update is in progress
+	 */
+	public boolean isUpdating() {
+		return (updateDepth > 0);
+	}
+
+	/**
+	 * Runs the given changes as a single batch update.
+	 * @param changes the code that changes this model
+	 * @see #beginUpdate()
+	 */
+	public void batch(Runnable changes) {
+		beginUpdate();
+		try {
+			changes.run();
+		} finally {
+			endUpdate();
+		}
+	}
+
+	protected void fireGraphChangedEvent(GraphModelEvent event) {
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener gml = listeners.get(array, i);
+			if (gml != null) {
+				gml.graphChanged(event);
+			}
+		}
+	}
 
 	protected void fireGraphClearedEvent() {
-		if (listeners.size() > 0) {
-			ArrayList<GraphModelListener> clonedListeners = new ArrayList<GraphModelListener>(listeners);
-			for (GraphModelListener gml : clonedListeners) {
+		if (pendingChanges != null) {
+			pendingChanges.cleared();
+			return;
+		}
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener gml = listeners.get(array, i);
+			if (gml != null) {
 				gml.graphCleared();
 			}
 		}
 	}
 	
 	protected void fireNodeTypeAddedEvent(Object nodeType) {
-		if (listeners.size() > 0) {
-			ArrayList<GraphModelListener> clonedListeners = new ArrayList<GraphModelListener>(listeners);
-			for (GraphModelListener gml : clonedListeners) {
+		if (pendingChanges != null) {
+			pendingChanges.nodeTypeAdded(nodeType);
+			return;
+		}
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener gml = listeners.get(array, i);
+			if (gml != null) {
 				gml.graphNodeTypeAdded(nodeType);
 			}
 		}
 	}
 	
 	protected void fireNodeAddedEvent(GraphNode node) {
-		if (listeners.size() > 0) {
-			ArrayList<GraphModelListener> clonedListeners = new ArrayList<GraphModelListener>(listeners);
-			for (GraphModelListener gml : clonedListeners) {
+		if (pendingChanges != null) {
+			pendingChanges.nodeAdded(node);
+			return;
+		}
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener gml = listeners.get(array, i);
+			if (gml != null) {
 				gml.graphNodeAdded(node);
 			}
 		}
 	}
 
 	protected void fireNodeRemovedEvent(GraphNode node) {
-		if (listeners.size() > 0) {
-			ArrayList<GraphModelListener> clonedListeners = new ArrayList<GraphModelListener>(listeners);
-			for (GraphModelListener gml : clonedListeners) {
+		if (pendingChanges != null) {
+			pendingChanges.nodeRemoved(node);
+			return;
+		}
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener gml = listeners.get(array, i);
+			if (gml != null) {
 				gml.graphNodeRemoved(node);
 			}
 		}
 	}
 
 	protected void fireArcTypeAddedEvent(Object arcType) {
-		if (listeners.size() > 0) {
-			ArrayList<GraphModelListener> clonedListeners = new ArrayList<GraphModelListener>(listeners);
-			for (GraphModelListener gml : clonedListeners) {
+		if (pendingChanges != null) {
+			pendingChanges.arcTypeAdded(arcType);
+			return;
+		}
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener gml = listeners.get(array, i);
+			if (gml != null) {
 				gml.graphArcTypeAdded(arcType);
 			}
 		}
 	}
 	
 	protected void fireArcAddedEvent(GraphArc arc) {
-		if (listeners.size() > 0) {
-			ArrayList<GraphModelListener> clonedListeners = new ArrayList<GraphModelListener>(listeners);
-			for (GraphModelListener gml : clonedListeners) {
+		if (pendingChanges != null) {
+			pendingChanges.arcAdded(arc);
+			return;
+		}
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener gml = listeners.get(array, i);
+			if (gml != null) {
 				gml.graphArcAdded(arc);
 			}
 		}
 	}
 
 	protected void fireArcRemovedEvent(GraphArc arc) {
-		if (listeners.size() > 0) {
-			ArrayList<GraphModelListener> clonedListeners = new ArrayList<GraphModelListener>(listeners);
-			for (GraphModelListener gml : clonedListeners) {
+		if (pendingChanges != null) {
+			pendingChanges.arcRemoved(arc);
+			return;
+		}
+		Object[] array = listeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			GraphModelListener gml = listeners.get(array, i);
+			if (gml != null) {
 				gml.graphArcRemoved(arc);
 			}
 		}
 	}
 
+	protected void fireNodeChangedEvent(GraphNode node) {
+		if (pendingChanges != null) {
+			pendingChanges.nodeChanged(node);
+			return;
+		}
+		List<GraphNode> changedNodes = Collections.singletonList(node);
+		fireGraphChangedEvent(new GraphModelEvent(false, Collections.<GraphNode>emptyList(),
+				Collections.<GraphArc>emptyList(), Collections.<GraphNode>emptyList(), Collections.<GraphArc>emptyList(),
+				Collections.emptyList(), Collections.emptyList(), changedNodes, Collections.<GraphArc>emptyList()));
+	}
+
+	protected void fireArcChangedEvent(GraphArc arc) {
+		if (pendingChanges != null) {
+			pendingChanges.arcChanged(arc);
+			return;
+		}
+		List<GraphArc> changedArcs = Collections.singletonList(arc);
+		fireGraphChangedEvent(new GraphModelEvent(false, Collections.<GraphNode>emptyList(),
+				Collections.<GraphArc>emptyList(), Collections.<GraphNode>emptyList(), Collections.<GraphArc>emptyList(),
+				Collections.emptyList(), Collections.emptyList(), Collections.<GraphNode>emptyList(), changedArcs));
+	}
+
 	public Collection<GraphNode> getAllNodes() {
 		return nodes.values();
 	}
 	
-	public Collection<GraphNode> getVisibleNodes() {
-		ArrayList<GraphNode> visibleNodes = new ArrayList<GraphNode>();
-		for (GraphNode node : nodes.values()) {
-			if (node.isVisible()) {
-				visibleNodes.add(node);
-			}
+	/**
+	 * Returns an int indexed, array based view of the nodes and arcs in this model.
+	 * The snapshot is cached until the next node or arc is added or removed.
+	 * @return the current snapshot, never null
+	 */
+	public AdjacencySnapshot getAdjacencySnapshot() {
+		if (adjacencySnapshot == null) {
+			adjacencySnapshot = new AdjacencySnapshot(nodes.values(), arcs.values());
 		}
-		return visibleNodes;
+		return adjacencySnapshot;
+	}
+	
+	public Collection<GraphNode> getVisibleNodes() {
+		return new ArrayList<GraphNode>(visibleNodes);
+	}
+
+	/**
+	 * Returns an unmodifiable live view of the visible nodes, without copying them like
+	 * {@link #getVisibleNodes()}.  The view changes as nodes are shown and hidden, so don't
+	 * change node visibilities while iterating over it.
+	 */
+	public Collection<GraphNode> getVisibleNodesView() {
+		return visibleNodesView;
+	}
+	
+	public int getVisibleNodeCount() {
+		return visibleNodes.size();
 	}
 
 	public GraphNode getNode(Object userObject) {
@@ -179,6 +399,24 @@ public class DefaultGraphModel implements GraphModel {
 		return new HashSet<Object>(nodeTypes);
 	}
 	
+	/**
+	 * Returns an unmodifiable live view of the nodes with the given type.
+	 * If a node's type is changed after it was added then
+	 * {@link #recalculateNodeTypes()} must be called to update the index.
+	 */
+	public Collection<GraphNode> getNodesOfType(Object nodeType) {
+		Set<GraphNode> nodesOfType = nodesByType.get(nodeType);
+		if (nodesOfType != null) {
+			return Collections.unmodifiableSet(nodesOfType);
+		}
+		return Collections.emptySet();
+	}
+	
+	public int countNodesOfType(Object nodeType) {
+		Set<GraphNode> nodesOfType = nodesByType.get(nodeType);
+		return (nodesOfType != null ? nodesOfType.size() : 0);
+	}
+	
 	// ARCS
 
 	public Collection<GraphArc> getAllArcs() {
@@ -186,13 +424,20 @@ public class DefaultGraphModel implements GraphModel {
 	}
 
 	public Collection<GraphArc> getVisibleArcs() {
-		ArrayList<GraphArc> visibleArcs = new ArrayList<GraphArc>();
-		for (GraphArc arc : arcs.values()) {
-			if (arc.isVisible()) {
-				visibleArcs.add(arc);
-			}
-		}
-		return visibleArcs;
+		return new ArrayList<GraphArc>(visibleArcs);
+	}
+
+	/**
+	 * Returns an unmodifiable live view of the visible arcs, without copying them like
+	 * {@link #getVisibleArcs()}.  The view changes as arcs are shown and hidden, so don't
+	 * change arc visibilities while iterating over it.
+	 */
+	public Collection<GraphArc> getVisibleArcsView() {
+		return visibleArcsView;
+	}
+	
+	public int getVisibleArcCount() {
+		return visibleArcs.size();
 	}
 	
 	public GraphArc getArc(Object userObject) {
@@ -246,6 +491,24 @@ public class DefaultGraphModel implements GraphModel {
 	public Collection<Object> getArcTypes() {
 		return new HashSet<Object>(arcTypes);
 	}
+	
+	/**
+	 * Returns an unmodifiable live view of the arcs with the given type.
+	 * If an arc's type is changed after it was added then
+	 * {@link #recalculateArcTypes()} must be called to update the index.
+	 */
+	public Collection<GraphArc> getArcsOfType(Object arcType) {
+		Set<GraphArc> arcsOfType = arcsByType.get(arcType);
+		if (arcsOfType != null) {
+			return Collections.unmodifiableSet(arcsOfType);
+		}
+		return Collections.emptySet();
+	}
+	
+	public int countArcsOfType(Object arcType) {
+		Set<GraphArc> arcsOfType = arcsByType.get(arcType);
+		return (arcsOfType != null ? arcsOfType.size() : 0);
+	}
 
 	// Add/Remove methods
 
@@ -253,6 +516,9 @@ public class DefaultGraphModel implements GraphModel {
 		if ((node != null) && !nodes.containsKey(node.getUserObject())) {
 			// this should be the ONLY place where nodes are added to the map
 			nodes.put(node.getUserObject(), node);
+			adjacencySnapshot = null;
+			watchVisibility(node);
+			addToTypeIndex(nodesByType, node.getType(), node);
 			if (!nodeTypes.contains(node.getType())) {
 				nodeTypes.add(node.getType());
 				fireNodeTypeAddedEvent(node.getType());
@@ -281,12 +547,37 @@ public class DefaultGraphModel implements GraphModel {
 			if (type == null) {
 				type = GraphItem.UNKNOWN_TYPE;
 			}
-			DefaultGraphNode node = new DefaultGraphNode(userObject, text, icon, type);
+			DefaultGraphNode node = createNode(userObject, text, icon, type);
 			addNodeInternal(node);
 		}
 		return nodes.get(userObject);
 	}
 
+	/**
+	 * Creates the node for {@link #addNode(Object, String, Icon, Object)}.
+	 */
+	protected DefaultGraphNode createNode(Object userObject, String text, Icon icon, Object type) {
+		if (lightweightNodes) {
+			if (lightweightNodeStyle == null) {
+				lightweightNodeStyle = new DefaultGraphNodeStyle();
+			}
+			return new LightweightGraphNode(userObject, text, icon, type, lightweightNodeStyle);
+		}
+		return new DefaultGraphNode(userObject, text, icon, type);
+	}
+
+	public boolean isLightweightNodes() {
+		return lightweightNodes;
+	}
+
+	/**
+	 * Sets whether new nodes are {@link LightweightGraphNode}s, which paint their text directly
+	 * and use less memory.  Existing nodes aren't changed.
+	 */
+	public void setLightweightNodes(boolean lightweightNodes) {
+		this.lightweightNodes = lightweightNodes;
+	}
+
 	protected void removeNodeInternal(GraphNode node) {
 		if (nodes.containsKey(node.getUserObject())) {
 			// remove the arcs for this node first
@@ -298,6 +589,10 @@ public class DefaultGraphModel implements GraphModel {
 
 			// now remove the node from this model
 			nodes.remove(node.getUserObject());
+			adjacencySnapshot = null;
+			unwatchVisibility(node);
+			visibleNodes.remove(node);
+			removeFromTypeIndex(nodesByType, node.getType(), node);
 			fireNodeRemovedEvent(node);
 		}
 	}
@@ -310,12 +605,14 @@ public class DefaultGraphModel implements GraphModel {
 
 	/**
 	 * Clears the node types, then iterates through all the nodes and adds the
-	 * node types back in.
+	 * node types back in.  The nodes by type index is rebuilt too.
 	 */
 	public void recalculateNodeTypes() {
 		nodeTypes.clear();
+		nodesByType.clear();
 		for (GraphNode node : nodes.values()) {
 			Object nodeType = node.getType();
+			addToTypeIndex(nodesByType, nodeType, node);
 			if (!nodeTypes.contains(nodeType)) {
 				nodeTypes.add(nodeType);
 				fireNodeTypeAddedEvent(nodeType);
@@ -325,12 +622,14 @@ public class DefaultGraphModel implements GraphModel {
 	
 	/**
 	 * Clears the arc types, then iterates through all the arcs and adds the
-	 * arc types back in.
+	 * arc types back in.  The arcs by type index is rebuilt too.
 	 */
 	public void recalculateArcTypes() {
 		arcTypes.clear();
+		arcsByType.clear();
 		for (GraphArc arc: arcs.values()) {
 			Object arcType = arc.getType();
+			addToTypeIndex(arcsByType, arcType, arc);
 			if (!arcTypes.contains(arcType)) {
 				arcTypes.add(arcType);
 				fireArcTypeAddedEvent(arcType);
@@ -347,6 +646,16 @@ public class DefaultGraphModel implements GraphModel {
 	protected void addArcInternal(DefaultGraphArc arc) {
 		// this is the ONLY place where arcs are added
 		arcs.put(arc.getUserObject(), arc);
+		adjacencySnapshot = null;
+		watchVisibility(arc);
+		addToTypeIndex(arcsByType, arc.getType(), arc);
+		ArcKey key = new ArcKey(arc.getSource(), arc.getDestination());
+		List<GraphArc> parallelArcs = arcsByEndpoints.get(key);
+		if (parallelArcs == null) {
+			parallelArcs = new ArrayList<GraphArc>(1);
+			arcsByEndpoints.put(key, parallelArcs);
+		}
+		parallelArcs.add(arc);
 		if (!arcTypes.contains(arc.getType())) {
 			arcTypes.add(arc.getType());
 			fireArcTypeAddedEvent(arc.getType());
@@ -368,7 +677,7 @@ public class DefaultGraphModel implements GraphModel {
 			addNodeInternal(dest);
 			DefaultGraphArc arc = new DefaultGraphArc(userObject, src, dest, icon, type);
 			addArcInternal(arc);
-			arrangeArcs(arc.getSource(), arc.getDestination());
+			arcsChanged(arc.getSource(), arc.getDestination());
 		}
 		return arcs.get(userObject);
 	}
@@ -384,13 +693,196 @@ public class DefaultGraphModel implements GraphModel {
 			arc.getDestination().removeArc(arc);
 			// now remove the arc from the model and fire the event
 			arcs.remove(arc.getUserObject());
+			adjacencySnapshot = null;
+			unwatchVisibility(arc);
+			visibleArcs.remove(arc);
+			removeFromTypeIndex(arcsByType, arc.getType(), arc);
+			ArcKey key = new ArcKey(arc.getSource(), arc.getDestination());
+			List<GraphArc> parallelArcs = arcsByEndpoints.get(key);
+			if (parallelArcs != null) {
+				// remove this instance, arcs with equal user objects aren't the same arc
+				for (Iterator<GraphArc> iter = parallelArcs.iterator(); iter.hasNext();) {
+					if (iter.next() == arc) {
+						iter.remove();
+						break;
+					}
+				}
+				if (parallelArcs.isEmpty()) {
+					arcsByEndpoints.remove(key);
+				}
+			}
 			fireArcRemovedEvent(arc);
 		}
 	}
 
 	public void removeArc(Object userObject) {
 		if ((userObject != null) && arcs.containsKey(userObject)) {
-			removeArcInternal(arcs.get(userObject));
+			GraphArc arc = arcs.get(userObject);
+			removeArcInternal(arc);
+			arcsChanged(arc.getSource(), arc.getDestination());
+		}
+	}
+
+	/**
+	 * Applies the changes in the delta as a single batch update.
+	 * Existing nodes and arcs are updated in place so they keep their locations, and only the
+	 * nodes and arcs that actually change are included in the event.
+	 */
+	public void applyDelta(GraphDelta delta) {
+		beginUpdate();
+		try {
+			for (Object userObject : delta.getRemovedArcs()) {
+				removeArc(userObject);
+			}
+			for (Object userObject : delta.getRemovedNodes()) {
+				removeNode(userObject);
+			}
+			for (GraphDelta.NodeDelta nodeDelta : delta.getNodes()) {
+				GraphNode node = nodes.get(nodeDelta.getUserObject());
+				if (node == null) {
+					if (nodeDelta.isAdd()) {
+						String text = nodeDelta.getText();
+						addNode(nodeDelta.getUserObject(), (text != null ? text : String.valueOf(nodeDelta.getUserObject())),
+								nodeDelta.getIcon(), nodeDelta.getType());
+					}
+				} else {
+					updateNode(node, nodeDelta);
+				}
+			}
+			for (GraphDelta.ArcDelta arcDelta : delta.getArcs()) {
+				applyArcDelta(arcDelta);
+			}
+		} finally {
+			endUpdate();
+		}
+	}
+
+	private void updateNode(GraphNode node, GraphDelta.NodeDelta nodeDelta) {
+		boolean changed = false;
+		String text = nodeDelta.getText();
+		if ((text != null) && !text.equals(node.getText())) {
+			node.setText(text);
+			changed = true;
+		}
+		if ((nodeDelta.getIcon() != null) && (node instanceof DefaultGraphNode)) {
+			((DefaultGraphNode) node).setIcon(nodeDelta.getIcon());
+			changed = true;
+		}
+		Object type = nodeDelta.getType();
+		if ((type != null) && !type.equals(node.getType()) && (node instanceof DefaultGraphNode)) {
+			removeFromTypeIndex(nodesByType, node.getType(), node);
+			((DefaultGraphNode) node).setType(type);
+			addToTypeIndex(nodesByType, node.getType(), node);
+			if (nodeTypes.add(node.getType())) {
+				fireNodeTypeAddedEvent(node.getType());
+			}
+			changed = true;
+		}
+		if (changed) {
+			fireNodeChangedEvent(node);
+		}
+	}
+
+	private void applyArcDelta(GraphDelta.ArcDelta arcDelta) {
+		Object userObject = arcDelta.getUserObject();
+		GraphArc arc = arcs.get(userObject);
+		Object srcUserObject = arcDelta.getSourceUserObject();
+		Object destUserObject = arcDelta.getDestinationUserObject();
+		if (srcUserObject != null) {
+			GraphNode src = addNode(srcUserObject);
+			GraphNode dest = addNode(destUserObject);
+			if ((arc != null) && ((arc.getSource() != src) || (arc.getDestination() != dest))) {
+				// arcs can't be reconnected so replace it
+				removeArc(userObject);
+				arc = null;
+			}
+			if (arc == null) {
+				addArc(userObject, src, dest, arcDelta.getType());
+				return;
+			}
+		}
+		Object type = arcDelta.getType();
+		if ((arc != null) && (type != null) && !type.equals(arc.getType()) && (arc instanceof DefaultGraphArc)) {
+			removeFromTypeIndex(arcsByType, arc.getType(), arc);
+			((DefaultGraphArc) arc).setType(type);
+			addToTypeIndex(arcsByType, arc.getType(), arc);
+			if (arcTypes.add(arc.getType())) {
+				fireArcTypeAddedEvent(arc.getType());
+			}
+			fireArcChangedEvent(arc);
+		}
+	}
+
+	private static <T> void addToTypeIndex(Map<Object, Set<T>> index, Object type, T item) {
+		Set<T> items = index.get(type);
+		if (items == null) {
+			items = new LinkedHashSet<T>();
+			index.put(type, items);
+		}
+		items.add(item);
+	}
+
+	private static <T> void removeFromTypeIndex(Map<Object, Set<T>> index, Object type, T item) {
+		Set<T> items = index.get(type);
+		if ((items == null) || !items.remove(item)) {
+			// the type must have changed since the item was added, so look through all the types
+			for (Iterator<Set<T>> iter = index.values().iterator(); iter.hasNext();) {
+				items = iter.next();
+				if (items.remove(item)) {
+					if (items.isEmpty()) {
+						iter.remove();
+					}
+					return;
+				}
+			}
+		} else if (items.isEmpty()) {
+			index.remove(type);
+		}
+	}
+
+	/**
+	 * Starts tracking the visibility of the node.  Only {@link PNode} nodes notify us when
+	 * their visibility changes, other nodes keep the visibility they had when they were added.
+	 */
+	private void watchVisibility(GraphNode node) {
+		if (node instanceof PNode) {
+			((PNode) node).addPropertyChangeListener(PNode.PROPERTY_VISIBLE, visibilityListener);
+		}
+		updateVisibility(node);
+	}
+
+	private void unwatchVisibility(GraphNode node) {
+		if (node instanceof PNode) {
+			((PNode) node).removePropertyChangeListener(PNode.PROPERTY_VISIBLE, visibilityListener);
+		}
+	}
+
+	private void watchVisibility(GraphArc arc) {
+		if (arc instanceof PNode) {
+			((PNode) arc).addPropertyChangeListener(PNode.PROPERTY_VISIBLE, visibilityListener);
+		}
+		updateVisibility(arc);
+	}
+
+	private void unwatchVisibility(GraphArc arc) {
+		if (arc instanceof PNode) {
+			((PNode) arc).removePropertyChangeListener(PNode.PROPERTY_VISIBLE, visibilityListener);
+		}
+	}
+
+	private void updateVisibility(GraphNode node) {
+		if (node.isVisible()) {
+			visibleNodes.add(node);
+		} else {
+			visibleNodes.remove(node);
+		}
+	}
+
+	private void updateVisibility(GraphArc arc) {
+		if (arc.isVisible()) {
+			visibleArcs.add(arc);
+		} else {
+			visibleArcs.remove(arc);
 		}
 	}
 
@@ -403,33 +895,172 @@ public class DefaultGraphModel implements GraphModel {
 	 * @param dest the destination node
 	 */
 	public void arrangeArcs(GraphNode src, GraphNode dest) {
-		ArrayList<GraphArc> srcToDestArcs = new ArrayList<GraphArc>();
-		ArrayList<GraphArc> destToSrcArcs = new ArrayList<GraphArc>();
-		for (GraphArc arc : src.getArcs()) {
-			if ((src == arc.getSource()) && (dest == arc.getDestination())) {
-				srcToDestArcs.add(arc);
-			} else if ((src == arc.getDestination()) && ((dest == arc.getSource()))) {
-				destToSrcArcs.add(arc);
-			}
+		List<GraphArc> srcToDestArcs = getArcsBetween(src, dest);
+		// self arcs are all in the first list
+		List<GraphArc> destToSrcArcs = (src != dest ? getArcsBetween(dest, src) : Collections.<GraphArc>emptyList());
+		arrangeArcs(srcToDestArcs, !destToSrcArcs.isEmpty());
+		arrangeArcs(destToSrcArcs, !srcToDestArcs.isEmpty());
+	}
+
+	/**
+	 * Arranges the arcs between every pair of connected nodes in one pass.
+	 * Batch updates already arrange the arcs they touch when they end.
+	 */
+	public void arrangeAllArcs() {
+		for (Map.Entry<ArcKey, List<GraphArc>> entry : arcsByEndpoints.entrySet()) {
+			ArcKey key = entry.getKey();
+			boolean reverseArcs = (key.src != key.dest) && arcsByEndpoints.containsKey(new ArcKey(key.dest, key.src));
+			arrangeArcs(entry.getValue(), reverseArcs);
 		}
+	}
+
+	private List<GraphArc> getArcsBetween(GraphNode src, GraphNode dest) {
+		List<GraphArc> parallelArcs = arcsByEndpoints.get(new ArcKey(src, dest));
+		return (parallelArcs != null ? parallelArcs : Collections.<GraphArc>emptyList());
+	}
 
+	private void arrangeArcs(List<GraphArc> parallelArcs, boolean reverseArcs) {
 		// the initial curve factor
 		// if arcs are only in one direction then we use a straight line for the first arc
-		int startingCurve = 1;
-		if ((srcToDestArcs.size() == 0) || (destToSrcArcs.size() == 0)) {
-			startingCurve = 0;
-		}
-
-		int curveFactor = startingCurve;
-		for (GraphArc arc : srcToDestArcs) {
+		int curveFactor = (reverseArcs ? 1 : 0);
+		for (GraphArc arc : parallelArcs) {
 			arc.setCurveFactor(curveFactor);
 			curveFactor++;
 		}
+	}
 
-		curveFactor = startingCurve;
-		for (GraphArc arc : destToSrcArcs) {
-			arc.setCurveFactor(curveFactor);
-			curveFactor++;
+	/**
+	 * Arranges the arcs between the two nodes now, or at the end of the batch update.
+	 */
+	private void arcsChanged(GraphNode src, GraphNode dest) {
+		if (pendingArrangements != null) {
+			pendingArrangements.add(new ArcKey(src, dest));
+		} else {
+			arrangeArcs(src, dest);
+		}
+	}
+
+	/**
+	 * A source and destination node pair, compared by identity.
+	 */
+	private static class ArcKey {
+
+		private final GraphNode src;
+		private final GraphNode dest;
+
+		public ArcKey(GraphNode src, GraphNode dest) {
+			this.src = src;
+			this.dest = dest;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof ArcKey) {
+				ArcKey key = (ArcKey) obj;
+				return (src == key.src) && (dest == key.dest);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(src) + System.identityHashCode(dest);
+		}
+
+	}
+
+	/**
+	 * Collects the changes made during a batch update.
+	 * Adding and then removing the same node or arc cancels out.
+	 * The nodes and arcs are keyed by their user objects, but only the same instance cancels out
+	 * since a node or arc can be replaced by a new one with the same user object.
+	 */
+	private static class PendingChanges {
+
+		private boolean cleared = false;
+		private Map<Object, GraphNode> addedNodes = new LinkedHashMap<Object, GraphNode>();
+		private Map<Object, GraphNode> removedNodes = new LinkedHashMap<Object, GraphNode>();
+		private Map<Object, GraphArc> addedArcs = new LinkedHashMap<Object, GraphArc>();
+		private Map<Object, GraphArc> removedArcs = new LinkedHashMap<Object, GraphArc>();
+		private Set<Object> nodeTypes = new LinkedHashSet<Object>();
+		private Set<Object> arcTypes = new LinkedHashSet<Object>();
+		private Map<Object, GraphNode> changedNodes = new LinkedHashMap<Object, GraphNode>();
+		private Map<Object, GraphArc> changedArcs = new LinkedHashMap<Object, GraphArc>();
+
+		public void cleared() {
+			cleared = true;
+			changedNodes.clear();
+			changedArcs.clear();
+			addedNodes.clear();
+			removedNodes.clear();
+			addedArcs.clear();
+			removedArcs.clear();
+			nodeTypes.clear();
+			arcTypes.clear();
+		}
+
+		public void nodeAdded(GraphNode node) {
+			if (removedNodes.get(node.getUserObject()) == node) {
+				removedNodes.remove(node.getUserObject());
+			} else {
+				addedNodes.put(node.getUserObject(), node);
+			}
+		}
+
+		public void nodeRemoved(GraphNode node) {
+			if (changedNodes.get(node.getUserObject()) == node) {
+				changedNodes.remove(node.getUserObject());
+			}
+			if (addedNodes.get(node.getUserObject()) == node) {
+				addedNodes.remove(node.getUserObject());
+			} else {
+				removedNodes.put(node.getUserObject(), node);
+			}
+		}
+
+		public void arcAdded(GraphArc arc) {
+			if (removedArcs.get(arc.getUserObject()) == arc) {
+				removedArcs.remove(arc.getUserObject());
+			} else {
+				addedArcs.put(arc.getUserObject(), arc);
+			}
+		}
+
+		public void arcRemoved(GraphArc arc) {
+			if (changedArcs.get(arc.getUserObject()) == arc) {
+				changedArcs.remove(arc.getUserObject());
+			}
+			if (addedArcs.get(arc.getUserObject()) == arc) {
+				addedArcs.remove(arc.getUserObject());
+			} else {
+				removedArcs.put(arc.getUserObject(), arc);
+			}
+		}
+
+		public void nodeChanged(GraphNode node) {
+			// new nodes are already in the event
+			if (addedNodes.get(node.getUserObject()) != node) {
+				changedNodes.put(node.getUserObject(), node);
+			}
+		}
+
+		public void arcChanged(GraphArc arc) {
+			if (addedArcs.get(arc.getUserObject()) != arc) {
+				changedArcs.put(arc.getUserObject(), arc);
+			}
+		}
+
+		public void nodeTypeAdded(Object nodeType) {
+			nodeTypes.add(nodeType);
+		}
+
+		public void arcTypeAdded(Object arcType) {
+			arcTypes.add(arcType);
+		}
+
+		public GraphModelEvent createEvent() {
+			return new GraphModelEvent(cleared, addedNodes.values(), addedArcs.values(), removedNodes.values(),
+					removedArcs.values(), nodeTypes, arcTypes, changedNodes.values(), changedArcs.values());
 		}
 	}
 
@@ -3,6 +3,7 @@ package ca.uvic.cs.chisel.cajun.graph;
 import java.awt.geom.Rectangle2D;
 import java.beans.PropertyChangeListener;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 
 import javax.swing.JComponent;
 import javax.swing.JPopupMenu;
@@ -96,6 +97,17 @@ public interface Graph {
 	 * @param nodes the matching nodes.
 	 */
 	public void setMatchingNodes(Collection<GraphNode> nodes);
+
+	/**
+	 * Adds more nodes to the matching nodes, for search results that arrive a batch at a time.
+	 * The default sets the matching nodes to the union of the old and new nodes.
+	 * @param nodes the nodes to add
+	 */
+	public default void addMatchingNodes(Collection<GraphNode> nodes) {
+		Collection<GraphNode> union = new LinkedHashSet<GraphNode>(getMatchingNodes());
+		union.addAll(nodes);
+		setMatchingNodes(union);
+	}
 	
 	public void addGraphInputListener(PInputEventListener listener);
 	public void removeGraphInputListener(PInputEventListener listener);
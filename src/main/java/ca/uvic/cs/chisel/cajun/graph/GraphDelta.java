@@ -0,0 +1,198 @@
+package ca.uvic.cs.chisel.cajun.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.Icon;
+
+/**
+ * A set of changes to apply to a {@link DefaultGraphModel} with
+ * {@link DefaultGraphModel#applyDelta(GraphDelta)}.
+ * Nodes and arcs are identified by their user objects.
+ * <p>
+ * The removals are applied first, then the added and changed nodes, then the added and
+ * changed arcs.  Adding a node or arc that already exists updates it instead.
+ */
+public class GraphDelta {
+
+	private List<NodeDelta> nodes;
+	private List<ArcDelta> arcs;
+	private List<Object> removedNodes;
+	private List<Object> removedArcs;
+
+	public GraphDelta() {
+		this.nodes = new ArrayList<NodeDelta>();
+		this.arcs = new ArrayList<ArcDelta>();
+		this.removedNodes = new ArrayList<Object>();
+		this.removedArcs = new ArrayList<Object>();
+	}
+
+	/**
+	 * Adds a node, or updates the text, icon and type of the node if it already exists.
+	 */
+	public GraphDelta addNode(Object userObject, String text, Icon icon, Object type) {
+		if (userObject == null) {
+			throw new NullPointerException("All graph nodes must have a user object.");
+		}
+		nodes.add(new NodeDelta(userObject, text, icon, type, true));
+		return this;
+	}
+
+	/**
+	 * Changes the text and/or type of an existing node.
+	 * @param text the new text, or null to leave it unchanged
+	 * @param type the new type, or null to leave it unchanged
+	 */
+	public GraphDelta changeNode(Object userObject, String text, Object type) {
+		if (userObject == null) {
+			throw new NullPointerException("All graph nodes must have a user object.");
+		}
+		nodes.add(new NodeDelta(userObject, text, null, type, false));
+		return this;
+	}
+
+	public GraphDelta removeNode(Object userObject) {
+		removedNodes.add(userObject);
+		return this;
+	}
+
+	/**
+	 * Adds an arc between the nodes with the given user objects, creating default nodes if they
+	 * don't exist.  If the arc already exists then its type is updated, or if its source or
+	 * destination changed then it is replaced.
+	 */
+	public GraphDelta addArc(Object userObject, Object srcUserObject, Object destUserObject, Object type) {
+		if ((userObject == null) || (srcUserObject == null) || (destUserObject == null)) {
+			throw new NullPointerException("All graph arcs must have a user object and source and destination user objects.");
+		}
+		arcs.add(new ArcDelta(userObject, srcUserObject, destUserObject, type));
+		return this;
+	}
+
+	/**
+	 * Changes the type of an existing arc.
+	 */
+	public GraphDelta changeArc(Object userObject, Object type) {
+		if (userObject == null) {
+			throw new NullPointerException("All graph arcs must have a user object.");
+		}
+		arcs.add(new ArcDelta(userObject, null, null, type));
+		return this;
+	}
+
+	public GraphDelta removeArc(Object userObject) {
+		removedArcs.add(userObject);
+		return this;
+	}
+
+	public boolean isEmpty() {
+		return nodes.isEmpty() && arcs.isEmpty() && removedNodes.isEmpty() && removedArcs.isEmpty();
+	}
+
+	public Collection<NodeDelta> getNodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	public Collection<ArcDelta> getArcs() {
+		return Collections.unmodifiableList(arcs);
+	}
+
+	public Collection<Object> getRemovedNodes() {
+		return Collections.unmodifiableList(removedNodes);
+	}
+
+	public Collection<Object> getRemovedArcs() {
+		return Collections.unmodifiableList(removedArcs);
+	}
+
+	@Override
+	public String toString() {
+		return "GraphDelta: nodes=" + nodes.size() + ", arcs=" + arcs.size() + ", removedNodes=" +
+				removedNodes.size() + ", removedArcs=" + removedArcs.size();
+	}
+
+	/**
+	 * An added or changed node.
+	 */
+	public static class NodeDelta {
+
+		private final Object userObject;
+		private final String text;
+		private final Icon icon;
+		private final Object type;
+		private final boolean add;
+
+		NodeDelta(Object userObject, String text, Icon icon, Object type, boolean add) {
+			this.userObject = userObject;
+			this.text = text;
+			this.icon = icon;
+			this.type = type;
+			this.add = add;
+		}
+
+		public Object getUserObject() {
+			return userObject;
+		}
+
+		/** @return the text, or null if it isn't changed */
+		public String getText() {
+			return text;
+		}
+
+		public Icon getIcon() {
+			return icon;
+		}
+
+		/** @return the type, or null if it isn't changed */
+		public Object getType() {
+			return type;
+		}
+
+		/** @return true if the node should be added when it doesn't exist */
+		public boolean isAdd() {
+			return add;
+		}
+
+	}
+
+	/**
+	 * An added or changed arc.
+	 */
+	public static class ArcDelta {
+
+		private final Object userObject;
+		private final Object srcUserObject;
+		private final Object destUserObject;
+		private final Object type;
+
+		ArcDelta(Object userObject, Object srcUserObject, Object destUserObject, Object type) {
+			this.userObject = userObject;
+			this.srcUserObject = srcUserObject;
+			this.destUserObject = destUserObject;
+			this.type = type;
+		}
+
+		public Object getUserObject() {
+			return userObject;
+		}
+
+		/** @return the source node user object, or null if this only changes the type */
+		public Object getSourceUserObject() {
+			return srcUserObject;
+		}
+
+		/** @return the destination node user object, or null if this only changes the type */
+		public Object getDestinationUserObject() {
+			return destUserObject;
+		}
+
+		/** @return the type, or null if it isn't changed */
+		public Object getType() {
+			return type;
+		}
+
+	}
+
+}
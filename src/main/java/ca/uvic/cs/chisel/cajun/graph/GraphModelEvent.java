@@ -2,35 +2,133 @@ package ca.uvic.cs.chisel.cajun.graph;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 
 import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
 import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
 
+/**
+ * Describes a batch of changes made to a {@link GraphModel}.
+ * The nodes and arcs returned by {@link #getNodes()} and {@link #getArcs()} are the ones that
+ * were added, the removed nodes and arcs are available separately.
+ * If {@link #isCleared()} is true then the model was cleared before the other changes were made.
+ * The changed nodes and arcs are ones that were already in the model whose text or type changed.
+ *
+ * @see GraphModelListener#graphChanged(GraphModelEvent)
+ */
 public class GraphModelEvent {
 
 	private Collection<GraphNode> nodes;
 	private Collection<GraphArc> arcs;
-
+	private Collection<GraphNode> removedNodes;
+	private Collection<GraphArc> removedArcs;
+	private Collection<Object> nodeTypes;
+	private Collection<Object> arcTypes;
+	private Collection<GraphNode> changedNodes;
+	private Collection<GraphArc> changedArcs;
+	private boolean cleared;
+	
 	public GraphModelEvent(Collection<GraphArc> arcs) {
 		this(new ArrayList<GraphNode>(0), arcs);
 	}
 	
 	public GraphModelEvent(Collection<GraphNode> nodes, Collection<GraphArc> arcs) {
-		this.nodes = nodes;
-		this.arcs = arcs;
+		this(false, nodes, arcs, Collections.<GraphNode>emptyList(), Collections.<GraphArc>emptyList(),
+				Collections.emptyList(), Collections.emptyList());
+	}
+	
+	public GraphModelEvent(boolean cleared, Collection<GraphNode> addedNodes, Collection<GraphArc> addedArcs,
+			Collection<GraphNode> removedNodes, Collection<GraphArc> removedArcs,
+			Collection<Object> addedNodeTypes, Collection<Object> addedArcTypes) {
+		this(cleared, addedNodes, addedArcs, removedNodes, removedArcs, addedNodeTypes, addedArcTypes,
+				Collections.<GraphNode>emptyList(), Collections.<GraphArc>emptyList());
+	}
+	
+	public GraphModelEvent(boolean cleared, Collection<GraphNode> addedNodes, Collection<GraphArc> addedArcs,
+			Collection<GraphNode> removedNodes, Collection<GraphArc> removedArcs,
+			Collection<Object> addedNodeTypes, Collection<Object> addedArcTypes,
+			Collection<GraphNode> changedNodes, Collection<GraphArc> changedArcs) {
+		this.cleared = cleared;
+		this.nodes = addedNodes;
+		this.arcs = addedArcs;
+		this.removedNodes = removedNodes;
+		this.removedArcs = removedArcs;
+		this.nodeTypes = addedNodeTypes;
+		this.arcTypes = addedArcTypes;
+		this.changedNodes = changedNodes;
+		this.changedArcs = changedArcs;
 	}
 	
+	/**
+	 * @return the added nodes
+	 */
 	public Collection<GraphNode> getNodes() {
 		return nodes;
 	}
 	
+	/**
+	 * @return the added arcs
+	 */
 	public Collection<GraphArc> getArcs() {
 		return arcs;
 	}
 	
+	public Collection<GraphNode> getRemovedNodes() {
+		return removedNodes;
+	}
+	
+	public Collection<GraphArc> getRemovedArcs() {
+		return removedArcs;
+	}
+	
+	/**
+	 * @return the existing nodes whose text or type changed
+	 */
+	public Collection<GraphNode> getChangedNodes() {
+		return changedNodes;
+	}
+	
+	/**
+	 * @return the existing arcs whose type changed
+	 */
+	public Collection<GraphArc> getChangedArcs() {
+		return changedArcs;
+	}
+	
+	/**
+	 * @return the node types that were added to the model
+	 */
+	public Collection<Object> getNodeTypes() {
+		return nodeTypes;
+	}
+	
+	/**
+	 * @return the arc types that were added to the model
+	 */
+	public Collection<Object> getArcTypes() {
+		return arcTypes;
+	}
+	
+	/**
+	 * @return true if the model was cleared before the rest of the changes were made
+	 */
+	public boolean isCleared() {
+		return cleared;
+	}
+	
+	/**
+	 * @return true if this event doesn't contain any changes
+	 */
+	public boolean isEmpty() {
+		return !cleared && nodes.isEmpty() && arcs.isEmpty() && removedNodes.isEmpty() && removedArcs.isEmpty()
+				&& nodeTypes.isEmpty() && arcTypes.isEmpty() && changedNodes.isEmpty() && changedArcs.isEmpty();
+	}
+	
 	@Override
 	public String toString() {
-		return "GraphModelEvent: nodes=" + nodes + ", arcs=" + arcs;
+		return "GraphModelEvent: cleared=" + cleared + ", nodes=" + nodes + ", arcs=" + arcs +
+				", removedNodes=" + removedNodes + ", removedArcs=" + removedArcs +
+				", changedNodes=" + changedNodes + ", changedArcs=" + changedArcs;
 	}
 	
 }
@@ -21,5 +21,54 @@ public interface GraphModelListener {
 	
 	public void graphNodeTypeAdded(Object nodeType);
 	public void graphArcTypeAdded(Object arcType);
+
+	/**
+	 * Called when the text, icon or type of a node changes.  Does nothing by default.
+	 */
+	public default void graphNodeChanged(GraphNode node) {
+	}
+
+	/**
+	 * Called when the type of an arc changes.  Does nothing by default.
+	 */
+	public default void graphArcChanged(GraphArc arc) {
+	}
+	
+	/**
+	 * Called once at the end of a batch update instead of the individual
+	 * node and arc events above.
+	 * By default the batched event is split back up into the individual events.
+	 * Override this method to handle all the changes at once.
+	 * @param event contains all the changes made during the batch update
+	 */
+	public default void graphChanged(GraphModelEvent event) {
+		if (event.isCleared()) {
+			graphCleared();
+		}
+		for (GraphArc arc : event.getRemovedArcs()) {
+			graphArcRemoved(arc);
+		}
+		for (GraphNode node : event.getRemovedNodes()) {
+			graphNodeRemoved(node);
+		}
+		for (Object nodeType : event.getNodeTypes()) {
+			graphNodeTypeAdded(nodeType);
+		}
+		for (Object arcType : event.getArcTypes()) {
+			graphArcTypeAdded(arcType);
+		}
+		for (GraphNode node : event.getNodes()) {
+			graphNodeAdded(node);
+		}
+		for (GraphArc arc : event.getArcs()) {
+			graphArcAdded(arc);
+		}
+		for (GraphNode node : event.getChangedNodes()) {
+			graphNodeChanged(node);
+		}
+		for (GraphArc arc : event.getChangedArcs()) {
+			graphArcChanged(arc);
+		}
+	}
 	
 }
@@ -0,0 +1,363 @@
+package ca.uvic.cs.chisel.cajun.graph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * Breadth and depth first traversals, k-hop neighbourhoods, shortest paths and reachability
+ * over an {@link AdjacencySnapshot}.  The visited nodes are kept in {@link BitSet}s over the
+ * snapshot node ids, so walking the graph doesn't allocate anything per node.
+ * <p>
+ * Arcs can be followed forwards, backwards or both ways (the default), and can be restricted
+ * to some arc types.  The node lists that are returned can be passed straight to
+ * {@link Graph#setSelectedNodes(Collection)} or {@link Graph#setMatchingNodes(Collection)}.
+ * Nodes that aren't in the snapshot give empty results.
+ */
+public class GraphTraversal {
+
+	/** Follow arcs from their source to their destination */
+	public static final int OUTGOING = 1;
+	/** Follow arcs from their destination to their source */
+	public static final int INCOMING = 2;
+	/** Follow arcs both ways */
+	public static final int BOTH = OUTGOING | INCOMING;
+
+	private final AdjacencySnapshot snapshot;
+	private int direction;
+	// the arcs that can be followed, null for all of them
+	private BitSet allowedArcs;
+
+	/**
+	 * Traverses the current snapshot of the model.
+	 * @see AdjacencySnapshot#create(GraphModel)
+	 */
+	public GraphTraversal(GraphModel model) {
+		this(AdjacencySnapshot.create(model));
+	}
+
+	public GraphTraversal(AdjacencySnapshot snapshot) {
+		if (snapshot == null) {
+			throw new NullPointerException("The snapshot can't be null.");
+		}
+		this.snapshot = snapshot;
+		this.direction = BOTH;
+	}
+
+	public AdjacencySnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public int getDirection() {
+		return direction;
+	}
+
+	/**
+	 * @param direction {@link #OUTGOING}, {@link #INCOMING} or {@link #BOTH}
+	 */
+	public void setDirection(int direction) {
+		if ((direction < OUTGOING) || (direction > BOTH)) {
+			throw new IllegalArgumentException("Invalid direction: " + direction);
+		}
+		this.direction = direction;
+	}
+
+	/**
+	 * Only follows arcs with one of the given types.
+	 * @param arcTypes the types to follow, or null to follow all arcs
+	 */
+	public void setArcTypes(Collection<? extends Object> arcTypes) {
+		if (arcTypes == null) {
+			allowedArcs = null;
+		} else {
+			Set<Object> types = new HashSet<Object>(arcTypes);
+			allowedArcs = new BitSet(snapshot.getArcCount());
+			for (int i = 0; i < snapshot.getArcCount(); i++) {
+				GraphArc arc = snapshot.getArc(i);
+				if (types.contains(arc.getType())) {
+					allowedArcs.set(i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the nodes reachable from the start node in breadth first order, starting with the
+	 * start node
+	 */
+	public List<GraphNode> breadthFirst(GraphNode start) {
+		return getNeighbourhood(start, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return the nodes reachable from the start node in depth first (pre) order, starting with
+	 * the start node
+	 */
+	public List<GraphNode> depthFirst(GraphNode start) {
+		int startId = snapshot.getNodeId(start);
+		if (startId == -1) {
+			return Collections.emptyList();
+		}
+		int n = snapshot.getNodeCount();
+		List<GraphNode> order = new ArrayList<GraphNode>();
+		BitSet visited = new BitSet(n);
+		// each stack entry is a node and the index of the next neighbour to look at
+		int[] nodeStack = new int[n];
+		int[] cursorStack = new int[n];
+		int size = 0;
+		visited.set(startId);
+		order.add(start);
+		nodeStack[size] = startId;
+		cursorStack[size++] = 0;
+		while (size > 0) {
+			int node = nodeStack[size - 1];
+			int next = nextNeighbour(node, cursorStack, size - 1, visited, false);
+			if (next == -1) {
+				size--;
+			} else {
+				visited.set(next);
+				order.add(snapshot.getNode(next));
+				nodeStack[size] = next;
+				cursorStack[size++] = 0;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Returns the next unvisited neighbour of the node and advances the cursor past it, or -1.
+	 * The cursor goes through the outgoing arcs and then the incoming arcs.
+	 */
+	private int nextNeighbour(int node, int[] cursors, int index, BitSet visited, boolean reverse) {
+		int[] outOffsets = snapshot.getOutOffsets();
+		int[] inOffsets = snapshot.getInOffsets();
+		int outStart = outOffsets[node];
+		int outDegree = outOffsets[node + 1] - outStart;
+		int inStart = inOffsets[node];
+		int degree = outDegree + (inOffsets[node + 1] - inStart);
+		boolean followOut = followOutgoing(reverse);
+		boolean followIn = followIncoming(reverse);
+		while (cursors[index] < degree) {
+			int i = cursors[index]++;
+			int neighbour, arc;
+			if (i < outDegree) {
+				if (!followOut) {
+					cursors[index] = outDegree;
+					continue;
+				}
+				neighbour = snapshot.getOutTargets()[outStart + i];
+				arc = snapshot.getOutArcIds()[outStart + i];
+			} else {
+				if (!followIn) {
+					break;
+				}
+				neighbour = snapshot.getInSources()[inStart + i - outDegree];
+				arc = snapshot.getInArcIds()[inStart + i - outDegree];
+			}
+			if (!visited.get(neighbour) && isAllowed(arc)) {
+				return neighbour;
+			}
+		}
+		return -1;
+	}
+
+	public List<GraphNode> getNeighbourhood(GraphNode start, int hops) {
+		return getNeighbourhood(Collections.singleton(start), hops);
+	}
+
+	/**
+	 * Returns the nodes within the given number of hops of any of the start nodes, in breadth
+	 * first order.  The start nodes are included.
+	 */
+	public List<GraphNode> getNeighbourhood(Collection<GraphNode> starts, int hops) {
+		List<GraphNode> nodes = new ArrayList<GraphNode>();
+		int[] queue = new int[snapshot.getNodeCount()];
+		int size = breadthFirst(starts, hops, new BitSet(snapshot.getNodeCount()), queue);
+		for (int i = 0; i < size; i++) {
+			nodes.add(snapshot.getNode(queue[i]));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the ids of the nodes within the given number of hops of any of the start nodes.
+	 * The start nodes are included.
+	 */
+	public BitSet getNeighbourhoodIds(Collection<GraphNode> starts, int hops) {
+		BitSet visited = new BitSet(snapshot.getNodeCount());
+		breadthFirst(starts, hops, visited, new int[snapshot.getNodeCount()]);
+		return visited;
+	}
+
+	/**
+	 * @return the number of nodes in the queue, in the order they were visited
+	 */
+	private int breadthFirst(Collection<GraphNode> starts, int hops, BitSet visited, int[] queue) {
+		int tail = 0;
+		for (GraphNode start : starts) {
+			int id = snapshot.getNodeId(start);
+			if ((id != -1) && !visited.get(id)) {
+				visited.set(id);
+				queue[tail++] = id;
+			}
+		}
+		int head = 0;
+		for (int depth = 0; (depth < hops) && (head < tail); depth++) {
+			int levelEnd = tail;
+			while (head < levelEnd) {
+				tail = visitNeighbours(queue[head++], false, visited, queue, tail, null);
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Adds the unvisited neighbours of the node to the end of the queue and marks them visited.
+	 * @param parents if not null the parent of each added node is set to this node
+	 * @return the new end of the queue
+	 */
+	private int visitNeighbours(int node, boolean reverse, BitSet visited, int[] queue, int tail, int[] parents) {
+		if (followOutgoing(reverse)) {
+			int[] targets = snapshot.getOutTargets();
+			int[] arcIds = snapshot.getOutArcIds();
+			for (int i = snapshot.getOutOffsets()[node], end = snapshot.getOutOffsets()[node + 1]; i < end; i++) {
+				int neighbour = targets[i];
+				if (!visited.get(neighbour) && isAllowed(arcIds[i])) {
+					visited.set(neighbour);
+					queue[tail++] = neighbour;
+					if (parents != null) {
+						parents[neighbour] = node;
+					}
+				}
+			}
+		}
+		if (followIncoming(reverse)) {
+			int[] sources = snapshot.getInSources();
+			int[] arcIds = snapshot.getInArcIds();
+			for (int i = snapshot.getInOffsets()[node], end = snapshot.getInOffsets()[node + 1]; i < end; i++) {
+				int neighbour = sources[i];
+				if (!visited.get(neighbour) && isAllowed(arcIds[i])) {
+					visited.set(neighbour);
+					queue[tail++] = neighbour;
+					if (parents != null) {
+						parents[neighbour] = node;
+					}
+				}
+			}
+		}
+		return tail;
+	}
+
+	public boolean isReachable(GraphNode from, GraphNode to) {
+		return !getShortestPath(from, to).isEmpty();
+	}
+
+	/**
+	 * Finds a path with the fewest arcs with a bidirectional breadth first search, which grows
+	 * the smaller of the two search frontiers each step.
+	 * @return the nodes on the path from the first node to the second node (inclusive), or an
+	 * empty list if there is no path
+	 */
+	public List<GraphNode> getShortestPath(GraphNode from, GraphNode to) {
+		int fromId = snapshot.getNodeId(from);
+		int toId = snapshot.getNodeId(to);
+		if ((fromId == -1) || (toId == -1)) {
+			return Collections.emptyList();
+		}
+		if (fromId == toId) {
+			return Collections.singletonList(from);
+		}
+
+		int n = snapshot.getNodeCount();
+		BitSet forwardVisited = new BitSet(n);
+		BitSet backwardVisited = new BitSet(n);
+		int[] forwardParents = new int[n];
+		int[] backwardParents = new int[n];
+		int[] forwardQueue = new int[n];
+		int[] backwardQueue = new int[n];
+		forwardVisited.set(fromId);
+		backwardVisited.set(toId);
+		forwardQueue[0] = fromId;
+		backwardQueue[0] = toId;
+		int forwardHead = 0, forwardTail = 1;
+		int backwardHead = 0, backwardTail = 1;
+
+		int meeting = -1;
+		while ((meeting == -1) && (forwardHead < forwardTail) && (backwardHead < backwardTail)) {
+			// expand a whole level of the smaller frontier
+			boolean forward = ((forwardTail - forwardHead) <= (backwardTail - backwardHead));
+			if (forward) {
+				int levelEnd = forwardTail;
+				while (forwardHead < levelEnd) {
+					forwardTail = visitNeighbours(forwardQueue[forwardHead++], false, forwardVisited, forwardQueue, forwardTail, forwardParents);
+				}
+				meeting = findMeeting(forwardQueue, levelEnd, forwardTail, backwardVisited);
+			} else {
+				int levelEnd = backwardTail;
+				while (backwardHead < levelEnd) {
+					backwardTail = visitNeighbours(backwardQueue[backwardHead++], true, backwardVisited, backwardQueue, backwardTail, backwardParents);
+				}
+				meeting = findMeeting(backwardQueue, levelEnd, backwardTail, forwardVisited);
+			}
+		}
+		if (meeting == -1) {
+			return Collections.emptyList();
+		}
+
+		List<GraphNode> path = new ArrayList<GraphNode>();
+		for (int node = meeting; node != fromId; node = forwardParents[node]) {
+			path.add(snapshot.getNode(node));
+		}
+		path.add(from);
+		Collections.reverse(path);
+		for (int node = meeting; node != toId; ) {
+			node = backwardParents[node];
+			path.add(snapshot.getNode(node));
+		}
+		return path;
+	}
+
+	/**
+	 * All the nodes in the newly added level are the same distance from their start, so the
+	 * first one that was also reached by the other search is on a shortest path.
+	 */
+	private static int findMeeting(int[] queue, int start, int end, BitSet otherVisited) {
+		for (int i = start; i < end; i++) {
+			if (otherVisited.get(queue[i])) {
+				return queue[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the nodes with the given ids, in id order
+	 */
+	public List<GraphNode> toNodes(BitSet nodeIds) {
+		List<GraphNode> nodes = new ArrayList<GraphNode>(nodeIds.cardinality());
+		for (int id = nodeIds.nextSetBit(0); id >= 0; id = nodeIds.nextSetBit(id + 1)) {
+			nodes.add(snapshot.getNode(id));
+		}
+		return nodes;
+	}
+
+	private boolean isAllowed(int arcId) {
+		return (allowedArcs == null) || allowedArcs.get(arcId);
+	}
+
+	private boolean followOutgoing(boolean reverse) {
+		return (direction & (reverse ? INCOMING : OUTGOING)) != 0;
+	}
+
+	private boolean followIncoming(boolean reverse) {
+		return (direction & (reverse ? OUTGOING : INCOMING)) != 0;
+	}
+
+}
@@ -0,0 +1,216 @@
+package ca.uvic.cs.chisel.cajun.graph;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * A graph model that only creates the nodes and arcs that are being shown.
+ * <p>
+ * Nodes are added with {@link #showNode(Object)}, and expanding a node with
+ * {@link #expandNode(Object)} asks the {@link NeighbourhoodProvider} for its arcs and adds them
+ * along with the neighbouring nodes.  Collapsing a node removes the arcs that were only there
+ * because of that node, and any neighbours that are left without arcs.
+ * <p>
+ * If a node budget is set then after each expansion the least recently expanded nodes that
+ * are hidden or outside the view bounds are collapsed until the model is back under budget.
+ */
+public class LazyGraphModel extends DefaultGraphModel {
+
+	private NeighbourhoodProvider provider;
+
+	// the nodes shown with showNode(), these aren't removed when their neighbours collapse
+	private Set<Object> rootNodes;
+	// the expanded nodes, least recently expanded first
+	private LinkedHashSet<Object> expandedNodes;
+
+	private int nodeBudget;
+	private Rectangle2D viewBounds;
+
+	public LazyGraphModel(NeighbourhoodProvider provider) {
+		super();
+		if (provider == null) {
+			throw new NullPointerException("The neighbourhood provider can't be null.");
+		}
+		this.provider = provider;
+		this.rootNodes = new HashSet<Object>();
+		this.expandedNodes = new LinkedHashSet<Object>();
+		this.nodeBudget = 0;
+	}
+
+	public NeighbourhoodProvider getProvider() {
+		return provider;
+	}
+
+	/**
+	 * @return the maximum number of nodes to keep, or 0 if there is no limit
+	 */
+	public int getNodeBudget() {
+		return nodeBudget;
+	}
+
+	/**
+	 * Sets the maximum number of nodes to keep in the model.
+	 * The budget can be exceeded if all the expanded nodes are on screen.
+	 * @param nodeBudget the maximum number of nodes, 0 means no limit
+	 */
+	public void setNodeBudget(int nodeBudget) {
+		this.nodeBudget = Math.max(0, nodeBudget);
+		evict(null);
+	}
+
+	public Rectangle2D getViewBounds() {
+		return viewBounds;
+	}
+
+	/**
+	 * Sets the area currently being shown, in the same coordinates as the node bounds.
+	 * Expanded nodes inside this area are never evicted.
+	 * If no view bounds are set then every visible node counts as being on screen.
+	 */
+	public void setViewBounds(Rectangle2D viewBounds) {
+		this.viewBounds = viewBounds;
+	}
+
+	@Override
+	public void clear() {
+		rootNodes.clear();
+		expandedNodes.clear();
+		super.clear();
+	}
+
+	/**
+	 * Adds the node with the given user object.  It stays in the model until it is removed.
+	 */
+	public GraphNode showNode(Object userObject) {
+		GraphNode node = getOrCreateNode(userObject, null);
+		rootNodes.add(userObject);
+		return node;
+	}
+
+	public boolean isExpanded(Object userObject) {
+		return expandedNodes.contains(userObject);
+	}
+
+	/**
+	 * Adds the arcs of the node and its neighbouring nodes, adding the node too if necessary.
+	 * The new nodes start at the location of the expanded node.
+	 * All the changes are fired as one batch update.
+	 */
+	public GraphNode expandNode(Object userObject) {
+		GraphNode node;
+		beginUpdate();
+		try {
+			node = getOrCreateNode(userObject, null);
+			boolean alreadyExpanded = expandedNodes.remove(userObject);
+			// now the most recently expanded
+			expandedNodes.add(userObject);
+			if (!alreadyExpanded) {
+				for (NeighbourArc neighbourArc : provider.expand(userObject)) {
+					if (getArc(neighbourArc.getUserObject()) == null) {
+						GraphNode src = getOrCreateNode(neighbourArc.getSource(), node);
+						GraphNode dest = getOrCreateNode(neighbourArc.getDestination(), node);
+						addArc(neighbourArc.getUserObject(), src, dest, neighbourArc.getType());
+					}
+				}
+			}
+			evict(userObject);
+		} finally {
+			endUpdate();
+		}
+		return node;
+	}
+
+	/**
+	 * Removes the arcs that connect the node to neighbours which aren't expanded, and then
+	 * removes those neighbours if they have no arcs left.  The node itself is removed too if
+	 * it has no arcs left and it wasn't added with {@link #showNode(Object)}.
+	 */
+	public void collapseNode(Object userObject) {
+		if (!expandedNodes.remove(userObject)) {
+			return;
+		}
+		GraphNode node = getNode(userObject);
+		if (node == null) {
+			return;
+		}
+		beginUpdate();
+		try {
+			List<GraphNode> neighbours = new ArrayList<GraphNode>();
+			for (GraphArc arc : new ArrayList<GraphArc>(node.getArcs())) {
+				GraphNode other = (arc.getSource() == node ? arc.getDestination() : arc.getSource());
+				if ((other == node) || !isExpanded(other.getUserObject())) {
+					removeArc(arc.getUserObject());
+					neighbours.add(other);
+				}
+			}
+			neighbours.add(node);
+			for (GraphNode neighbour : neighbours) {
+				removeIfUnused(neighbour);
+			}
+		} finally {
+			endUpdate();
+		}
+	}
+
+	@Override
+	protected void removeNodeInternal(GraphNode node) {
+		rootNodes.remove(node.getUserObject());
+		expandedNodes.remove(node.getUserObject());
+		super.removeNodeInternal(node);
+	}
+
+	private GraphNode getOrCreateNode(Object userObject, GraphNode near) {
+		GraphNode node = getNode(userObject);
+		if (node == null) {
+			node = addNode(userObject, provider.getText(userObject), provider.getIcon(userObject),
+					provider.getType(userObject));
+			if (near != null) {
+				Rectangle2D bounds = near.getBounds();
+				node.setLocation(bounds.getX(), bounds.getY());
+			}
+		}
+		return node;
+	}
+
+	private void removeIfUnused(GraphNode node) {
+		Object userObject = node.getUserObject();
+		if (node.getArcs().isEmpty() && !rootNodes.contains(userObject) && !expandedNodes.contains(userObject)) {
+			removeNode(userObject);
+		}
+	}
+
+	/**
+	 * Collapses the least recently expanded nodes that aren't on screen until the model is
+	 * under the node budget.
+	 * @param keepUserObject the node that was just expanded, it is never collapsed
+	 */
+	private void evict(Object keepUserObject) {
+		if ((nodeBudget <= 0) || (getAllNodes().size() <= nodeBudget)) {
+			return;
+		}
+		for (Object userObject : new ArrayList<Object>(expandedNodes)) {
+			if (getAllNodes().size() <= nodeBudget) {
+				break;
+			}
+			GraphNode node = getNode(userObject);
+			if (!userObject.equals(keepUserObject) && ((node == null) || !isOnScreen(node))) {
+				collapseNode(userObject);
+			}
+		}
+	}
+
+	private boolean isOnScreen(GraphNode node) {
+		if (!node.isVisible()) {
+			return false;
+		}
+		return (viewBounds == null) || node.getBounds().intersects(viewBounds);
+	}
+
+}
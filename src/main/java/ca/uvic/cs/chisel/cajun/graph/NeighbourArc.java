@@ -0,0 +1,45 @@
+package ca.uvic.cs.chisel.cajun.graph;
+
+/**
+ * Describes an arc returned by a {@link NeighbourhoodProvider}.
+ * The source and destination are node user objects.
+ */
+public class NeighbourArc {
+
+	private Object userObject;
+	private Object source;
+	private Object destination;
+	private Object type;
+
+	public NeighbourArc(Object userObject, Object source, Object destination, Object type) {
+		if ((userObject == null) || (source == null) || (destination == null)) {
+			throw new NullPointerException("All arcs must have a user object and source and destination user objects.");
+		}
+		this.userObject = userObject;
+		this.source = source;
+		this.destination = destination;
+		this.type = type;
+	}
+
+	public Object getUserObject() {
+		return userObject;
+	}
+
+	public Object getSource() {
+		return source;
+	}
+
+	public Object getDestination() {
+		return destination;
+	}
+
+	public Object getType() {
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return source + " -- " + type + " --> " + destination;
+	}
+
+}
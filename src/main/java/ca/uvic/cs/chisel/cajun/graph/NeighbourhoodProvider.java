@@ -0,0 +1,28 @@
+package ca.uvic.cs.chisel.cajun.graph;
+
+import java.util.Collection;
+
+import javax.swing.Icon;
+
+/**
+ * Supplies the nodes and arcs for a {@link LazyGraphModel}.
+ * The nodes are identified by their user objects, the {@link ca.uvic.cs.chisel.cajun.graph.node.GraphNode} objects are only
+ * created by the model when they are needed.
+ *
+ * @see LazyGraphModel
+ */
+public interface NeighbourhoodProvider {
+
+	public String getText(Object userObject);
+	
+	public Icon getIcon(Object userObject);
+	
+	public Object getType(Object userObject);
+	
+	/**
+	 * Returns the arcs going into and out of the node with the given user object.
+	 * Each arc must have the user object as its source or destination.
+	 */
+	public Collection<NeighbourArc> expand(Object userObject);
+	
+}
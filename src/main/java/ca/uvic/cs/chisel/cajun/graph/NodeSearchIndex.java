@@ -0,0 +1,590 @@
+package ca.uvic.cs.chisel.cajun.graph;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.swing.Timer;
+
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * A search index over the text and tooltips of the nodes in a {@link GraphModel}, so searches
+ * don't have to call {@link GraphNode#getText()} on every node.
+ * <ul>
+ * <li>{@link #search(String)} finds the nodes whose text contains a string, ignoring case.
+ * Every three character substring of the text is indexed, so only the nodes that contain the
+ * rarest substring of the query are checked.  Queries shorter than three characters check
+ * every node.</li>
+ * <li>{@link #complete(String, int)} and {@link #completeWords(String, int)} find the nodes and
+ * words that start with a prefix, for type-ahead.  Words are split at non letters and digits
+ * and at camel case humps, so "lay" matches "SpringLayout".</li>
+ * <li>{@link #searchFuzzy(String, int, int)} finds the nodes with a word that is within an
+ * edit distance of the query.</li>
+ * <li>{@link #find(String)} returns the matches lazily, and {@link #showMatches(Graph, Iterator)}
+ * feeds them to the graph's matching nodes a batch at a time.</li>
+ * </ul>
+ * The index listens to the model, so added, removed and changed nodes are indexed.  Changing the
+ * text of a node directly doesn't fire a model event, call {@link #update(GraphNode)} after.
+ * The index should only be used on the event dispatch thread, like the model.
+ */
+public class NodeSearchIndex {
+
+	private final GraphModel model;
+	private final GraphModelListener modelListener;
+
+	// the nodes and their lower case text by id, removed nodes leave a null until the next
+	// rebuild, ids aren't reused so that the posting lists never point at the wrong node
+	private GraphNode[] nodes;
+	private String[] texts;
+	private int idCount;
+	private Map<GraphNode, Integer> ids;
+	private int removedCount;
+
+	// the node ids for each three character substring, and each word
+	private TrigramMap trigrams;
+	private TreeMap<String, IntList> words;
+	// the number of ids in the lists above that belong to removed nodes
+	private int staleCount;
+	private int postingCount;
+
+	/**
+	 * Indexes all the nodes in the model, and listens for changes to the model.
+	 */
+	public NodeSearchIndex(GraphModel model) {
+		if (model == null) {
+			throw new NullPointerException("The model can't be null.");
+		}
+		this.model = model;
+		this.modelListener = new GraphModelAdapter() {
+			@Override
+			public void graphCleared() {
+				rebuild();
+			}
+
+			@Override
+			public void graphNodeAdded(GraphNode node) {
+				add(node);
+			}
+
+			@Override
+			public void graphNodeRemoved(GraphNode node) {
+				remove(node);
+			}
+
+			@Override
+			public void graphChanged(GraphModelEvent event) {
+				if (event.isCleared()) {
+					rebuild();
+					return;
+				}
+				for (GraphNode node : event.getRemovedNodes()) {
+					remove(node);
+				}
+				for (GraphNode node : event.getNodes()) {
+					add(node);
+				}
+				for (GraphNode node : event.getChangedNodes()) {
+					update(node);
+				}
+			}
+		};
+		rebuild();
+		model.addGraphModelListener(modelListener);
+	}
+
+	/**
+	 * Stops listening to the model.
+	 */
+	public void dispose() {
+		model.removeGraphModelListener(modelListener);
+	}
+
+	public GraphModel getModel() {
+		return model;
+	}
+
+	/**
+	 * @return the number of indexed nodes
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Re-indexes all the nodes in the model.
+	 */
+	public void rebuild() {
+		Collection<GraphNode> allNodes = model.getAllNodes();
+		this.nodes = new GraphNode[Math.max(16, allNodes.size())];
+		this.texts = new String[nodes.length];
+		this.idCount = 0;
+		this.ids = new IdentityHashMap<GraphNode, Integer>(allNodes.size());
+		this.removedCount = 0;
+		this.trigrams = new TrigramMap();
+		this.words = new TreeMap<String, IntList>();
+		this.staleCount = 0;
+		this.postingCount = 0;
+		for (GraphNode node : allNodes) {
+			add(node);
+		}
+	}
+
+	/**
+	 * Re-indexes the node after its text or tooltip changed.
+	 */
+	public void update(GraphNode node) {
+		if (ids.containsKey(node)) {
+			remove(node);
+			add(node);
+		}
+	}
+
+	private void add(GraphNode node) {
+		if (ids.containsKey(node)) {
+			return;
+		}
+		if (idCount == nodes.length) {
+			nodes = Arrays.copyOf(nodes, 2 * idCount);
+			texts = Arrays.copyOf(texts, 2 * idCount);
+		}
+		int id = idCount++;
+		String original = getSearchText(node);
+		String text = original.toLowerCase();
+		nodes[id] = node;
+		texts[id] = text;
+		ids.put(node, id);
+
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			IntList list = trigrams.getOrAdd(trigram(text, i));
+			// the same substring can appear more than once in the text
+			if (list.last() != id) {
+				list.add(id);
+				postingCount++;
+			}
+		}
+		for (String word : splitWords(original)) {
+			IntList list = words.get(word);
+			if (list == null) {
+				list = new IntList();
+				words.put(word, list);
+			}
+			if (list.last() != id) {
+				list.add(id);
+				postingCount++;
+			}
+		}
+	}
+
+	/**
+	 * Removes the node, its id is left in the posting lists and skipped until there are enough
+	 * removed nodes to rebuild the index.
+	 */
+	private void remove(GraphNode node) {
+		Integer id = ids.remove(node);
+		if (id == null) {
+			return;
+		}
+		String text = texts[id];
+		staleCount += Math.max(0, text.length() - 2);
+		nodes[id] = null;
+		texts[id] = null;
+		removedCount++;
+		if (((staleCount > 1024) && (2 * staleCount > postingCount)) || ((removedCount > 1024) && (2 * removedCount > idCount))) {
+			rebuild();
+		}
+	}
+
+	private static String getSearchText(GraphNode node) {
+		String text = node.getText();
+		String tooltip = node.getTooltip();
+		if (text == null) {
+			text = "";
+		}
+		if ((tooltip != null) && !tooltip.equals(text)) {
+			text = text + "\n" + tooltip;
+		}
+		return text;
+	}
+
+	private static long trigram(String text, int start) {
+		return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+	}
+
+	/**
+	 * Splits the text into lower case words at characters that aren't letters or digits, at
+	 * camel case humps, before the last capital of an acronym that is followed by lower case
+	 * ("XMLParser" is "xml" and "parser"), and between letters and digits.  The whole word is
+	 * included too.
+	 */
+	static List<String> splitWords(String text) {
+		List<String> result = new ArrayList<String>();
+		int wordStart = -1;
+		int partStart = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			char c = (i < text.length() ? text.charAt(i) : ' ');
+			if (Character.isLetterOrDigit(c)) {
+				if (wordStart == -1) {
+					wordStart = i;
+					partStart = i;
+				} else if (isPartStart(text, i)) {
+					result.add(text.substring(partStart, i).toLowerCase());
+					partStart = i;
+				}
+			} else if (wordStart != -1) {
+				if (partStart != wordStart) {
+					result.add(text.substring(partStart, i).toLowerCase());
+				}
+				result.add(text.substring(wordStart, i).toLowerCase());
+				wordStart = -1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if a part of a word starts at the index, the previous character must be a
+	 * letter or digit too
+	 */
+	private static boolean isPartStart(String text, int index) {
+		char previous = text.charAt(index - 1);
+		char c = text.charAt(index);
+		if (Character.isDigit(previous) != Character.isDigit(c)) {
+			return true;
+		}
+		if (Character.isUpperCase(c)) {
+			if (Character.isLowerCase(previous)) {
+				return true;
+			}
+			// the last capital of an acronym starts the next part
+			return Character.isUpperCase(previous) && (index + 1 < text.length()) &&
+					Character.isLowerCase(text.charAt(index + 1));
+		}
+		return false;
+	}
+
+	/**
+	 * @return all the nodes whose text or tooltip contains the query, ignoring case
+	 */
+	public List<GraphNode> search(String query) {
+		return search(query, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return up to limit nodes whose text or tooltip contains the query, ignoring case
+	 */
+	public List<GraphNode> search(String query, int limit) {
+		List<GraphNode> result = new ArrayList<GraphNode>();
+		for (Iterator<GraphNode> iter = find(query); iter.hasNext() && (result.size() < limit);) {
+			result.add(iter.next());
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the nodes whose text or tooltip contains the query, ignoring case.  The nodes are
+	 * found as the iterator is used, so the first matches are returned quickly even when there
+	 * are a lot of them.  The iterator shouldn't be used after the model changes.
+	 */
+	public Iterator<GraphNode> find(String query) {
+		String text = query.toLowerCase();
+		if (text.length() < 3) {
+			return new MatchIterator(text, null);
+		}
+		// only the nodes with the rarest substring of the query need to be checked
+		IntList rarest = null;
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			IntList list = trigrams.get(trigram(text, i));
+			if (list == null) {
+				return new MatchIterator(text, new IntList());
+			}
+			if ((rarest == null) || (list.size < rarest.size)) {
+				rarest = list;
+			}
+		}
+		return new MatchIterator(text, rarest);
+	}
+
+	/**
+	 * @return up to limit nodes with a word that starts with the prefix, ignoring case
+	 */
+	public List<GraphNode> complete(String prefix, int limit) {
+		String lower = prefix.toLowerCase();
+		List<GraphNode> result = new ArrayList<GraphNode>();
+		BitSet found = new BitSet(idCount);
+		for (Map.Entry<String, IntList> entry : getWordsWithPrefix(lower).entrySet()) {
+			IntList list = entry.getValue();
+			for (int i = 0; i < list.size; i++) {
+				int id = list.values[i];
+				if ((nodes[id] != null) && !found.get(id)) {
+					found.set(id);
+					result.add(nodes[id]);
+					if (result.size() >= limit) {
+						return result;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return up to limit words that start with the prefix, in alphabetical order
+	 */
+	public List<String> completeWords(String prefix, int limit) {
+		List<String> result = new ArrayList<String>();
+		for (String word : getWordsWithPrefix(prefix.toLowerCase()).keySet()) {
+			if (result.size() >= limit) {
+				break;
+			}
+			result.add(word);
+		}
+		return result;
+	}
+
+	private SortedMap<String, IntList> getWordsWithPrefix(String prefix) {
+		return words.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the nodes that have a word within the given number of insertions, deletions and
+	 * substitutions of the query, ignoring case.  The nodes with the closest words come first.
+	 * @param maxEdits the maximum edit distance, usually 1 or 2
+	 */
+	public List<GraphNode> searchFuzzy(String query, int maxEdits, int limit) {
+		String lower = query.toLowerCase();
+		// the matching words grouped by their distance
+		List<List<IntList>> matches = new ArrayList<List<IntList>>();
+		for (int i = 0; i <= maxEdits; i++) {
+			matches.add(new ArrayList<IntList>());
+		}
+		int[] row = new int[lower.length() + 1];
+		int[] previous = new int[lower.length() + 1];
+		for (Map.Entry<String, IntList> entry : words.entrySet()) {
+			String word = entry.getKey();
+			if (Math.abs(word.length() - lower.length()) <= maxEdits) {
+				int distance = editDistance(lower, word, maxEdits, row, previous);
+				if (distance <= maxEdits) {
+					matches.get(distance).add(entry.getValue());
+				}
+			}
+		}
+		List<GraphNode> result = new ArrayList<GraphNode>();
+		BitSet found = new BitSet(idCount);
+		for (List<IntList> lists : matches) {
+			for (IntList list : lists) {
+				for (int i = 0; i < list.size; i++) {
+					int id = list.values[i];
+					if ((nodes[id] != null) && !found.get(id)) {
+						found.set(id);
+						result.add(nodes[id]);
+						if (result.size() >= limit) {
+							return result;
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Levenshtein distance that stops once every entry in a row is more than max.
+	 * @return the distance, or max + 1 if it is more than max
+	 */
+	private static int editDistance(String a, String b, int max, int[] row, int[] previous) {
+		for (int i = 0; i <= a.length(); i++) {
+			previous[i] = i;
+		}
+		for (int j = 1; j <= b.length(); j++) {
+			row[0] = j;
+			int rowMin = j;
+			char c = b.charAt(j - 1);
+			for (int i = 1; i <= a.length(); i++) {
+				int cost = (a.charAt(i - 1) == c ? 0 : 1);
+				row[i] = Math.min(Math.min(row[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+				rowMin = Math.min(rowMin, row[i]);
+			}
+			if (rowMin > max) {
+				return max + 1;
+			}
+			int[] swap = previous;
+			previous = row;
+			row = swap;
+		}
+		return Math.min(previous[a.length()], max + 1);
+	}
+
+	/**
+	 * Adds the matches to the graph's matching nodes on the event dispatch thread, a batch at
+	 * a time so the first matches are shown straight away.  The batches double in size, so
+	 * adding all the matches takes linear time.  The graph's matching nodes are cleared first.
+	 * @return the timer that adds the batches, stop it to cancel the search
+	 */
+	public static Timer showMatches(final Graph graph, final Iterator<GraphNode> matches) {
+		graph.setMatchingNodes(null);
+		final Timer timer = new Timer(0, null);
+		timer.addActionListener(new ActionListener() {
+			private int batchSize = 256;
+
+			public void actionPerformed(ActionEvent e) {
+				List<GraphNode> batch = new ArrayList<GraphNode>(batchSize);
+				while (matches.hasNext() && (batch.size() < batchSize)) {
+					batch.add(matches.next());
+				}
+				graph.addMatchingNodes(batch);
+				batchSize *= 2;
+				if (!matches.hasNext()) {
+					timer.stop();
+				}
+			}
+		});
+		timer.setRepeats(true);
+		timer.start();
+		return timer;
+	}
+
+	@Override
+	public String toString() {
+		return "NodeSearchIndex: " + ids.size() + " nodes, " + trigrams.size + " trigrams, " + words.size() + " words";
+	}
+
+	/**
+	 * Checks the candidate ids, or all the ids if there are no candidates, as it goes.
+	 */
+	private class MatchIterator implements Iterator<GraphNode> {
+
+		private final String query;
+		private final IntList candidates;
+		private final int end;
+		private int index;
+		private GraphNode next;
+
+		public MatchIterator(String query, IntList candidates) {
+			this.query = query;
+			this.candidates = candidates;
+			this.end = (candidates != null ? candidates.size : idCount);
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			while ((next == null) && (index < end)) {
+				int id = (candidates != null ? candidates.values[index] : index);
+				index++;
+				String text = (id < texts.length ? texts[id] : null);
+				if ((text != null) && text.contains(query)) {
+					next = nodes[id];
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return (next != null);
+		}
+
+		public GraphNode next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			GraphNode node = next;
+			advance();
+			return node;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+	/**
+	 * Maps the trigrams, packed into a long, to their node ids without boxing the keys.
+	 */
+	private static class TrigramMap {
+
+		private long[] keys = new long[1024];
+		private IntList[] values = new IntList[1024];
+		private int size;
+
+		public IntList get(long key) {
+			int mask = keys.length - 1;
+			for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return values[i];
+				}
+			}
+			return null;
+		}
+
+		public IntList getOrAdd(long key) {
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			for (; values[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return values[i];
+				}
+			}
+			IntList list = new IntList();
+			keys[i] = key;
+			values[i] = list;
+			if (++size > keys.length / 2) {
+				grow();
+			}
+			return list;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			IntList[] oldValues = values;
+			keys = new long[2 * oldKeys.length];
+			values = new IntList[2 * oldValues.length];
+			int mask = keys.length - 1;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldValues[j] != null) {
+					int i = hash(oldKeys[j]) & mask;
+					while (values[i] != null) {
+						i = (i + 1) & mask;
+					}
+					keys[i] = oldKeys[j];
+					values[i] = oldValues[j];
+				}
+			}
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+	}
+
+	private static class IntList {
+
+		private int[] values = new int[2];
+		private int size;
+
+		public void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+
+		public int last() {
+			return (size > 0 ? values[size - 1] : -1);
+		}
+
+	}
+
+}
@@ -0,0 +1,289 @@
+package ca.uvic.cs.chisel.cajun.graph.layout;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.eclipse.zest.layouts.LayoutStyles;
+
+/**
+ * A force directed layout for large graphs.  Connected nodes pull each other together and every
+ * node pushes the others away.  The pushing is approximated with a Barnes-Hut {@link QuadTree},
+ * so an iteration takes O(n log n) time instead of the O(n<sup>2</sup>) of the spring layout.
+ * <p>
+ * The positions and velocities are kept in double arrays.  On graphs with at least
+ * {@link #PARALLEL_THRESHOLD} nodes the forces are computed in parallel in the common
+ * {@link ForkJoinPool}.  The nodes start at random positions, and the distance they can move in
+ * each iteration shrinks from iteration to iteration until the layout settles.
+ */
+public class ForceDirectedLayoutAlgorithm extends NativeLayoutAlgorithm {
+
+	public static final int DEFAULT_ITERATIONS = 300;
+	public static final double DEFAULT_THETA = 0.9;
+
+	/** Graphs with at least this many nodes compute the forces in parallel */
+	public static final int PARALLEL_THRESHOLD = 2048;
+
+	private static final int NODES_PER_TASK = 256;
+	private static final double MIN_EDGE_LENGTH = 20;
+	// the fraction of the velocity that is kept from the last iteration
+	private static final double DAMPING = 0.5;
+	// pulls the nodes towards the centre so that unconnected nodes don't drift away
+	private static final double GRAVITY = 0.02;
+	// the repulsion as a fraction of edge length^2, smaller values give more compact layouts
+	private static final double REPULSION = 0.2;
+	// the temperature at the end, as a fraction of the edge length
+	private static final double MIN_TEMPERATURE = 0.01;
+	private static final long SEED = 20080110L;
+
+	private int iterations;
+	private double theta;
+
+	public ForceDirectedLayoutAlgorithm() {
+		this(LayoutStyles.NONE);
+	}
+
+	public ForceDirectedLayoutAlgorithm(int style) {
+		super(style);
+		this.iterations = DEFAULT_ITERATIONS;
+		this.theta = DEFAULT_THETA;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public void setIterations(int iterations) {
+		if (iterations < 0) {
+			throw new IllegalArgumentException("The iterations can't be negative: " + iterations);
+		}
+		this.iterations = iterations;
+	}
+
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * @param theta how far away a group of nodes must be, relative to its size, before it is
+	 * treated as a single node.  0 computes the exact forces, larger values are faster.
+	 */
+	public void setTheta(double theta) {
+		if (theta < 0) {
+			throw new IllegalArgumentException("Theta can't be negative: " + theta);
+		}
+		this.theta = theta;
+	}
+
+	@Override
+	protected void copySettings(NativeLayoutAlgorithm layout) {
+		super.copySettings(layout);
+		if (layout instanceof ForceDirectedLayoutAlgorithm) {
+			this.iterations = ((ForceDirectedLayoutAlgorithm) layout).iterations;
+			this.theta = ((ForceDirectedLayoutAlgorithm) layout).theta;
+		}
+	}
+
+	@Override
+	protected void layout(LayoutArrays graph) {
+		int count = graph.getNodeCount();
+		if (count == 0) {
+			return;
+		}
+		setTotalSteps(iterations);
+		double k = getIdealEdgeLength(graph);
+		randomize(graph, k);
+		relax(graph, k, iterations, getStartTemperature(count, k));
+	}
+
+	/**
+	 * @return the distance that connected nodes settle at, based on the node sizes
+	 */
+	protected static double getIdealEdgeLength(LayoutArrays graph) {
+		int count = graph.getNodeCount();
+		double[] widths = graph.getWidths();
+		double[] heights = graph.getHeights();
+		double total = 0;
+		for (int i = 0; i < count; i++) {
+			total += Math.sqrt(widths[i] * widths[i] + heights[i] * heights[i]);
+		}
+		return Math.max(MIN_EDGE_LENGTH, (count > 0 ? total / count : 0));
+	}
+
+	/**
+	 * @return how far a node can move in the first iteration
+	 */
+	protected static double getStartTemperature(int count, double k) {
+		return k * Math.max(1, Math.sqrt(count) / 5);
+	}
+
+	/**
+	 * Puts the nodes at random positions in a square that has room for all of them.
+	 */
+	protected static void randomize(LayoutArrays graph, double k) {
+		int count = graph.getNodeCount();
+		double side = k * Math.sqrt(count);
+		double[] x = graph.getX();
+		double[] y = graph.getY();
+		Random random = new Random(SEED);
+		for (int i = 0; i < count; i++) {
+			x[i] = (random.nextDouble() - 0.5) * side;
+			y[i] = (random.nextDouble() - 0.5) * side;
+		}
+	}
+
+	/**
+	 * Moves the nodes for the given number of iterations, cooling from the start temperature to
+	 * a small fraction of the edge length.  Calls {@link #step()} after each iteration.
+	 * @param k the edge length
+	 * @param temperature how far a node can move in the first iteration
+	 */
+	protected void relax(LayoutArrays graph, double k, int iterations, double temperature) {
+		relax(graph, null, k, iterations, temperature);
+	}
+
+	/**
+	 * Like {@link #relax(LayoutArrays, double, int, double)}, but the fixed nodes don't move.
+	 * They still push and pull the other nodes.
+	 * @param fixed true for the nodes that stay where they are, or null if all the nodes move
+	 */
+	protected void relax(LayoutArrays graph, boolean[] fixed, double k, int iterations, double temperature) {
+		Simulation simulation = new Simulation(graph, fixed, k);
+		double cooling = Math.pow(Math.min(1, (k * MIN_TEMPERATURE) / temperature), 1.0 / Math.max(1, iterations));
+		for (int i = 0; (i < iterations) && !isStopped(); i++) {
+			simulation.iterate(temperature);
+			temperature *= cooling;
+			step();
+		}
+	}
+
+	/**
+	 * The forces, velocities and quadtree for one layout.
+	 */
+	private class Simulation {
+
+		private final int count;
+		private final double[] x;
+		private final double[] y;
+		private final double[] vx;
+		private final double[] vy;
+		private final double[] fx;
+		private final double[] fy;
+		private final int[] offsets;
+		private final int[] neighbours;
+		private final boolean[] fixed;
+		private final QuadTree tree;
+		private final double k;
+		private double centreX;
+		private double centreY;
+
+		public Simulation(LayoutArrays graph, boolean[] fixed, double k) {
+			this.count = graph.getNodeCount();
+			this.x = graph.getX();
+			this.y = graph.getY();
+			this.vx = new double[count];
+			this.vy = new double[count];
+			this.fx = new double[count];
+			this.fy = new double[count];
+			this.offsets = graph.getOffsets();
+			this.neighbours = graph.getNeighbours();
+			this.fixed = fixed;
+			this.tree = new QuadTree(count);
+			this.k = k;
+		}
+
+		public void iterate(double temperature) {
+			tree.build(x, y, count);
+			double sumX = 0, sumY = 0;
+			for (int i = 0; i < count; i++) {
+				sumX += x[i];
+				sumY += y[i];
+			}
+			centreX = sumX / count;
+			centreY = sumY / count;
+			if (count >= PARALLEL_THRESHOLD) {
+				ForkJoinPool.commonPool().invoke(new ForceTask(this, 0, count));
+			} else {
+				computeForces(0, count);
+			}
+			for (int i = 0; i < count; i++) {
+				if ((fixed != null) && fixed[i]) {
+					continue;
+				}
+				double dx = DAMPING * vx[i] + fx[i];
+				double dy = DAMPING * vy[i] + fy[i];
+				double length = Math.sqrt(dx * dx + dy * dy);
+				if (length > temperature) {
+					dx *= temperature / length;
+					dy *= temperature / length;
+				}
+				vx[i] = dx;
+				vy[i] = dy;
+				x[i] += dx;
+				y[i] += dy;
+			}
+		}
+
+		/**
+		 * Computes the forces on the nodes from (inclusive) to (exclusive).  Each call only
+		 * writes to the forces of its own nodes.
+		 */
+		public void computeForces(int from, int to) {
+			double[] force = new double[2];
+			int[] stack = new int[QuadTree.getStackSize()];
+			double repulsion = REPULSION * k * k;
+			for (int i = from; i < to; i++) {
+				if ((fixed != null) && fixed[i]) {
+					continue;
+				}
+				double xi = x[i];
+				double yi = y[i];
+				force[0] = GRAVITY * (centreX - xi);
+				force[1] = GRAVITY * (centreY - yi);
+				tree.addRepulsion(i, xi, yi, repulsion, theta, force, stack);
+				// connected nodes pull with a force of distance^2 / k
+				for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+					int j = neighbours[e];
+					double dx = x[j] - xi;
+					double dy = y[j] - yi;
+					double distance = Math.sqrt(dx * dx + dy * dy);
+					force[0] += dx * distance / k;
+					force[1] += dy * distance / k;
+				}
+				fx[i] = force[0];
+				fy[i] = force[1];
+			}
+		}
+
+	}
+
+	/**
+	 * Computes the forces for a range of nodes, splitting it in half until it is small enough.
+	 */
+	private static class ForceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Simulation simulation;
+		private final int from;
+		private final int to;
+
+		public ForceTask(Simulation simulation, int from, int to) {
+			this.simulation = simulation;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= NODES_PER_TASK) {
+				simulation.computeForces(from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ForceTask(simulation, from, middle), new ForceTask(simulation, middle, to));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,117 @@
+package ca.uvic.cs.chisel.cajun.graph.layout;
+
+import java.util.Random;
+
+import org.eclipse.zest.layouts.LayoutStyles;
+import org.eclipse.zest.layouts.constraints.BasicEntityConstraint;
+
+/**
+ * Places new nodes around nodes that have already been laid out.  The entities with a preferred
+ * location in their {@link BasicEntityConstraint} are fixed and stay exactly where they are.
+ * Each of the other nodes starts next to a connected node that has already been placed, and then
+ * a short force directed relaxation spreads them out.  Nodes that aren't connected to a fixed
+ * node start to the right of the fixed nodes.
+ * <p>
+ * Only the entities passed to the layout are used, so the time depends on the number of new
+ * nodes and their neighbours rather than on the size of the graph.  If no entity is fixed it is
+ * the same as the {@link ForceDirectedLayoutAlgorithm}.
+ */
+public class IncrementalLayoutAlgorithm extends ForceDirectedLayoutAlgorithm {
+
+	public static final int DEFAULT_INCREMENTAL_ITERATIONS = 100;
+
+	private static final long SEED = 20080112L;
+
+	// true while laying out around fixed nodes, which must not be moved into the bounds
+	private boolean keepLocations;
+
+	public IncrementalLayoutAlgorithm() {
+		this(LayoutStyles.NONE);
+	}
+
+	public IncrementalLayoutAlgorithm(int style) {
+		super(style);
+		setIterations(DEFAULT_INCREMENTAL_ITERATIONS);
+	}
+
+	@Override
+	protected void layout(LayoutArrays graph) {
+		int count = graph.getNodeCount();
+		boolean[] fixed = new boolean[count];
+		int fixedCount = 0;
+		BasicEntityConstraint constraint = new BasicEntityConstraint();
+		for (int i = 0; i < count; i++) {
+			constraint.hasPreferredLocation = false;
+			graph.getEntity(i).populateLayoutConstraint(constraint);
+			fixed[i] = constraint.hasPreferredLocation;
+			if (fixed[i]) {
+				fixedCount++;
+			}
+		}
+		keepLocations = (fixedCount > 0);
+		if (fixedCount == 0) {
+			super.layout(graph);
+		} else if (fixedCount < count) {
+			setTotalSteps(getIterations());
+			double k = getIdealEdgeLength(graph);
+			placeNearNeighbours(graph, fixed, k);
+			relax(graph, fixed, k, getIterations(), k);
+		}
+	}
+
+	/**
+	 * Places each node that isn't fixed one edge length away from the first placed node it is
+	 * connected to, working outwards from the fixed nodes.
+	 */
+	private static void placeNearNeighbours(LayoutArrays graph, boolean[] fixed, double k) {
+		int count = graph.getNodeCount();
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
+		double[] x = graph.getX();
+		double[] y = graph.getY();
+		Random random = new Random(SEED);
+
+		boolean[] placed = new boolean[count];
+		int[] queue = new int[count];
+		int tail = 0;
+		double maxX = -Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			if (fixed[i]) {
+				placed[i] = true;
+				queue[tail++] = i;
+				maxX = Math.max(maxX, x[i] + (graph.getWidths()[i] / 2));
+				minY = Math.min(minY, y[i] - (graph.getHeights()[i] / 2));
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			int node = queue[head];
+			for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+				int neighbour = neighbours[e];
+				if (!placed[neighbour]) {
+					double angle = 2 * Math.PI * random.nextDouble();
+					x[neighbour] = x[node] + k * Math.cos(angle);
+					y[neighbour] = y[node] + k * Math.sin(angle);
+					placed[neighbour] = true;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+
+		// the nodes that aren't connected to the fixed nodes go in a square to the right of them
+		double side = k * Math.sqrt(count - tail);
+		for (int i = 0; i < count; i++) {
+			if (!placed[i]) {
+				x[i] = maxX + k + random.nextDouble() * side;
+				y[i] = minY + random.nextDouble() * side;
+			}
+		}
+	}
+
+	@Override
+	protected void placeWithinBounds(LayoutArrays graph, double x, double y, double width, double height) {
+		if (!keepLocations) {
+			super.placeWithinBounds(graph, x, y, width, height);
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package ca.uvic.cs.chisel.cajun.graph.layout;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.zest.layouts.LayoutEntity;
+import org.eclipse.zest.layouts.LayoutRelationship;
+
+/**
+ * The entities and relationships of a layout stored in primitive arrays.  Each entity is given an
+ * index, its centre and size are stored in double arrays, and the relationships are stored as an
+ * undirected adjacency list: the neighbours of node <code>i</code> are
+ * <code>neighbours[offsets[i]]</code> to <code>neighbours[offsets[i + 1] - 1]</code>.
+ * Relationships from a node to itself, and to entities that aren't in the layout, are ignored.
+ */
+public class LayoutArrays {
+
+	private final LayoutEntity[] entities;
+	private final int nodeCount;
+	// the centre of each node
+	private final double[] x;
+	private final double[] y;
+	private final double[] widths;
+	private final double[] heights;
+	private final int[] offsets;
+	private final int[] neighbours;
+
+	public LayoutArrays(LayoutEntity[] entities, LayoutRelationship[] relationships) {
+		if ((entities == null) || (relationships == null)) {
+			throw new NullPointerException("The entities and relationships can't be null.");
+		}
+		this.entities = entities;
+		this.nodeCount = entities.length;
+		this.x = new double[nodeCount];
+		this.y = new double[nodeCount];
+		this.widths = new double[nodeCount];
+		this.heights = new double[nodeCount];
+		Map<LayoutEntity, Integer> indexes = new IdentityHashMap<LayoutEntity, Integer>(nodeCount);
+		for (int i = 0; i < nodeCount; i++) {
+			LayoutEntity entity = entities[i];
+			widths[i] = Math.max(0, entity.getWidthInLayout());
+			heights[i] = Math.max(0, entity.getHeightInLayout());
+			x[i] = entity.getXInLayout() + (widths[i] / 2);
+			y[i] = entity.getYInLayout() + (heights[i] / 2);
+			indexes.put(entity, Integer.valueOf(i));
+		}
+
+		// find the ends of each relationship, then count the degrees to make the offsets
+		int[] ends = new int[2 * relationships.length];
+		int edgeCount = 0;
+		this.offsets = new int[nodeCount + 1];
+		for (LayoutRelationship relationship : relationships) {
+			Integer src = indexes.get(relationship.getSourceInLayout());
+			Integer dest = indexes.get(relationship.getDestinationInLayout());
+			if ((src != null) && (dest != null) && !src.equals(dest)) {
+				ends[2 * edgeCount] = src.intValue();
+				ends[2 * edgeCount + 1] = dest.intValue();
+				offsets[src.intValue() + 1]++;
+				offsets[dest.intValue() + 1]++;
+				edgeCount++;
+			}
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		this.neighbours = new int[2 * edgeCount];
+		int[] next = new int[nodeCount];
+		System.arraycopy(offsets, 0, next, 0, nodeCount);
+		for (int i = 0; i < edgeCount; i++) {
+			int src = ends[2 * i];
+			int dest = ends[2 * i + 1];
+			neighbours[next[src]++] = dest;
+			neighbours[next[dest]++] = src;
+		}
+	}
+
+	/**
+	 * Creates the arrays for a graph that has no entities, such as a coarser version of another
+	 * graph.  The nodes have no size and {@link #applyLocations()} can't be used.
+	 * @param offsets the start of each node's neighbours, with one extra element at the end
+	 * @param neighbours the adjacency list, each relationship must be in it in both directions
+	 */
+	LayoutArrays(int[] offsets, int[] neighbours) {
+		this.entities = null;
+		this.nodeCount = offsets.length - 1;
+		this.x = new double[nodeCount];
+		this.y = new double[nodeCount];
+		this.widths = new double[nodeCount];
+		this.heights = new double[nodeCount];
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return the number of relationships, each one is in the adjacency list twice
+	 */
+	public int getEdgeCount() {
+		return neighbours.length / 2;
+	}
+
+	public LayoutEntity getEntity(int node) {
+		return entities[node];
+	}
+
+	/**
+	 * @return the x coordinates of the node centres, which the layout changes
+	 */
+	public double[] getX() {
+		return x;
+	}
+
+	/**
+	 * @return the y coordinates of the node centres, which the layout changes
+	 */
+	public double[] getY() {
+		return y;
+	}
+
+	public double[] getWidths() {
+		return widths;
+	}
+
+	public double[] getHeights() {
+		return heights;
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getNeighbours() {
+		return neighbours;
+	}
+
+	public int getDegree(int node) {
+		return offsets[node + 1] - offsets[node];
+	}
+
+	/**
+	 * Sets the location of each entity from the centres.
+	 */
+	public void applyLocations() {
+		for (int i = 0; i < nodeCount; i++) {
+			entities[i].setLocationInLayout(x[i] - (widths[i] / 2), y[i] - (heights[i] / 2));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "LayoutArrays: " + nodeCount + " nodes, " + getEdgeCount() + " edges";
+	}
+
+}
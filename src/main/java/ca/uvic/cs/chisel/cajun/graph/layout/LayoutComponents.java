@@ -0,0 +1,210 @@
+package ca.uvic.cs.chisel.cajun.graph.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.zest.layouts.LayoutEntity;
+import org.eclipse.zest.layouts.LayoutRelationship;
+
+/**
+ * Splits the entities of a layout into connected components, so that each component can be laid
+ * out on its own, and then packs the laid out components next to each other.
+ * <p>
+ * The components are sorted from the most entities to the fewest.  They are packed with a shelf
+ * packer: the tallest components go first, left to right along a row, and a new row is started
+ * below when the row is full.
+ */
+public class LayoutComponents {
+
+	private final LayoutEntity[][] entities;
+	private final LayoutRelationship[][] relationships;
+
+	public LayoutComponents(LayoutEntity[] allEntities, LayoutRelationship[] allRelationships) {
+		if ((allEntities == null) || (allRelationships == null)) {
+			throw new NullPointerException("The entities and relationships can't be null.");
+		}
+		int count = allEntities.length;
+		Map<LayoutEntity, Integer> indexes = new IdentityHashMap<LayoutEntity, Integer>(count);
+		for (int i = 0; i < count; i++) {
+			indexes.put(allEntities[i], Integer.valueOf(i));
+		}
+
+		// union-find over the relationships
+		int[] parent = new int[count];
+		for (int i = 0; i < count; i++) {
+			parent[i] = i;
+		}
+		int[] sources = new int[allRelationships.length];
+		for (int r = 0; r < allRelationships.length; r++) {
+			Integer src = indexes.get(allRelationships[r].getSourceInLayout());
+			Integer dest = indexes.get(allRelationships[r].getDestinationInLayout());
+			if ((src != null) && (dest != null)) {
+				int a = find(parent, src.intValue());
+				int b = find(parent, dest.intValue());
+				if (a != b) {
+					parent[a] = b;
+				}
+				sources[r] = src.intValue();
+			} else {
+				sources[r] = -1;
+			}
+		}
+
+		// number the components, then sort them by size
+		int[] component = new int[count];
+		int[] sizes = new int[count];
+		int componentCount = 0;
+		int[] roots = new int[count];
+		Arrays.fill(roots, -1);
+		for (int i = 0; i < count; i++) {
+			int root = find(parent, i);
+			if (roots[root] < 0) {
+				roots[root] = componentCount++;
+			}
+			component[i] = roots[root];
+			sizes[component[i]]++;
+		}
+		final int[] componentSizes = sizes;
+		Integer[] order = new Integer[componentCount];
+		for (int c = 0; c < componentCount; c++) {
+			order[c] = Integer.valueOf(c);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer c1, Integer c2) {
+				return componentSizes[c2.intValue()] - componentSizes[c1.intValue()];
+			}
+		});
+		int[] rank = new int[componentCount];
+		for (int c = 0; c < componentCount; c++) {
+			rank[order[c].intValue()] = c;
+		}
+
+		List<List<LayoutEntity>> entityLists = new ArrayList<List<LayoutEntity>>(componentCount);
+		List<List<LayoutRelationship>> relationshipLists = new ArrayList<List<LayoutRelationship>>(componentCount);
+		for (int c = 0; c < componentCount; c++) {
+			entityLists.add(new ArrayList<LayoutEntity>(componentSizes[order[c].intValue()]));
+			relationshipLists.add(new ArrayList<LayoutRelationship>());
+		}
+		for (int i = 0; i < count; i++) {
+			entityLists.get(rank[component[i]]).add(allEntities[i]);
+		}
+		for (int r = 0; r < allRelationships.length; r++) {
+			if (sources[r] >= 0) {
+				relationshipLists.get(rank[component[sources[r]]]).add(allRelationships[r]);
+			}
+		}
+		this.entities = new LayoutEntity[componentCount][];
+		this.relationships = new LayoutRelationship[componentCount][];
+		for (int c = 0; c < componentCount; c++) {
+			List<LayoutEntity> entityList = entityLists.get(c);
+			List<LayoutRelationship> relationshipList = relationshipLists.get(c);
+			entities[c] = entityList.toArray(new LayoutEntity[entityList.size()]);
+			relationships[c] = relationshipList.toArray(new LayoutRelationship[relationshipList.size()]);
+		}
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	public int getComponentCount() {
+		return entities.length;
+	}
+
+	/**
+	 * @return the entities in the component, component 0 is the largest
+	 */
+	public LayoutEntity[] getEntities(int component) {
+		return entities[component];
+	}
+
+	/**
+	 * @return the relationships between the entities in the component
+	 */
+	public LayoutRelationship[] getRelationships(int component) {
+		return relationships[component];
+	}
+
+	/**
+	 * Moves the components so that they don't overlap.  The rows are about as wide as needed to
+	 * make the packed components fit the aspect ratio of the given bounds.
+	 * @param x the left of the packed components
+	 * @param y the top of the packed components
+	 * @param width the width of the bounds, used with the height for the aspect ratio
+	 * @param height the height of the bounds
+	 * @param spacing the space between the components
+	 */
+	public void pack(double x, double y, double width, double height, double spacing) {
+		int count = entities.length;
+		if (count == 0) {
+			return;
+		}
+		final double[][] bounds = new double[count][];
+		double area = 0;
+		double widest = 0;
+		for (int c = 0; c < count; c++) {
+			bounds[c] = getBounds(entities[c]);
+			area += (bounds[c][2] + spacing) * (bounds[c][3] + spacing);
+			widest = Math.max(widest, bounds[c][2]);
+		}
+		double aspectRatio = ((width > 0) && (height > 0) ? width / height : 1);
+		double rowWidth = Math.max(widest, Math.sqrt(area * aspectRatio));
+
+		// the tallest components first, so that each row is about as tall as its components
+		Integer[] order = new Integer[count];
+		for (int c = 0; c < count; c++) {
+			order[c] = Integer.valueOf(c);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer c1, Integer c2) {
+				return Double.compare(bounds[c2.intValue()][3], bounds[c1.intValue()][3]);
+			}
+		});
+		double rowX = 0, rowY = 0, rowHeight = 0;
+		for (Integer index : order) {
+			int c = index.intValue();
+			double[] box = bounds[c];
+			if ((rowX > 0) && (rowX + box[2] > rowWidth)) {
+				rowX = 0;
+				rowY += rowHeight + spacing;
+				rowHeight = 0;
+			}
+			double dx = (x + rowX) - box[0];
+			double dy = (y + rowY) - box[1];
+			for (LayoutEntity entity : entities[c]) {
+				entity.setLocationInLayout(entity.getXInLayout() + dx, entity.getYInLayout() + dy);
+			}
+			rowX += box[2] + spacing;
+			rowHeight = Math.max(rowHeight, box[3]);
+		}
+	}
+
+	/**
+	 * @return the x, y, width and height of the entities
+	 */
+	private static double[] getBounds(LayoutEntity[] component) {
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (LayoutEntity entity : component) {
+			minX = Math.min(minX, entity.getXInLayout());
+			minY = Math.min(minY, entity.getYInLayout());
+			maxX = Math.max(maxX, entity.getXInLayout() + entity.getWidthInLayout());
+			maxY = Math.max(maxY, entity.getYInLayout() + entity.getHeightInLayout());
+		}
+		return new double[] { minX, minY, maxX - minX, maxY - minY };
+	}
+
+	@Override
+	public String toString() {
+		return "LayoutComponents: " + entities.length + " components";
+	}
+
+}
@@ -0,0 +1,243 @@
+package ca.uvic.cs.chisel.cajun.graph.layout;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.zest.layouts.LayoutBendPoint;
+import org.eclipse.zest.layouts.LayoutEntity;
+import org.eclipse.zest.layouts.LayoutRelationship;
+import org.eclipse.zest.layouts.constraints.BasicEntityConstraint;
+import org.eclipse.zest.layouts.constraints.LabelLayoutConstraint;
+import org.eclipse.zest.layouts.constraints.LayoutConstraint;
+
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * A copy of the node sizes and locations, and the arc endpoints, that a layout algorithm can run
+ * on without touching the graph.  The snapshot is made on the event dispatch thread, the layout
+ * can then run on any thread, and {@link #apply()} copies the results back to the nodes on the
+ * event dispatch thread.
+ */
+public class LayoutSnapshot {
+
+	private final SnapshotNode[] nodes;
+	private final SnapshotArc[] arcs;
+
+	/**
+	 * @param graphNodes the nodes to lay out
+	 * @param graphArcs the arcs to lay out, arcs that aren't between two of the nodes are ignored
+	 */
+	public LayoutSnapshot(Collection<GraphNode> graphNodes, Collection<GraphArc> graphArcs) {
+		this(graphNodes, graphArcs, Collections.<GraphNode>emptySet());
+	}
+
+	/**
+	 * @param graphNodes the nodes to lay out
+	 * @param graphArcs the arcs to lay out, arcs that aren't between two of the nodes are ignored
+	 * @param fixedNodes the nodes that should stay where they are now.  They start at their
+	 * current location instead of their last layout location, and have a preferred location in
+	 * their {@link BasicEntityConstraint}.
+	 */
+	public LayoutSnapshot(Collection<GraphNode> graphNodes, Collection<GraphArc> graphArcs, Set<GraphNode> fixedNodes) {
+		Map<GraphNode, SnapshotNode> nodeMap = new IdentityHashMap<GraphNode, SnapshotNode>(graphNodes.size());
+		this.nodes = new SnapshotNode[graphNodes.size()];
+		int i = 0;
+		for (GraphNode node : graphNodes) {
+			nodes[i] = new SnapshotNode(node, fixedNodes.contains(node));
+			nodeMap.put(node, nodes[i]);
+			i++;
+		}
+		SnapshotArc[] allArcs = new SnapshotArc[graphArcs.size()];
+		int count = 0;
+		for (GraphArc arc : graphArcs) {
+			SnapshotNode src = nodeMap.get(arc.getSource());
+			SnapshotNode dest = nodeMap.get(arc.getDestination());
+			if ((src != null) && (dest != null)) {
+				allArcs[count++] = new SnapshotArc(src, dest);
+			}
+		}
+		this.arcs = new SnapshotArc[count];
+		System.arraycopy(allArcs, 0, arcs, 0, count);
+	}
+
+	public LayoutEntity[] getEntities() {
+		return nodes;
+	}
+
+	public LayoutRelationship[] getRelationships() {
+		return arcs;
+	}
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	public int getArcCount() {
+		return arcs.length;
+	}
+
+	/**
+	 * Sets the layout location and size of each node to the ones computed by the layout.
+	 * This must be called on the event dispatch thread.
+	 */
+	public void apply() {
+		for (SnapshotNode node : nodes) {
+			node.node.setSizeInLayout(node.width, node.height);
+			node.node.setLocationInLayout(node.x, node.y);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "LayoutSnapshot: " + nodes.length + " nodes, " + arcs.length + " arcs";
+	}
+
+	/**
+	 * The layout entity for one node.
+	 */
+	private static class SnapshotNode implements LayoutEntity {
+
+		private final GraphNode node;
+		private final String text;
+		private final BasicEntityConstraint basicConstraint;
+		private final LabelLayoutConstraint labelConstraint;
+		private double x;
+		private double y;
+		private double width;
+		private double height;
+		private Object layoutInformation;
+
+		public SnapshotNode(GraphNode node, boolean fixed) {
+			this.node = node;
+			this.text = String.valueOf(node.getText());
+			this.x = node.getXInLayout();
+			this.y = node.getYInLayout();
+			this.width = node.getWidthInLayout();
+			this.height = node.getHeightInLayout();
+			// the constraints are read from the node now, in case they depend on its bounds
+			this.basicConstraint = new BasicEntityConstraint();
+			node.populateLayoutConstraint(basicConstraint);
+			if (fixed) {
+				this.x = node.getBounds().getX();
+				this.y = node.getBounds().getY();
+				basicConstraint.hasPreferredLocation = true;
+				basicConstraint.preferredX = x;
+				basicConstraint.preferredY = y;
+			}
+			this.labelConstraint = new LabelLayoutConstraint();
+			node.populateLayoutConstraint(labelConstraint);
+		}
+
+		public double getXInLayout() {
+			return x;
+		}
+
+		public double getYInLayout() {
+			return y;
+		}
+
+		public double getWidthInLayout() {
+			return width;
+		}
+
+		public double getHeightInLayout() {
+			return height;
+		}
+
+		public void setLocationInLayout(double x, double y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		public void setSizeInLayout(double width, double height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		public Object getLayoutInformation() {
+			return layoutInformation;
+		}
+
+		public void setLayoutInformation(Object layoutInformation) {
+			this.layoutInformation = layoutInformation;
+		}
+
+		public void populateLayoutConstraint(LayoutConstraint constraint) {
+			if (constraint instanceof BasicEntityConstraint) {
+				BasicEntityConstraint basic = (BasicEntityConstraint) constraint;
+				basic.hasPreferredLocation = basicConstraint.hasPreferredLocation;
+				basic.preferredX = basicConstraint.preferredX;
+				basic.preferredY = basicConstraint.preferredY;
+				basic.hasPreferredSize = basicConstraint.hasPreferredSize;
+				basic.preferredWidth = basicConstraint.preferredWidth;
+				basic.preferredHeight = basicConstraint.preferredHeight;
+			} else if (constraint instanceof LabelLayoutConstraint) {
+				LabelLayoutConstraint label = (LabelLayoutConstraint) constraint;
+				label.label = labelConstraint.label;
+				label.pointSize = labelConstraint.pointSize;
+			}
+		}
+
+		/**
+		 * Sorts the nodes by their text, like the graph nodes.
+		 */
+		public int compareTo(Object o) {
+			if (o instanceof SnapshotNode) {
+				return text.compareToIgnoreCase(((SnapshotNode) o).text);
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+
+	}
+
+	/**
+	 * The layout relationship for one arc.
+	 */
+	private static class SnapshotArc implements LayoutRelationship {
+
+		private final SnapshotNode src;
+		private final SnapshotNode dest;
+		private Object layoutInformation;
+
+		public SnapshotArc(SnapshotNode src, SnapshotNode dest) {
+			this.src = src;
+			this.dest = dest;
+		}
+
+		public LayoutEntity getSourceInLayout() {
+			return src;
+		}
+
+		public LayoutEntity getDestinationInLayout() {
+			return dest;
+		}
+
+		public Object getLayoutInformation() {
+			return layoutInformation;
+		}
+
+		public void setLayoutInformation(Object layoutInformation) {
+			this.layoutInformation = layoutInformation;
+		}
+
+		public void setBendPoints(LayoutBendPoint[] bendPoints) {
+		}
+
+		public void clearBendPoints() {
+		}
+
+		public void populateLayoutConstraint(LayoutConstraint constraint) {
+		}
+
+	}
+
+}
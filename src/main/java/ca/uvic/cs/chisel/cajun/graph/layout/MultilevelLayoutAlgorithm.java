@@ -0,0 +1,232 @@
+package ca.uvic.cs.chisel.cajun.graph.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.zest.layouts.LayoutStyles;
+
+/**
+ * A force directed layout that starts from a coarse version of the graph.  The graph is
+ * coarsened by repeatedly merging each node with one of its neighbours, until it is small.
+ * The coarsest graph is laid out from random positions, then each level is placed at the position
+ * of the node it was merged into and refined with a few iterations of the
+ * {@link ForceDirectedLayoutAlgorithm}.
+ * <p>
+ * The coarse levels untangle the graph cheaply, so the full graph only needs a short refinement
+ * instead of hundreds of iterations from a random start.
+ */
+public class MultilevelLayoutAlgorithm extends ForceDirectedLayoutAlgorithm {
+
+	public static final int DEFAULT_REFINE_ITERATIONS = 30;
+
+	// graphs with this many nodes or fewer aren't coarsened any more
+	private static final int COARSEST_SIZE = 64;
+	// stop coarsening when a level doesn't remove at least a quarter of the nodes
+	private static final double MAX_COARSENING_RATIO = 0.75;
+	// the edge length grows by this much on each coarser level
+	private static final double LEVEL_SCALE = Math.sqrt(7.0 / 4.0);
+	// how far the nodes are spread around the coarse node they came from, as a fraction of the edge length
+	private static final double SPREAD = 0.5;
+	private static final long SEED = 20080111L;
+
+	private int refineIterations;
+
+	public MultilevelLayoutAlgorithm() {
+		this(LayoutStyles.NONE);
+	}
+
+	public MultilevelLayoutAlgorithm(int style) {
+		super(style);
+		this.refineIterations = DEFAULT_REFINE_ITERATIONS;
+	}
+
+	public int getRefineIterations() {
+		return refineIterations;
+	}
+
+	/**
+	 * @param refineIterations the number of iterations run on each level after the coarsest
+	 */
+	public void setRefineIterations(int refineIterations) {
+		if (refineIterations < 0) {
+			throw new IllegalArgumentException("The refine iterations can't be negative: " + refineIterations);
+		}
+		this.refineIterations = refineIterations;
+	}
+
+	@Override
+	protected void copySettings(NativeLayoutAlgorithm layout) {
+		super.copySettings(layout);
+		if (layout instanceof MultilevelLayoutAlgorithm) {
+			this.refineIterations = ((MultilevelLayoutAlgorithm) layout).refineIterations;
+		}
+	}
+
+	@Override
+	protected void layout(LayoutArrays graph) {
+		if (graph.getNodeCount() == 0) {
+			return;
+		}
+		// levels.get(i + 1) is the coarser version of levels.get(i), and parents.get(i) maps
+		// each node in level i to the node it was merged into
+		List<LayoutArrays> levels = new ArrayList<LayoutArrays>();
+		List<int[]> parents = new ArrayList<int[]>();
+		Random random = new Random(SEED);
+		LayoutArrays level = graph;
+		levels.add(level);
+		while (level.getNodeCount() > COARSEST_SIZE) {
+			int[] parent = new int[level.getNodeCount()];
+			int coarseCount = match(level, parent, random);
+			if (coarseCount > MAX_COARSENING_RATIO * level.getNodeCount()) {
+				break;
+			}
+			level = coarsen(level, parent, coarseCount);
+			levels.add(level);
+			parents.add(parent);
+		}
+
+		int top = levels.size() - 1;
+		setTotalSteps(getIterations() + top * refineIterations);
+		double k = getIdealEdgeLength(graph) * Math.pow(LEVEL_SCALE, top);
+		LayoutArrays coarsest = levels.get(top);
+		randomize(coarsest, k);
+		relax(coarsest, k, getIterations(), getStartTemperature(coarsest.getNodeCount(), k));
+		for (int i = top - 1; i >= 0; i--) {
+			k /= LEVEL_SCALE;
+			// once the layout is stopped relax returns straight away, but the levels are still
+			// interpolated so that every node gets a position
+			interpolate(levels.get(i + 1), levels.get(i), parents.get(i), k, random);
+			relax(levels.get(i), k, refineIterations, k);
+		}
+	}
+
+	/**
+	 * Matches each node with an unmatched neighbour, preferring neighbours with a low degree so
+	 * that the hubs stay apart.  Unmatched nodes with one neighbour join that neighbour, and the
+	 * unmatched nodes without neighbours are paired up.
+	 * @param parent filled with the coarse node that each node belongs to
+	 * @return the number of coarse nodes
+	 */
+	private static int match(LayoutArrays graph, int[] parent, Random random) {
+		int count = graph.getNodeCount();
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+			parent[i] = -1;
+		}
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+
+		int coarseCount = 0;
+		for (int node : order) {
+			if (parent[node] >= 0) {
+				continue;
+			}
+			int best = -1;
+			for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+				int neighbour = neighbours[e];
+				if ((parent[neighbour] < 0) && ((best < 0) || (graph.getDegree(neighbour) < graph.getDegree(best)))) {
+					best = neighbour;
+				}
+			}
+			if (best >= 0) {
+				parent[node] = coarseCount;
+				parent[best] = coarseCount;
+				coarseCount++;
+			}
+		}
+
+		int isolated = -1;
+		for (int node : order) {
+			if (parent[node] >= 0) {
+				continue;
+			}
+			int degree = graph.getDegree(node);
+			if ((degree == 1) && (parent[neighbours[offsets[node]]] >= 0)) {
+				parent[node] = parent[neighbours[offsets[node]]];
+			} else if ((degree == 0) && (isolated >= 0)) {
+				parent[node] = parent[isolated];
+				isolated = -1;
+			} else {
+				parent[node] = coarseCount++;
+				if (degree == 0) {
+					isolated = node;
+				}
+			}
+		}
+		return coarseCount;
+	}
+
+	/**
+	 * @return the graph of the coarse nodes, with a relationship between two coarse nodes if
+	 * any of their nodes are connected
+	 */
+	private static LayoutArrays coarsen(LayoutArrays graph, int[] parent, int coarseCount) {
+		int count = graph.getNodeCount();
+		int[] offsets = graph.getOffsets();
+		int[] neighbours = graph.getNeighbours();
+
+		// list the nodes in each coarse node
+		int[] memberOffsets = new int[coarseCount + 1];
+		for (int i = 0; i < count; i++) {
+			memberOffsets[parent[i] + 1]++;
+		}
+		for (int c = 0; c < coarseCount; c++) {
+			memberOffsets[c + 1] += memberOffsets[c];
+		}
+		int[] members = new int[count];
+		int[] next = new int[coarseCount];
+		System.arraycopy(memberOffsets, 0, next, 0, coarseCount);
+		for (int i = 0; i < count; i++) {
+			members[next[parent[i]]++] = i;
+		}
+
+		// collect the neighbours of each coarse node, using last to skip duplicates
+		int[] coarseOffsets = new int[coarseCount + 1];
+		int[] coarseNeighbours = new int[neighbours.length];
+		int[] last = new int[coarseCount];
+		Arrays.fill(last, -1);
+		int size = 0;
+		for (int c = 0; c < coarseCount; c++) {
+			coarseOffsets[c] = size;
+			for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+				int node = members[m];
+				for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+					int neighbour = parent[neighbours[e]];
+					if ((neighbour != c) && (last[neighbour] != c)) {
+						last[neighbour] = c;
+						coarseNeighbours[size++] = neighbour;
+					}
+				}
+			}
+		}
+		coarseOffsets[coarseCount] = size;
+		int[] trimmed = new int[size];
+		System.arraycopy(coarseNeighbours, 0, trimmed, 0, size);
+		return new LayoutArrays(coarseOffsets, trimmed);
+	}
+
+	/**
+	 * Places each node of the finer graph near the coarse node it was merged into.
+	 */
+	private static void interpolate(LayoutArrays coarse, LayoutArrays fine, int[] parent, double k, Random random) {
+		double[] coarseX = coarse.getX();
+		double[] coarseY = coarse.getY();
+		double[] x = fine.getX();
+		double[] y = fine.getY();
+		double spread = SPREAD * k;
+		for (int i = 0; i < fine.getNodeCount(); i++) {
+			x[i] = coarseX[parent[i]] + (random.nextDouble() - 0.5) * spread;
+			y[i] = coarseY[parent[i]] + (random.nextDouble() - 0.5) * spread;
+		}
+	}
+
+}
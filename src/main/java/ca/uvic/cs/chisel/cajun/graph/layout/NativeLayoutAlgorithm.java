@@ -0,0 +1,273 @@
+package ca.uvic.cs.chisel.cajun.graph.layout;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.zest.layouts.Filter;
+import org.eclipse.zest.layouts.InvalidLayoutConfiguration;
+import org.eclipse.zest.layouts.LayoutAlgorithm;
+import org.eclipse.zest.layouts.LayoutEntity;
+import org.eclipse.zest.layouts.LayoutRelationship;
+import org.eclipse.zest.layouts.LayoutStyles;
+import org.eclipse.zest.layouts.progress.ProgressEvent;
+import org.eclipse.zest.layouts.progress.ProgressListener;
+
+import ca.uvic.cs.chisel.cajun.util.ListenerList;
+
+/**
+ * Base class for the layout algorithms that work on {@link LayoutArrays} instead of on the
+ * entities.  The subclass moves the node centres, then the layout is moved so that it starts at
+ * the top left of the layout bounds, or is centred if it is smaller than the bounds.  It is only
+ * shrunk to fit the bounds if the style includes {@link LayoutStyles#ENFORCE_BOUNDS}.
+ * <p>
+ * Only synchronous, non-continuous layouts are supported, so the methods for adding and removing
+ * entities while the layout is running do nothing.
+ */
+public abstract class NativeLayoutAlgorithm implements LayoutAlgorithm {
+
+	private static final int PROGRESS_STARTED = 0;
+	private static final int PROGRESS_UPDATED = 1;
+	private static final int PROGRESS_ENDED = 2;
+
+	private int style;
+	private Comparator<?> comparator;
+	private Filter filter;
+	private double entityAspectRatio;
+	private final ListenerList<ProgressListener> progressListeners;
+	private volatile boolean running;
+	private volatile boolean stopped;
+	private int totalSteps;
+	private int completedSteps;
+
+	public NativeLayoutAlgorithm(int style) {
+		this.style = style;
+		this.entityAspectRatio = -1;
+		this.progressListeners = new ListenerList<ProgressListener>();
+	}
+
+	public void applyLayout(LayoutEntity[] entitiesToLayout, LayoutRelationship[] relationshipsToConsider,
+			double x, double y, double width, double height, boolean asynchronous, boolean continuous)
+			throws InvalidLayoutConfiguration {
+		if (asynchronous || continuous) {
+			throw new InvalidLayoutConfiguration();
+		}
+		LayoutArrays graph = new LayoutArrays(getEntities(entitiesToLayout), relationshipsToConsider);
+		running = true;
+		stopped = false;
+		totalSteps = 0;
+		completedSteps = 0;
+		try {
+			fireProgress(PROGRESS_STARTED);
+			layout(graph);
+			placeWithinBounds(graph, x, y, width, height);
+			graph.applyLocations();
+		} finally {
+			running = false;
+			fireProgress(PROGRESS_ENDED);
+		}
+	}
+
+	/**
+	 * Creates a new instance of the same class with the same settings, so the layout can be run
+	 * on another thread or for each connected component.  The progress listeners aren't copied.
+	 * @throws IllegalStateException if the class doesn't have a public no argument constructor
+	 */
+	public NativeLayoutAlgorithm copy() {
+		NativeLayoutAlgorithm copy;
+		try {
+			copy = getClass().newInstance();
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("The layout can't be copied: " + getClass().getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("The layout can't be copied: " + getClass().getName(), e);
+		}
+		copy.copySettings(this);
+		return copy;
+	}
+
+	/**
+	 * Copies the settings of the layout into this one.  Subclasses with their own settings
+	 * should override this and call the super method.
+	 */
+	protected void copySettings(NativeLayoutAlgorithm layout) {
+		this.style = layout.style;
+		this.comparator = layout.comparator;
+		this.filter = layout.filter;
+		this.entityAspectRatio = layout.entityAspectRatio;
+	}
+
+	/**
+	 * Moves the node centres.  The layout can be in any coordinates, it is moved into the bounds
+	 * afterwards.  Long layouts should call {@link #setTotalSteps(int)} and {@link #step()}, and
+	 * should return early once {@link #isStopped()} is true.
+	 */
+	protected abstract void layout(LayoutArrays graph);
+
+	private LayoutEntity[] getEntities(LayoutEntity[] entities) {
+		if (filter == null) {
+			return entities;
+		}
+		List<LayoutEntity> list = new ArrayList<LayoutEntity>(entities.length);
+		for (LayoutEntity entity : entities) {
+			if (!filter.isObjectFiltered(entity)) {
+				list.add(entity);
+			}
+		}
+		return list.toArray(new LayoutEntity[list.size()]);
+	}
+
+	/**
+	 * Moves the layout into the bounds, and shrinks it if the style enforces the bounds.
+	 * Layouts that leave some of the nodes where they were can override this to do nothing.
+	 */
+	protected void placeWithinBounds(LayoutArrays graph, double x, double y, double width, double height) {
+		int count = graph.getNodeCount();
+		if (count == 0) {
+			return;
+		}
+		double[] xs = graph.getX();
+		double[] ys = graph.getY();
+		double[] widths = graph.getWidths();
+		double[] heights = graph.getHeights();
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, xs[i] - (widths[i] / 2));
+			minY = Math.min(minY, ys[i] - (heights[i] / 2));
+			maxX = Math.max(maxX, xs[i] + (widths[i] / 2));
+			maxY = Math.max(maxY, ys[i] + (heights[i] / 2));
+		}
+		double scale = 1;
+		if ((style & LayoutStyles.ENFORCE_BOUNDS) != 0) {
+			// the node sizes don't change, so only the space between the centres can shrink
+			double centreWidth = Math.max(1, (maxX - minX) - getMaximum(widths, count));
+			double centreHeight = Math.max(1, (maxY - minY) - getMaximum(heights, count));
+			double availableWidth = Math.max(0, width - getMaximum(widths, count));
+			double availableHeight = Math.max(0, height - getMaximum(heights, count));
+			scale = Math.min(1, Math.min(availableWidth / centreWidth, availableHeight / centreHeight));
+		}
+		double boxWidth = scale * (maxX - minX);
+		double boxHeight = scale * (maxY - minY);
+		double dx = x + Math.max(0, (width - boxWidth) / 2);
+		double dy = y + Math.max(0, (height - boxHeight) / 2);
+		double centreX = (minX + maxX) / 2;
+		double centreY = (minY + maxY) / 2;
+		for (int i = 0; i < count; i++) {
+			// scale around the centre, then move the box to the top left
+			xs[i] = dx + (boxWidth / 2) + scale * (xs[i] - centreX);
+			ys[i] = dy + (boxHeight / 2) + scale * (ys[i] - centreY);
+		}
+	}
+
+	private static double getMaximum(double[] values, int count) {
+		double max = 0;
+		for (int i = 0; i < count; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	/**
+	 * Sets the number of steps that the layout will report.
+	 */
+	protected void setTotalSteps(int totalSteps) {
+		this.totalSteps = totalSteps;
+		this.completedSteps = 0;
+		fireProgress(PROGRESS_UPDATED);
+	}
+
+	/**
+	 * Reports that one more step is done.
+	 */
+	protected void step() {
+		completedSteps++;
+		fireProgress(PROGRESS_UPDATED);
+	}
+
+	/**
+	 * @return true if {@link #stop()} was called while the layout is running
+	 */
+	protected boolean isStopped() {
+		return stopped;
+	}
+
+	private void fireProgress(int type) {
+		ProgressEvent event = new ProgressEvent(Math.min(completedSteps, totalSteps), totalSteps);
+		Object[] array = progressListeners.getArray();
+		for (int i = 0; i < array.length; i++) {
+			ProgressListener listener = progressListeners.get(array, i);
+			if (listener != null) {
+				if (type == PROGRESS_STARTED) {
+					listener.progressStarted(event);
+				} else if (type == PROGRESS_UPDATED) {
+					listener.progressUpdated(event);
+				} else {
+					listener.progressEnded(event);
+				}
+			}
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public void stop() {
+		stopped = true;
+	}
+
+	public void addProgressListener(ProgressListener listener) {
+		progressListeners.add(listener);
+	}
+
+	public void removeProgressListener(ProgressListener listener) {
+		progressListeners.remove(listener);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void setComparator(Comparator comparator) {
+		this.comparator = comparator;
+	}
+
+	public Comparator<?> getComparator() {
+		return comparator;
+	}
+
+	public void setFilter(Filter filter) {
+		this.filter = filter;
+	}
+
+	public void setEntityAspectRatio(double ratio) {
+		this.entityAspectRatio = ratio;
+	}
+
+	public double getEntityAspectRatio() {
+		return entityAspectRatio;
+	}
+
+	public void setStyle(int style) {
+		this.style = style;
+	}
+
+	public int getStyle() {
+		return style;
+	}
+
+	public void addEntity(LayoutEntity entity) {
+	}
+
+	public void addRelationship(LayoutRelationship relationship) {
+	}
+
+	public void removeEntity(LayoutEntity entity) {
+	}
+
+	public void removeRelationship(LayoutRelationship relationship) {
+	}
+
+	@SuppressWarnings("rawtypes")
+	public void removeRelationships(List relationships) {
+	}
+
+}
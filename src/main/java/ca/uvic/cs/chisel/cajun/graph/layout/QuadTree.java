@@ -0,0 +1,189 @@
+package ca.uvic.cs.chisel.cajun.graph.layout;
+
+import java.util.Arrays;
+
+/**
+ * A Barnes-Hut quadtree over a set of points, stored in arrays so that it can be rebuilt every
+ * iteration without creating objects.  Each cell knows the number of points inside it and their
+ * centre of mass, so the repulsion from a far away cell can be approximated by one point.
+ * <p>
+ * Once it is built the tree is only read, so {@link #addRepulsion(int, double, double, double,
+ * double, double[], int[])} can be called from many threads.
+ */
+class QuadTree {
+
+	// cells smaller than the root divided by 2^MAX_DEPTH aren't split
+	private static final int MAX_DEPTH = 32;
+	private static final int EMPTY = -1;
+	private static final int MULTIPLE = -2;
+	// points closer than this don't push each other
+	private static final double MIN_DISTANCE_SQUARED = 1e-9;
+
+	private int cellCount;
+	// the index of the first of the four children, or -1 for a leaf
+	private int[] firstChild;
+	// the point in a leaf, EMPTY, or MULTIPLE if several points are too close to split
+	private int[] point;
+	private double[] mass;
+	private double[] massX;
+	private double[] massY;
+	private double[] centreX;
+	private double[] centreY;
+	private double[] halfSize;
+	private double minHalfSize;
+
+	public QuadTree(int points) {
+		allocate(Math.max(16, 2 * points));
+	}
+
+	private void allocate(int capacity) {
+		firstChild = (firstChild == null ? new int[capacity] : Arrays.copyOf(firstChild, capacity));
+		point = (point == null ? new int[capacity] : Arrays.copyOf(point, capacity));
+		mass = (mass == null ? new double[capacity] : Arrays.copyOf(mass, capacity));
+		massX = (massX == null ? new double[capacity] : Arrays.copyOf(massX, capacity));
+		massY = (massY == null ? new double[capacity] : Arrays.copyOf(massY, capacity));
+		centreX = (centreX == null ? new double[capacity] : Arrays.copyOf(centreX, capacity));
+		centreY = (centreY == null ? new double[capacity] : Arrays.copyOf(centreY, capacity));
+		halfSize = (halfSize == null ? new double[capacity] : Arrays.copyOf(halfSize, capacity));
+	}
+
+	/**
+	 * Builds the tree for the first <code>count</code> points.
+	 */
+	public void build(double[] x, double[] y, int count) {
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		double half = Math.max(1, Math.max(maxX - minX, maxY - minY) / 2);
+		minHalfSize = half / (1L << MAX_DEPTH);
+		cellCount = 0;
+		addCell((minX + maxX) / 2, (minY + maxY) / 2, half);
+		for (int i = 0; i < count; i++) {
+			insert(i, x, y);
+		}
+		// turn the sums into centres of mass
+		for (int cell = 0; cell < cellCount; cell++) {
+			if (mass[cell] > 0) {
+				massX[cell] /= mass[cell];
+				massY[cell] /= mass[cell];
+			}
+		}
+	}
+
+	private int addCell(double x, double y, double half) {
+		if (cellCount == firstChild.length) {
+			allocate(2 * cellCount);
+		}
+		int cell = cellCount++;
+		firstChild[cell] = -1;
+		point[cell] = EMPTY;
+		mass[cell] = 0;
+		massX[cell] = 0;
+		massY[cell] = 0;
+		centreX[cell] = x;
+		centreY[cell] = y;
+		halfSize[cell] = half;
+		return cell;
+	}
+
+	private void insert(int p, double[] xs, double[] ys) {
+		double x = xs[p];
+		double y = ys[p];
+		int cell = 0;
+		while (true) {
+			mass[cell]++;
+			massX[cell] += x;
+			massY[cell] += y;
+			if (firstChild[cell] >= 0) {
+				cell = firstChild[cell] + getQuadrant(cell, x, y);
+			} else if (point[cell] == EMPTY) {
+				point[cell] = p;
+				return;
+			} else if ((point[cell] == MULTIPLE) || (halfSize[cell] < minHalfSize)) {
+				point[cell] = MULTIPLE;
+				return;
+			} else {
+				// split the leaf, moving its point into a child
+				int existing = point[cell];
+				double existingX = xs[existing];
+				double existingY = ys[existing];
+				double quarter = halfSize[cell] / 2;
+				double cx = centreX[cell];
+				double cy = centreY[cell];
+				int first = addCell(cx - quarter, cy - quarter, quarter);
+				addCell(cx + quarter, cy - quarter, quarter);
+				addCell(cx - quarter, cy + quarter, quarter);
+				addCell(cx + quarter, cy + quarter, quarter);
+				firstChild[cell] = first;
+				point[cell] = EMPTY;
+				int child = first + getQuadrant(cell, existingX, existingY);
+				point[child] = existing;
+				mass[child] = 1;
+				massX[child] = existingX;
+				massY[child] = existingY;
+				cell = first + getQuadrant(cell, x, y);
+			}
+		}
+	}
+
+	private int getQuadrant(int cell, double x, double y) {
+		return (x >= centreX[cell] ? 1 : 0) + (y >= centreY[cell] ? 2 : 0);
+	}
+
+	/**
+	 * Adds the repulsion on point p from all the other points.  Each point pushes with a force of
+	 * <code>strength / distance</code>, and cells whose size is less than <code>theta</code>
+	 * times their distance are treated as one point.
+	 * @param force the x and y force are added to the first two elements
+	 * @param stack the work stack, at least {@link #getStackSize()} long
+	 */
+	public void addRepulsion(int p, double x, double y, double strength, double theta, double[] force, int[] stack) {
+		double thetaSquared = theta * theta;
+		double fx = 0, fy = 0;
+		int size = 0;
+		stack[size++] = 0;
+		while (size > 0) {
+			int cell = stack[--size];
+			double m = mass[cell];
+			if ((m == 0) || (point[cell] == p)) {
+				continue;
+			}
+			double dx = x - massX[cell];
+			double dy = y - massY[cell];
+			double distanceSquared = dx * dx + dy * dy;
+			double width = 2 * halfSize[cell];
+			if ((firstChild[cell] < 0) || (width * width < thetaSquared * distanceSquared)) {
+				if (distanceSquared > MIN_DISTANCE_SQUARED) {
+					double f = strength * m / distanceSquared;
+					fx += dx * f;
+					fy += dy * f;
+				}
+			} else {
+				int first = firstChild[cell];
+				stack[size++] = first;
+				stack[size++] = first + 1;
+				stack[size++] = first + 2;
+				stack[size++] = first + 3;
+			}
+		}
+		force[0] += fx;
+		force[1] += fy;
+	}
+
+	/**
+	 * @return the length of the stack needed by {@link #addRepulsion}
+	 */
+	public static int getStackSize() {
+		return 4 * (MAX_DEPTH + 2);
+	}
+
+	public int getCellCount() {
+		return cellCount;
+	}
+
+}
@@ -2,6 +2,8 @@ package ca.uvic.cs.chisel.cajun.graph.node;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
 import java.awt.GradientPaint;
 import java.awt.Graphics2D;
 import java.awt.Paint;
@@ -9,12 +11,17 @@ import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.Point2D;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
@@ -49,15 +56,22 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	protected static final int MAX_TEXT_CHARS = 15;
 	protected static final int MAX_LINES = 2;
 
+	private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, true);
+
 	private Object userObject;
 	private String fullText;
 	private Object type;
 	private String tooltip;
 
-	private Map<Icon, PImage> overlayIconMap = new HashMap<Icon, PImage>();
-	private Collection<Icon> overlayIcons = new ArrayList<Icon>();
+	// created the first time the style returns overlay icons
+	private Map<Icon, PImage> overlayIconMap;
+	private Collection<Icon> overlayIcons;
 
+	// null if the text is painted directly by this node
 	private GraphTextNode textNode;
+	private String[] textLines;
+	private double textWidth;
+	private double textHeight;
 	private PImage pImage;
 	private int iconWidth = 0;
 	private int iconHeight = 0;
@@ -80,7 +94,10 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	
 	private List<ChangeListener> changeListeners;
 	
-	private Collection<GraphArc> arcs;
+	// self arcs are in both sets
+	private Set<GraphArc> incomingArcs;
+	private Set<GraphArc> outgoingArcs;
+	private int selfArcCount;
 
 	public DefaultGraphNode(Object userObject) {
 		this(userObject, String.valueOf(userObject));
@@ -95,37 +112,53 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	}
 
 	public DefaultGraphNode(Object userObject, String text, Icon icon, Object type) {
+		this(userObject, text, icon, type, true, null);
+	}
+
+	/**
+	 * @param useTextNode if false the text is painted directly by this node instead of by a child
+	 * {@link PText} node, which uses a lot less memory
+	 * @param style the style of the node, or null to create a new style for this node
+	 * @see LightweightGraphNode
+	 */
+	protected DefaultGraphNode(Object userObject, String text, Icon icon, Object type, boolean useTextNode, GraphNodeStyle style) {
 		super();
 		this.userObject = userObject;
-		
-		this.changeListeners = new ArrayList<ChangeListener>();
 
-		this.style = new DefaultGraphNodeStyle();
+		this.style = (style != null ? style : new DefaultGraphNodeStyle());
 		this.selected = false;
 		this.highlighted = false;
 		this.matching = false;
 
-		this.arcs = new ArrayList<GraphArc>();
+		this.incomingArcs = new LinkedHashSet<GraphArc>();
+		this.outgoingArcs = new LinkedHashSet<GraphArc>();
 
 		this.setPickable(true);
 		this.setChildrenPickable(false);
 
-		textNode = new GraphTextNode();
-		// make this node match the text size
-		textNode.setConstrainWidthToTextWidth(true);
-		textNode.setConstrainHeightToTextHeight(true);
-		textNode.setPickable(false);
-		addChild(textNode);
+		if (useTextNode) {
+			textNode = new GraphTextNode();
+			// make this node match the text size
+			textNode.setConstrainWidthToTextWidth(true);
+			textNode.setConstrainHeightToTextHeight(true);
+			textNode.setPickable(false);
+			addChild(textNode);
+		}
 		setText(text);
 		setIcon(icon);
 		setType(type);
 	}
 	
 	public void removeChangeListener(ChangeListener l) {
-		changeListeners.remove(l);
+		if (changeListeners != null) {
+			changeListeners.remove(l);
+		}
 	}
 	
 	public void addChangeListener(ChangeListener l) {
+		if (changeListeners == null) {
+			changeListeners = new ArrayList<ChangeListener>(1);
+		}
 		changeListeners.add(l);
 	}
 
@@ -140,6 +173,11 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	public void setNodeStyle(GraphNodeStyle style) {
 		if ((style != null) && (this.style != style)) {
 			this.style = style;
+			if (textNode == null) {
+				// the font might have changed
+				updateTextSize();
+				updateBounds();
+			}
 			invalidateFullBounds();
 			invalidatePaint();
 		}
@@ -159,51 +197,71 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 
 	@Override
 	public void setVisible(boolean visible) {
+		setVisible(visible, true);
+	}
+
+	/**
+	 * Shows or hides this node.
+	 * @param updateArcs if false the arcs of this node are not shown or hidden, the caller
+	 * must update them
+	 */
+	public void setVisible(boolean visible, boolean updateArcs) {
 		super.setVisible(visible);
 
-		// hide or show the arcs for this node
-		for (GraphArc arc : arcs) {
-			// this method handles whether or not to show the arc
-			// checks if the src and dest nodes are visible
-			arc.setVisible(visible);
+		if (updateArcs) {
+			// hide or show the arcs for this node
+			for (GraphArc arc : getArcs()) {
+				// this method handles whether or not to show the arc
+				// checks if the src and dest nodes are visible
+				arc.setVisible(visible);
+			}
 		}
 	}
 
+	/**
+	 * Returns an unmodifiable live view of the outgoing arcs followed by the incoming arcs.
+	 * Self arcs are only included once.
+	 */
 	public Collection<GraphArc> getArcs() {
-		return arcs;
+		return new AllArcsView();
 	}
 
+	/**
+	 * Returns an unmodifiable live view of the arcs, no copy is made.
+	 */
 	public Collection<GraphArc> getArcs(boolean incoming, boolean outgoing) {
-		Collection<GraphArc> graphArcs;
 		if (incoming && outgoing) {
-			graphArcs = getArcs();
-		} else if (!incoming && !outgoing) {
-			graphArcs = Collections.emptyList();
-		} else {
-			graphArcs = new ArrayList<GraphArc>();
-			for (GraphArc arc : getArcs()) {
-				if (incoming && (arc.getDestination() == this)) {
-					graphArcs.add(arc);
-				} else if (outgoing && (arc.getSource() == this)) {
-					graphArcs.add(arc);
-				}
-			}
+			return getArcs();
+		} else if (incoming) {
+			return Collections.unmodifiableSet(incomingArcs);
+		} else if (outgoing) {
+			return Collections.unmodifiableSet(outgoingArcs);
 		}
-		return graphArcs;
+		return Collections.emptyList();
 	}
 
 	public void addArc(GraphArc arc) {
-		if (!this.arcs.contains(arc)) {
-			this.arcs.add(arc);
+		boolean added = false;
+		if (arc.getSource() == this) {
+			added = outgoingArcs.add(arc);
+		}
+		if (arc.getDestination() == this) {
+			if (incomingArcs.add(arc) && added) {
+				selfArcCount++;
+			}
 		}
 	}
 
 	public void removeArc(GraphArc arc) {
-		this.arcs.remove(arc);
+		boolean removed = outgoingArcs.remove(arc);
+		if (incomingArcs.remove(arc) && removed) {
+			selfArcCount--;
+		}
 	}
 
 	public Collection<GraphNode> getConnectedNodes() {
-		ArrayList<GraphNode> connectedNodes = new ArrayList<GraphNode>();
+		// a set avoids the linear contains() check for every arc
+		Set<GraphNode> connectedNodes = new LinkedHashSet<GraphNode>();
 		for (GraphArc arc : getArcs()) {
 			GraphNode src = arc.getSource();
 			GraphNode dest = arc.getDestination();
@@ -213,11 +271,11 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 			} else if (this == dest) {
 				nodeToAdd = src;
 			}
-			if ((nodeToAdd != null) && !connectedNodes.contains(nodeToAdd)) {
+			if (nodeToAdd != null) {
 				connectedNodes.add(nodeToAdd);
 			}
 		}
-		return connectedNodes;
+		return new ArrayList<GraphNode>(connectedNodes);
 	}
 
 	public boolean hasAttribute(Object key) {
@@ -238,7 +296,13 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 		}
 		this.fullText = s;
 		// TODO let user choose between eliding the label and splitting into lines?
-		textNode.setText(splitTextIntoLines(s, MAX_LINES, MAX_TEXT_CHARS));
+		String lines = splitTextIntoLines(s, MAX_LINES, MAX_TEXT_CHARS);
+		if (textNode != null) {
+			textNode.setText(lines);
+		} else {
+			textLines = lines.split("\n");
+			updateTextSize();
+		}
 		updateBounds();
 	}
 
@@ -352,7 +416,9 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 		if (this.selected != selected) {
 			this.selected = selected;
 			updateArcs();
-			textNode.invalidatePaint();
+			if (textNode != null) {
+				textNode.invalidatePaint();
+			}
 			invalidatePaint();
 		}
 	}
@@ -365,7 +431,9 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 		if (this.highlighted != highlighted) {
 			this.highlighted = highlighted;
 			bubbleNode();
-			textNode.invalidatePaint();
+			if (textNode != null) {
+				textNode.invalidatePaint();
+			}
 			invalidatePaint();
 		}
 	}
@@ -415,7 +483,7 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	}
 
 	private void updateArcs() {
-		for (GraphArc arc : arcs) {
+		for (GraphArc arc : getArcs()) {
 			if (isSelected()) {
 				arc.setSelected(true);
 			} else {
@@ -433,6 +501,9 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	}
 
 	private void fireChangeListeners() {
+		if (changeListeners == null) {
+			return;
+		}
 		ChangeEvent event = new ChangeEvent(this);
 		for(ChangeListener listener: changeListeners) {
 			listener.stateChanged(event);
@@ -440,7 +511,7 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	}
 	
 	private void updateArcLocations() {
-		for (GraphArc arc : arcs) {
+		for (GraphArc arc : getArcs()) {
 			arc.updateArcPath();
 		}
 	}
@@ -450,12 +521,35 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	 * maximum node width too.
 	 */
 	private void updateBounds() {
-		PBounds textBounds = textNode.getBounds();
-		double w = (3 * PADDING_X) + iconWidth + ICON_GAP + textBounds.getWidth();
-		double h = (2 * PADDING_Y) + Math.max(iconHeight, textBounds.getHeight());
+		double tw = textWidth, th = textHeight;
+		if (textNode != null) {
+			PBounds textBounds = textNode.getBounds();
+			tw = textBounds.getWidth();
+			th = textBounds.getHeight();
+		}
+		double w = (3 * PADDING_X) + iconWidth + ICON_GAP + tw;
+		double h = (2 * PADDING_Y) + Math.max(iconHeight, th);
 		setBounds(getX(), getY(), w, h);
 	}
 
+	private Font getTextFont() {
+		Font font = style.getFont(this);
+		return (font != null ? font : PText.DEFAULT_FONT);
+	}
+
+	/**
+	 * Measures the text lines when there is no text node.
+	 */
+	private void updateTextSize() {
+		Font font = getTextFont();
+		LineMetrics metrics = font.getLineMetrics("", FONT_RENDER_CONTEXT);
+		textWidth = 0;
+		for (String line : textLines) {
+			textWidth = Math.max(textWidth, font.getStringBounds(line, FONT_RENDER_CONTEXT).getWidth());
+		}
+		textHeight = textLines.length * (metrics.getAscent() + metrics.getDescent() + metrics.getLeading());
+	}
+
 	@Override
 	public boolean setBounds(double x, double y, double width, double height) {
 		// TODO handle maximum width?
@@ -465,7 +559,9 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 			if (pImage != null) {
 				pImage.setBounds(getX() + PADDING_X, getY() + PADDING_Y, iconWidth, iconHeight);
 			}
-			textNode.setBounds(getX() + PADDING_X + iconWidth + ICON_GAP, getY() + PADDING_Y, textNode.getWidth(), textNode.getHeight());
+			if (textNode != null) {
+				textNode.setBounds(getX() + PADDING_X + iconWidth + ICON_GAP, getY() + PADDING_Y, textNode.getWidth(), textNode.getHeight());
+			}
 			updateArcLocations();
 			invalidatePaint();
 			
@@ -606,9 +702,29 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 			g2.draw(shape);
 		}
 
+		// 3. paint the text if there is no text node
+		if (textNode == null) {
+			paintText(g2);
+		}
+
 		addOverlayIcons(style.getOverlayIcons(this));
 	}
 
+	private void paintText(Graphics2D g2) {
+		Font font = getTextFont();
+		Paint textPaint = style.getTextPaint(this);
+		LineMetrics metrics = font.getLineMetrics("", g2.getFontRenderContext());
+		float lineHeight = metrics.getAscent() + metrics.getDescent() + metrics.getLeading();
+		float x = (float) (getX() + PADDING_X + iconWidth + ICON_GAP);
+		float y = (float) (getY() + PADDING_Y) + metrics.getAscent();
+		g2.setFont(font);
+		g2.setPaint(textPaint != null ? textPaint : Color.black);
+		for (String line : textLines) {
+			g2.drawString(line, x, y);
+			y += lineHeight;
+		}
+	}
+
 	/**
 	 * If necessary, creates the overlay icons as PImage's and adds them to this node as a child
 	 * object. If it is already created, the overlayIcon is repositioned.
@@ -616,13 +732,16 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	 * @param icon The icon to set as the overlayIcon.
 	 */
 	private void addOverlayIcons(Collection<Icon> icons) {
-		if (icons == null || !icons.equals(overlayIcons)) {
+		if ((overlayIconMap != null) && (icons == null || !icons.equals(overlayIcons))) {
 			for (PImage overlayIcon : overlayIconMap.values()) {
 				removeChild(overlayIcon);
 			}
 			overlayIconMap.clear();
 		}
 		if (icons != null) {
+			if (overlayIconMap == null) {
+				overlayIconMap = new HashMap<Icon, PImage>();
+			}
 			for (Icon icon : icons) {
 				PImage overlayIcon = overlayIconMap.get(icon);
 				if (overlayIcon == null && icon != null) {
@@ -704,4 +823,60 @@ public class DefaultGraphNode extends PNode implements GraphNode {
 	public void setFixedLocation(boolean fixedLocation) {
 		this.fixedLocation = fixedLocation;
 	}
+
+	/**
+	 * Read only view of the outgoing and incoming arcs, skipping the self arcs in the incoming set.
+	 */
+	private class AllArcsView extends AbstractCollection<GraphArc> {
+
+		@Override
+		public Iterator<GraphArc> iterator() {
+			return new Iterator<GraphArc>() {
+				private Iterator<GraphArc> outgoing = outgoingArcs.iterator();
+				private Iterator<GraphArc> incoming = incomingArcs.iterator();
+				private GraphArc next = findNext();
+
+				private GraphArc findNext() {
+					if (outgoing.hasNext()) {
+						return outgoing.next();
+					}
+					while (incoming.hasNext()) {
+						GraphArc arc = incoming.next();
+						if (arc.getSource() != DefaultGraphNode.this) {
+							return arc;
+						}
+					}
+					return null;
+				}
+
+				public boolean hasNext() {
+					return (next != null);
+				}
+
+				public GraphArc next() {
+					if (next == null) {
+						throw new NoSuchElementException();
+					}
+					GraphArc arc = next;
+					next = findNext();
+					return arc;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return outgoingArcs.size() + incomingArcs.size() - selfArcCount;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return outgoingArcs.contains(o) || incomingArcs.contains(o);
+		}
+
+	}
 }
@@ -0,0 +1,43 @@
+package ca.uvic.cs.chisel.cajun.graph.node;
+
+import javax.swing.Icon;
+
+/**
+ * A {@link DefaultGraphNode} that paints its text directly instead of through a child
+ * {@link edu.umd.cs.piccolo.nodes.PText} node.  This uses much less memory and is faster to
+ * create, which matters for large graphs.
+ * <p>
+ * A style takes more memory than a lightweight node, so large graphs should pass one style to
+ * all their nodes, as {@link ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel} does.  The style is
+ * mutable, so it should only be shared by the nodes of one graph.
+ * 
+ * @see ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel#setLightweightNodes(boolean)
+ */
+public class LightweightGraphNode extends DefaultGraphNode {
+	private static final long serialVersionUID = -2716412939612095386L;
+
+	public LightweightGraphNode(Object userObject) {
+		this(userObject, String.valueOf(userObject));
+	}
+
+	public LightweightGraphNode(Object userObject, String text) {
+		this(userObject, text, null);
+	}
+
+	public LightweightGraphNode(Object userObject, String text, Icon icon) {
+		this(userObject, text, icon, null);
+	}
+
+	public LightweightGraphNode(Object userObject, String text, Icon icon, Object type) {
+		this(userObject, text, icon, type, null);
+	}
+
+	/**
+	 * @param style the style of the node, which can be shared with the other nodes in the same
+	 * graph, or null to create a new style for this node
+	 */
+	public LightweightGraphNode(Object userObject, String text, Icon icon, Object type, GraphNodeStyle style) {
+		super(userObject, text, icon, type, false, style);
+	}
+
+}
@@ -2,7 +2,12 @@ package ca.uvic.cs.chisel.cajun.graph.node;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+
+import ca.uvic.cs.chisel.cajun.util.ListenerList;
 
 /**
  * Holds a list of {@link GraphNode}s.
@@ -16,17 +21,23 @@ import java.util.List;
 public class NodeCollection {
 
 	private List<GraphNode> nodes;
-	private List<GraphNodeCollectionListener> listeners;
+	private ListenerList<GraphNodeCollectionListener> listeners;
 	
 	public NodeCollection() {
 		nodes = new ArrayList<GraphNode>();
-		listeners = new ArrayList<GraphNodeCollectionListener>();
+		listeners = new ListenerList<GraphNodeCollectionListener>();
 	}
 	
 	public void addCollectionListener(GraphNodeCollectionListener nsl) {
-		if (!listeners.contains(nsl)) {
-			listeners.add(nsl);
-		}
+		listeners.add(nsl);
+	}
+	
+	/**
+	 * Adds a listener that is only weakly referenced, so it doesn't have to be removed when
+	 * it is no longer used.  The caller must keep a reference to it.
+	 */
+	public void addWeakCollectionListener(GraphNodeCollectionListener nsl) {
+		listeners.addWeak(nsl);
 	}
 	
 	public boolean removeCollectionListener(GraphNodeCollectionListener nsl) {
@@ -34,10 +45,16 @@ public class NodeCollection {
 	}
 	
 	protected void fireCollectionChange(Collection<GraphNode> oldNodes, Collection<GraphNode> newNodes) {
-		List<GraphNodeCollectionListener> nsls = new ArrayList<GraphNodeCollectionListener>(listeners);
+		Object[] array = listeners.getArray();
+		if (array.length == 0) {
+			return;
+		}
 		GraphNodeCollectionEvent evt = new GraphNodeCollectionEvent(this, oldNodes, newNodes);
-		for (GraphNodeCollectionListener nsl : nsls) {
-			nsl.collectionChanged(evt);
+		for (int i = 0; i < array.length; i++) {
+			GraphNodeCollectionListener nsl = listeners.get(array, i);
+			if (nsl != null) {
+				nsl.collectionChanged(evt);
+			}
 		}
 	}
 	
@@ -134,6 +151,32 @@ public class NodeCollection {
 		fireCollectionChange(oldNodes, this.nodes);
 	}
 
+	/**
+	 * Adds the nodes that aren't already in this collection to the end.
+	 * Fires one collection change event with no old nodes, and only the added nodes as the
+	 * new nodes.
+	 * @param nodes the nodes to add
+	 * @return the number of nodes that were added
+	 */
+	public int addNodes(Collection<GraphNode> nodes) {
+		if ((nodes == null) || nodes.isEmpty()) {
+			return 0;
+		}
+		Set<GraphNode> existing = Collections.newSetFromMap(new IdentityHashMap<GraphNode, Boolean>());
+		existing.addAll(this.nodes);
+		List<GraphNode> added = new ArrayList<GraphNode>(nodes.size());
+		for (GraphNode node : nodes) {
+			if ((node != null) && existing.add(node)) {
+				added.add(node);
+			}
+		}
+		if (!added.isEmpty()) {
+			this.nodes.addAll(added);
+			fireCollectionChange(Collections.<GraphNode>emptyList(), added);
+		}
+		return added.size();
+	}
+
 	/**
 	 * If the node already exists in this collection, then it is removed.
 	 * Otherwise it is added.
@@ -22,7 +22,11 @@ import javax.swing.JSplitPane;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
 
+import org.eclipse.zest.layouts.progress.ProgressEvent;
+import org.eclipse.zest.layouts.progress.ProgressListener;
+
 import ca.uvic.cs.chisel.cajun.actions.CajunAction;
+import ca.uvic.cs.chisel.cajun.actions.CancelLayoutAction;
 import ca.uvic.cs.chisel.cajun.actions.ClearOrphansAction;
 import ca.uvic.cs.chisel.cajun.actions.FocusOnHomeAction;
 import ca.uvic.cs.chisel.cajun.actions.LayoutAction;
@@ -35,6 +39,7 @@ import ca.uvic.cs.chisel.cajun.filter.FilterManager;
 import ca.uvic.cs.chisel.cajun.graph.FlatGraph;
 import ca.uvic.cs.chisel.cajun.graph.Graph;
 import ca.uvic.cs.chisel.cajun.graph.GraphModelAdapter;
+import ca.uvic.cs.chisel.cajun.graph.GraphModelEvent;
 import ca.uvic.cs.chisel.cajun.resources.ResourceHandler;
 import edu.umd.cs.piccolox.swing.PScrollPane;
 
@@ -46,6 +51,9 @@ public class DefaultFlatGraphView extends JPanel {
 	private JToolBar toolbar;
 	private JPanel mainPanel;
 	private StatusProgressBar status;
+	// the filters and the layouts share the status bar, the layout progress is shown if both run
+	private boolean filtering;
+	private boolean layingOut;
 
 	private JSplitPane rightPanel;
 	private FilterPanel nodeFilterPanel;
@@ -164,6 +172,56 @@ public class DefaultFlatGraphView extends JPanel {
 	public StatusProgressBar getStatusBar() {
 		if (status == null) {
 			status = new StatusProgressBar();
+			// show the progress of the filters that are evaluated in the background
+			graph.getFilterManager().addProgressListener(new ProgressListener() {
+				public void progressStarted(ProgressEvent e) {
+					filtering = true;
+					if (!layingOut) {
+						status.startProgress();
+						status.setProgress(0, e.getTotalNumberOfSteps());
+					}
+				}
+
+				public void progressUpdated(ProgressEvent e) {
+					if (!layingOut) {
+						status.setProgress(e.getStepsCompleted(), e.getTotalNumberOfSteps());
+					}
+				}
+
+				public void progressEnded(ProgressEvent e) {
+					filtering = false;
+					if (!layingOut) {
+						status.stopProgress();
+						status.hideProgress();
+					}
+				}
+			});
+			// show the progress of the layouts, which can be cancelled
+			final Action cancelLayout = new CancelLayoutAction(graph);
+			ProgressListener layoutListener = new ProgressListener() {
+				public void progressStarted(ProgressEvent e) {
+					layingOut = true;
+					status.startProgress();
+					status.setProgress(0, e.getTotalNumberOfSteps());
+					status.setCancelAction(cancelLayout);
+				}
+
+				public void progressUpdated(ProgressEvent e) {
+					status.setProgress(e.getStepsCompleted(), e.getTotalNumberOfSteps());
+				}
+
+				public void progressEnded(ProgressEvent e) {
+					layingOut = false;
+					status.setCancelAction(null);
+					// the filters keep the progress bar until they end
+					if (!filtering) {
+						status.stopProgress();
+						status.hideProgress();
+					}
+				}
+			};
+			// the layouts added later get the listener too
+			graph.addLayoutListener(layoutListener);
 		}
 		return status;
 	}
@@ -234,6 +292,12 @@ public class DefaultFlatGraphView extends JPanel {
 				public void graphNodeTypeAdded(Object nodeType) {
 					nodeFilterPanel.reload();
 				}
+				@Override
+				public void graphChanged(GraphModelEvent event) {
+					if (!event.getNodeTypes().isEmpty()) {
+						nodeFilterPanel.reload();
+					}
+				}
 			});
 		}
 		return nodeFilterPanel;
@@ -267,6 +331,12 @@ public class DefaultFlatGraphView extends JPanel {
 				public void graphArcTypeAdded(Object arcType) {
 					arcFilterPanel.reload();
 				}
+				@Override
+				public void graphChanged(GraphModelEvent event) {
+					if (!event.getArcTypes().isEmpty()) {
+						arcFilterPanel.reload();
+					}
+				}
 			});
 		}
 		return arcFilterPanel;
@@ -9,23 +9,35 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.GridLayout;
+import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
 
+import javax.swing.AbstractListModel;
 import javax.swing.BorderFactory;
 import javax.swing.Icon;
 import javax.swing.JButton;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
+import javax.swing.ListCellRenderer;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import ca.uvic.cs.chisel.cajun.actions.CajunAction;
 import ca.uvic.cs.chisel.cajun.filter.FilterChangedEvent;
@@ -38,6 +50,11 @@ import ca.uvic.cs.chisel.cajun.util.ToStringComparator;
 /**
  * Base class for display the Node and Arc types and allowing the user to show/hide node and arc
  * types in the graph.
+ * <p>
+ * The types are shown in a {@link JList} that paints one {@link FilterCheckBox} for each visible
+ * row, so thousands of types don't create thousands of components.  The thumbnails are cached
+ * per type, new types are inserted into the sorted list, and the search is only run once the
+ * user stops typing.
  * 
  * @author Chris
  * @since  21-Dec-07
@@ -51,10 +68,14 @@ public abstract class FilterPanel extends JPanel implements FilterChangedListene
 	private static final Color BORDER_COLOR = new Color(0, 45, 150);
 	private static final Color NO_FILTER_TEXT_COLOR = Color.gray;
 	private static final Color FILTER_TEXT_COLOR = new Color(20, 70, 160);
+	private static final int SEARCH_DELAY = 200;
 
 	protected boolean ignoreFilterChange;
 
-	private JPanel typesPanel;
+	private JList<Object> typesList;
+	private TypeListModel typesModel;
+	private FilterCheckBox typeRenderer;
+	private Timer searchTimer;
 	private JPanel headerPanel;
 	private JPanel searchPanel;
 	private JLabel headerLabel;
@@ -66,16 +87,32 @@ public abstract class FilterPanel extends JPanel implements FilterChangedListene
 	private Icon icon;
 	private GraphItemStyle style;
 
+	// all the types sorted by name, and whether each one is visible
+	private final Comparator<Object> typeComparator;
+	private List<Object> sortedTypes;
+	private Map<Object, Boolean> typeVisibility;
+	private final Map<Object, Icon> thumbnails;
+	// the current search, the types are shown if they start with or contain it
+	private String searchText;
+	private boolean beginsWith;
+	private boolean reloadPending;
+
 	public FilterPanel(String title, Icon icon, GraphItemStyle style) {
 		super(new BorderLayout());
 		this.title = title;
 		this.icon = icon;
 		this.style = style;
 		this.ignoreFilterChange = false;
+		this.typeComparator = new ToStringComparator();
+		this.sortedTypes = new ArrayList<Object>();
+		this.typeVisibility = new HashMap<Object, Boolean>();
+		this.thumbnails = new HashMap<Object, Icon>();
+		this.searchText = "";
+		this.beginsWith = true;
 
 		initialize();
 
-		reload();
+		loadTypes(getTypes());
 	}
 	
 	public GraphItemStyle getStyle() {
@@ -84,6 +121,8 @@ public abstract class FilterPanel extends JPanel implements FilterChangedListene
 	
 	public void setStyle(GraphItemStyle style) {
 		this.style = style;
+		thumbnails.clear();
+		getTypesList().repaint();
 	}
 
 	public String getTitle() {
@@ -108,16 +147,13 @@ public abstract class FilterPanel extends JPanel implements FilterChangedListene
 		setOpaque(false);
 		setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
 
-		JPanel holder = new JPanel(new BorderLayout());
-		holder.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
-		holder.add(getTypesPanel(), BorderLayout.NORTH);
-		holder.setBackground(Color.white);
 		add(getHeaderPanel(), BorderLayout.NORTH);
 
 		JPanel centrePanel = new JPanel(new BorderLayout());
 		centrePanel.add(getSearchPanel(), BorderLayout.NORTH);
 
-		JScrollPane scroll = new JScrollPane(holder, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+		JScrollPane scroll = new JScrollPane(getTypesList(), JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+		scroll.getVerticalScrollBar().setUnitIncrement(getTypesList().getFixedCellHeight());
 		centrePanel.setBorder(BorderFactory.createLineBorder(BORDER_COLOR, 1));
 		centrePanel.add(scroll, BorderLayout.CENTER);
 
@@ -130,30 +166,58 @@ public abstract class FilterPanel extends JPanel implements FilterChangedListene
 	 * @param searchText
 	 */
 	private void filterTypes(String searchText) {
-		Map<Object, Boolean> types = getTypes();
-		if (searchText.length() == 0 || (searchText.length() == 1 && searchText.equals("*"))) {
-			loadTypes(types);
-		} else {
-			Map<Object, Boolean> validTypes = new HashMap<Object, Boolean>();
-			boolean beginsWith = true;
-			searchText = searchText.toLowerCase();
-			if (searchText.charAt(searchText.length() - 1) == '*') {
-				searchText = searchText.substring(0, searchText.length() - 1);
-			} else if (searchText.charAt(0) == '*') {
-				searchText = searchText.substring(1, searchText.length());
-				beginsWith = false;
+		boolean beginsWith = true;
+		searchText = searchText.toLowerCase();
+		if (searchText.equals(TYPE_FILTER_TEXT) || searchText.equals("*")) {
+			searchText = "";
+		} else if ((searchText.length() > 0) && (searchText.charAt(searchText.length() - 1) == '*')) {
+			searchText = searchText.substring(0, searchText.length() - 1);
+		} else if ((searchText.length() > 0) && (searchText.charAt(0) == '*')) {
+			searchText = searchText.substring(1, searchText.length());
+			beginsWith = false;
+		}
+		if (!searchText.equals(this.searchText) || (beginsWith != this.beginsWith)) {
+			this.searchText = searchText;
+			this.beginsWith = beginsWith;
+			getTypesModel().setTypes(getMatchingTypes(sortedTypes));
+			highlightTypes(searchText);
+		}
+	}
+
+	private boolean matches(Object type) {
+		if (searchText.length() == 0) {
+			return true;
+		}
+		String name = String.valueOf(type).toLowerCase();
+		return (beginsWith ? name.startsWith(searchText) : name.contains(searchText));
+	}
+
+	private List<Object> getMatchingTypes(List<Object> types) {
+		if (searchText.length() == 0) {
+			return new ArrayList<Object>(types);
+		}
+		List<Object> matching = new ArrayList<Object>();
+		for (Object type : types) {
+			if (matches(type)) {
+				matching.add(type);
 			}
+		}
+		return matching;
+	}
 
-			for (Object object : types.keySet()) {
-				if (beginsWith && object.toString().toLowerCase().startsWith(searchText)) {
-					validTypes.put(object, types.get(object));
-				} else if (!beginsWith && object.toString().toLowerCase().contains(searchText)) {
-					validTypes.put(object, types.get(object));
+	/**
+	 * Waits until the user stops typing before filtering the types.
+	 */
+	private Timer getSearchTimer() {
+		if (searchTimer == null) {
+			searchTimer = new Timer(SEARCH_DELAY, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					filterTypes(searchTextField.getText());
 				}
-			}
-			loadTypes(validTypes);
-			highlightTypes(searchText);
+			});
+			searchTimer.setRepeats(false);
 		}
+		return searchTimer;
 	}
 
 	private JPanel getSearchPanel() {
@@ -180,7 +244,7 @@ public abstract class FilterPanel extends JPanel implements FilterChangedListene
 
 			searchTextField.addKeyListener(new KeyAdapter() {
 				public void keyReleased(KeyEvent e) {
-					filterTypes(searchTextField.getText());
+					getSearchTimer().restart();
 				}
 			});
 
@@ -244,59 +308,143 @@ public abstract class FilterPanel extends JPanel implements FilterChangedListene
 		return headerLabel;
 	}
 
-	private JPanel getTypesPanel() {
-		if (typesPanel == null) {
-			typesPanel = new JPanel(new GridLayout(0, 1, 0, 1));
-			typesPanel.setOpaque(false);
+	private TypeListModel getTypesModel() {
+		if (typesModel == null) {
+			typesModel = new TypeListModel();
 		}
-		return typesPanel;
+		return typesModel;
+	}
+
+	private JList<Object> getTypesList() {
+		if (typesList == null) {
+			typesList = new JList<Object>(getTypesModel());
+			typesList.setBackground(Color.white);
+			typesList.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+			typesList.setCellRenderer(new TypeCellRenderer());
+			// a fixed height means only the rows that are showing are rendered
+			typesList.setFixedCellHeight(getTypeRenderer().getPreferredSize().height + 1);
+			typesList.addMouseListener(new MouseAdapter() {
+				@Override
+				public void mousePressed(MouseEvent e) {
+					if (SwingUtilities.isLeftMouseButton(e)) {
+						int index = typesList.locationToIndex(e.getPoint());
+						Rectangle bounds = (index != -1 ? typesList.getCellBounds(index, index) : null);
+						if ((bounds != null) && bounds.contains(e.getPoint())) {
+							toggleType(index);
+						}
+					}
+				}
+			});
+			typesList.addKeyListener(new KeyAdapter() {
+				@Override
+				public void keyPressed(KeyEvent e) {
+					if ((e.getKeyCode() == KeyEvent.VK_SPACE) || (e.getKeyCode() == KeyEvent.VK_ENTER)) {
+						for (int index : typesList.getSelectedIndices()) {
+							toggleType(index);
+						}
+					}
+				}
+			});
+		}
+		return typesList;
+	}
+
+	private FilterCheckBox getTypeRenderer() {
+		if (typeRenderer == null) {
+			typeRenderer = new FilterCheckBox(TYPE_FILTER_TEXT, null, true);
+			typeRenderer.setIcon(style.getThumbnail(null, ICON_WIDTH, ICON_HEIGHT));
+		}
+		return typeRenderer;
 	}
 
 	/**
-	 * Reloads the node/arc types.
+	 * Returns the cached thumbnail for the type, the cache is cleared when the style changes.
 	 */
-	public void reload() {
-		searchTextField.setText(TYPE_FILTER_TEXT);
-		loadTypes(getTypes());
+	private Icon getThumbnail(Object type) {
+		Icon thumbnail = thumbnails.get(type);
+		if (thumbnail == null) {
+			// create an icon for this type - it will be a rounded rectangle
+			// filled with the same color/paint as the node or arc type
+			thumbnail = style.getThumbnail(type, ICON_WIDTH, ICON_HEIGHT);
+			thumbnails.put(type, thumbnail);
+		}
+		return thumbnail;
 	}
 
-	public void loadTypes(Map<Object, Boolean> items) {
-		getTypesPanel().removeAll();
-		if (items.size() > 0) {
-			// sort the types alphabetically
-			TreeSet<Object> sortedTypes = new TreeSet<Object>(new ToStringComparator());
-			sortedTypes.addAll(items.keySet());
-			for (Object type : sortedTypes) {
-				boolean selected = items.get(type);
-				FilterCheckBox checkbox = new FilterCheckBox(type, null, selected) {
-					private static final long serialVersionUID = -861175558062891232L;
-
-					public void typeVisibilityChanged(Object type, boolean visible) {
-						FilterPanel.this.typeVisibilityChanged(type, visible);
-					}
-				};
+	private boolean isTypeVisible(Object type) {
+		Boolean visible = typeVisibility.get(type);
+		return (visible == null) || visible.booleanValue();
+	}
 
-				// create an icon for this type - it will be a rounded rectangle
-				// filled with the same color/paint as the node or arc type
-				Icon icon = style.getThumbnail(type, ICON_WIDTH, ICON_HEIGHT);
-				checkbox.setIcon(icon);
+	private void toggleType(int index) {
+		Object type = getTypesModel().getElementAt(index);
+		boolean visible = !isTypeVisible(type);
+		typeVisibility.put(type, visible);
+		getTypesList().repaint(getTypesList().getCellBounds(index, index));
+		typeVisibilityChanged(type, visible);
+	}
+
+	/**
+	 * Reloads the node/arc types.  New types are inserted into the list and the visibility of
+	 * the existing types is updated.  Calls made while a reload is pending are merged into one
+	 * reload on the event dispatch thread.
+	 */
+	public void reload() {
+		if (!reloadPending) {
+			reloadPending = true;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					reloadPending = false;
+					mergeTypes(getTypes());
+				}
+			});
+		}
+	}
 
-				getTypesPanel().add(checkbox);
+	private void mergeTypes(Map<Object, Boolean> items) {
+		if (!items.keySet().containsAll(typeVisibility.keySet())) {
+			// a type was removed
+			loadTypes(items);
+			return;
+		}
+		List<Object> newTypes = new ArrayList<Object>();
+		for (Object type : items.keySet()) {
+			if (!typeVisibility.containsKey(type)) {
+				newTypes.add(type);
+			}
+		}
+		typeVisibility.putAll(items);
+		Collections.sort(newTypes, typeComparator);
+		for (Object type : newTypes) {
+			sortedTypes.add(getInsertionIndex(sortedTypes, type), type);
+			if (matches(type)) {
+				getTypesModel().insertType(getInsertionIndex(getTypesModel().types, type), type);
 			}
 		}
-		this.invalidate();
-		this.validate();
-		this.repaint();
+		getTypesList().repaint();
+	}
+
+	private int getInsertionIndex(List<Object> types, Object type) {
+		int index = Collections.binarySearch(types, type, typeComparator);
+		return (index < 0 ? -(index + 1) : index);
+	}
+
+	/**
+	 * Replaces all the types with the given types, only showing the ones that match the search.
+	 */
+	public void loadTypes(Map<Object, Boolean> items) {
+		// sort the types alphabetically
+		List<Object> types = new ArrayList<Object>(items.keySet());
+		Collections.sort(types, typeComparator);
+		this.sortedTypes = types;
+		this.typeVisibility = new HashMap<Object, Boolean>(items);
+		thumbnails.keySet().retainAll(items.keySet());
+		getTypesModel().setTypes(getMatchingTypes(types));
 	}
 	
 	public void highlightTypes(String searchText) {
-		for (Component comp : getTypesPanel().getComponents()) {
-			FilterCheckBox checkbox = (FilterCheckBox) comp;
-			checkbox.highlightLabel(searchText);
-		}
-		this.invalidate();
-		this.validate();
-		this.repaint();
+		getTypeRenderer().highlightLabel(searchText);
+		getTypesList().repaint();
 	}
 
 	/**
@@ -324,12 +472,61 @@ public abstract class FilterPanel extends JPanel implements FilterChangedListene
 	 */
 	public void filtersChanged(FilterChangedEvent fce) {
 		if (!ignoreFilterChange) {
-			// do we need to reload here?
-			// I think it causes a weird problem where the node or arc panel checkboxes don't respond...
-			//reload();
+			// the rows are rendered from the visibility map, so reloading just updates the checkboxes
+			reload();
 		}
 	}
 
-	
+	/**
+	 * The types that match the search, in sorted order.
+	 */
+	private static class TypeListModel extends AbstractListModel<Object> {
+		private static final long serialVersionUID = 4416097478419040335L;
+
+		private List<Object> types = new ArrayList<Object>();
+
+		public int getSize() {
+			return types.size();
+		}
+
+		public Object getElementAt(int index) {
+			return types.get(index);
+		}
+
+		public void setTypes(List<Object> newTypes) {
+			int oldSize = types.size();
+			types = newTypes;
+			if (oldSize > 0) {
+				fireIntervalRemoved(this, 0, oldSize - 1);
+			}
+			if (newTypes.size() > 0) {
+				fireIntervalAdded(this, 0, newTypes.size() - 1);
+			}
+		}
+
+		public void insertType(int index, Object type) {
+			types.add(index, type);
+			fireIntervalAdded(this, index, index);
+		}
+
+	}
+
+	/**
+	 * Paints each row with the same {@link FilterCheckBox}.
+	 */
+	private class TypeCellRenderer implements ListCellRenderer<Object> {
+
+		private final Color rowColor = getTypeRenderer().getBackground();
+
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+			FilterCheckBox checkbox = getTypeRenderer();
+			checkbox.setText(String.valueOf(value));
+			checkbox.setIcon(getThumbnail(value));
+			checkbox.setSelected(isTypeVisible(value));
+			checkbox.setBackground(isSelected ? list.getSelectionBackground() : rowColor);
+			return checkbox;
+		}
+
+	}
 
 }
@@ -6,6 +6,7 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 
 import javax.swing.AbstractAction;
+import javax.swing.Action;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -24,6 +25,8 @@ public class StatusProgressBar extends JPanel {
 	private JLabel statusLabel;
 	private long lastProgressPaint;
 	private JProgressBar progressBar;
+	private JPanel progressPanel;
+	private JButton cancelButton;
 
 	public StatusProgressBar() {
 		super(new BorderLayout(5, 0));
@@ -40,7 +43,7 @@ public class StatusProgressBar extends JPanel {
 						BorderFactory.createEmptyBorder(1, 2, 1, 2)));
 		
 		add(getStatusLabel(), BorderLayout.CENTER);
-		add(getProgressBar(), BorderLayout.EAST);
+		add(getProgressPanel(), BorderLayout.EAST);
 		
 		setPreferredSize(new Dimension(500, 28));
 	}
@@ -52,6 +55,28 @@ public class StatusProgressBar extends JPanel {
 		return statusLabel;
 	}
 
+	private JPanel getProgressPanel() {
+		if (progressPanel == null) {
+			progressPanel = new JPanel(new BorderLayout(2, 0));
+			progressPanel.setOpaque(false);
+			progressPanel.add(getProgressBar(), BorderLayout.CENTER);
+			progressPanel.add(getCancelButton(), BorderLayout.EAST);
+		}
+		return progressPanel;
+	}
+
+	private JButton getCancelButton() {
+		if (cancelButton == null) {
+			cancelButton = new JButton();
+			cancelButton.setPreferredSize(new Dimension(20, 20));
+			cancelButton.setBorder(null);
+			cancelButton.setFocusPainted(false);
+			cancelButton.setContentAreaFilled(false);
+			cancelButton.setVisible(false);
+		}
+		return cancelButton;
+	}
+
 	private JProgressBar getProgressBar() {
 		if (progressBar == null) {
 			progressBar = new JProgressBar(0, 100) {
@@ -138,6 +163,22 @@ public class StatusProgressBar extends JPanel {
 		}
 	}
 	
+	/**
+	 * Shows a button beside the progress bar that runs the action, for example to cancel the
+	 * task that is in progress.
+	 * @param action the action, or null to hide the button
+	 */
+	public void setCancelAction(Action action) {
+		JButton button = getCancelButton();
+		button.setAction(action);
+		if (action != null) {
+			// only show the icon
+			button.setText(null);
+		}
+		button.setVisible(action != null);
+		button.invalidate();
+	}
+
 	public boolean isInProgress() {
 		return inProgress;
 	}
@@ -156,6 +197,22 @@ public class StatusProgressBar extends JPanel {
 		}
 	}
 	
+	/**
+	 * Shows the progress bar with the given amount of progress.
+	 * @param completed the number of steps completed
+	 * @param total the total number of steps
+	 */
+	public void setProgress(int completed, int total) {
+		JProgressBar pb = getProgressBar();
+		pb.setIndeterminate(false);
+		pb.setMaximum(Math.max(1, total));
+		pb.setValue(completed);
+		if (!pb.isVisible()) {
+			pb.setVisible(true);
+			pb.invalidate();
+		}
+	}
+
 	protected void showProgress() {
 		getProgressBar().setValue(0);
 		getProgressBar().setVisible(true);
@@ -0,0 +1,31 @@
+package ca.uvic.cs.chisel.cajun.io;
+
+import javax.swing.Icon;
+
+/**
+ * Stores the user objects and types as their string values, and restores them as strings.
+ * Only suitable for graphs whose user objects and types are strings.
+ */
+public class DefaultSnapshotResolver implements SnapshotResolver {
+
+	public String getKey(Object userObject) {
+		return String.valueOf(userObject);
+	}
+
+	public Object getUserObject(String key) {
+		return key;
+	}
+
+	public String getTypeKey(Object type) {
+		return String.valueOf(type);
+	}
+
+	public Object getType(String typeKey) {
+		return typeKey;
+	}
+
+	public Icon getIcon(Object userObject) {
+		return null;
+	}
+
+}
@@ -0,0 +1,442 @@
+package ca.uvic.cs.chisel.cajun.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel;
+import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNode;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * Reads a Graphviz DOT file with a hand written tokenizer.
+ * <p>
+ * The node ids become the user objects.  The "label" attribute sets the node text, and the
+ * "type" attribute sets the node or arc type.  For edges the "label" attribute is used as the
+ * arc type if there is no "type" attribute.  Subgraphs are flattened, and an edge to or from a
+ * subgraph connects every node in the subgraph.  Ports and the other attributes are ignored.
+ */
+public class DotImporter extends GraphImporter {
+
+	private static final String LABEL = "label";
+	private static final String TYPE = "type";
+
+	private Charset charset;
+
+	public DotImporter() {
+		this(Charset.forName("UTF-8"));
+	}
+
+	public DotImporter(Charset charset) {
+		super();
+		this.charset = charset;
+	}
+
+	@Override
+	protected void read(InputStream in, DefaultGraphModel model) throws IOException {
+		Reader reader = new BufferedReader(new InputStreamReader(in, charset));
+		new DotParser(new DotTokenizer(reader), model).parse();
+	}
+
+	/**
+	 * Parses the statements and adds the nodes and arcs to the model as they are read.
+	 */
+	private class DotParser {
+
+		private DotTokenizer tokenizer;
+		private DefaultGraphModel model;
+		private Map<String, String> nodeDefaults;
+		private Map<String, String> edgeDefaults;
+		private boolean retyped;
+
+		public DotParser(DotTokenizer tokenizer, DefaultGraphModel model) {
+			this.tokenizer = tokenizer;
+			this.model = model;
+			this.nodeDefaults = new HashMap<String, String>();
+			this.edgeDefaults = new HashMap<String, String>();
+		}
+
+		public void parse() throws IOException {
+			Token token = tokenizer.next();
+			if (token.isKeyword("strict")) {
+				token = tokenizer.next();
+			}
+			if (!token.isKeyword("graph") && !token.isKeyword("digraph")) {
+				throw tokenizer.error("Expected graph or digraph");
+			}
+			token = tokenizer.next();
+			if (token.type == Token.ID) {
+				token = tokenizer.next();
+			}
+			if (token.type != '{') {
+				throw tokenizer.error("Expected {");
+			}
+			parseStatements(new ArrayList<String>());
+			if (retyped) {
+				model.recalculateNodeTypes();
+			}
+		}
+
+		/**
+		 * Parses statements up to and including the closing brace.
+		 * @param nodeIds collects the ids of the nodes in these statements
+		 */
+		private void parseStatements(List<String> nodeIds) throws IOException {
+			while (true) {
+				Token token = tokenizer.peek();
+				if (token.type == '}') {
+					tokenizer.next();
+					return;
+				} else if (token.type == Token.EOF) {
+					throw tokenizer.error("Expected }");
+				} else if ((token.type == ';') || (token.type == ',')) {
+					tokenizer.next();
+				} else if (token.isKeyword("graph")) {
+					tokenizer.next();
+					parseAttributes();
+				} else if (token.isKeyword("node")) {
+					tokenizer.next();
+					nodeDefaults.putAll(parseAttributes());
+				} else if (token.isKeyword("edge")) {
+					tokenizer.next();
+					edgeDefaults.putAll(parseAttributes());
+				} else {
+					parseNodeOrEdge(nodeIds);
+				}
+			}
+		}
+
+		private void parseNodeOrEdge(List<String> nodeIds) throws IOException {
+			List<List<String>> operands = new ArrayList<List<String>>();
+			List<String> first = parseOperand();
+			if ((first.size() == 1) && (tokenizer.peek().type == '=')) {
+				// graph attribute, e.g. rankdir=LR
+				tokenizer.next();
+				tokenizer.next();
+				return;
+			}
+			operands.add(first);
+			while (tokenizer.peek().type == Token.EDGE_OP) {
+				tokenizer.next();
+				operands.add(parseOperand());
+			}
+			Map<String, String> attributes = parseAttributes();
+			if (operands.size() == 1) {
+				for (String id : first) {
+					addNode(id, attributes);
+				}
+			} else {
+				String type = attributes.get(TYPE);
+				if (type == null) {
+					type = attributes.get(LABEL);
+				}
+				if (type == null) {
+					type = (edgeDefaults.containsKey(TYPE) ? edgeDefaults.get(TYPE) : edgeDefaults.get(LABEL));
+				}
+				for (int i = 1; i < operands.size(); i++) {
+					for (String srcId : operands.get(i - 1)) {
+						GraphNode src = addNode(srcId, Collections.<String, String>emptyMap());
+						for (String destId : operands.get(i)) {
+							GraphNode dest = addNode(destId, Collections.<String, String>emptyMap());
+							addArc(model, null, src, dest, type);
+						}
+					}
+				}
+			}
+			for (List<String> operand : operands) {
+				nodeIds.addAll(operand);
+			}
+		}
+
+		/**
+		 * Parses a node id (ignoring any port) or a subgraph.
+		 * @return the ids of the nodes
+		 */
+		private List<String> parseOperand() throws IOException {
+			Token token = tokenizer.next();
+			if (token.isKeyword("subgraph")) {
+				token = tokenizer.next();
+				if (token.type == Token.ID) {
+					token = tokenizer.next();
+				}
+			}
+			if (token.type == '{') {
+				List<String> nodeIds = new ArrayList<String>();
+				parseStatements(nodeIds);
+				return nodeIds;
+			}
+			if (token.type != Token.ID) {
+				throw tokenizer.error("Expected a node id");
+			}
+			String id = parseId(token);
+			// skip the port and compass point
+			while (tokenizer.peek().type == ':') {
+				tokenizer.next();
+				tokenizer.next();
+			}
+			return Collections.singletonList(id);
+		}
+
+		/**
+		 * Handles concatenated quoted strings, e.g. "a" + "b".
+		 */
+		private String parseId(Token token) throws IOException {
+			String id = token.text;
+			while (token.quoted && (tokenizer.peek().type == '+')) {
+				tokenizer.next();
+				token = tokenizer.next();
+				id = id + token.text;
+			}
+			return id;
+		}
+
+		/**
+		 * Parses zero or more attribute lists, e.g. [label="a", color=red][type=b]
+		 */
+		private Map<String, String> parseAttributes() throws IOException {
+			Map<String, String> attributes = new HashMap<String, String>();
+			while (tokenizer.peek().type == '[') {
+				tokenizer.next();
+				Token token = tokenizer.next();
+				while (token.type != ']') {
+					if (token.type == Token.ID) {
+						String name = token.text;
+						String value = "true";
+						if (tokenizer.peek().type == '=') {
+							tokenizer.next();
+							value = parseId(tokenizer.next());
+						}
+						attributes.put(name.toLowerCase(), value);
+					} else if (token.type == Token.EOF) {
+						throw tokenizer.error("Expected ]");
+					}
+					token = tokenizer.next();
+				}
+			}
+			return attributes;
+		}
+
+		private GraphNode addNode(String id, Map<String, String> attributes) {
+			String label = attributes.get(LABEL);
+			String type = attributes.get(TYPE);
+			GraphNode node = model.getNode(id);
+			if (node == null) {
+				if (label == null) {
+					label = nodeDefaults.get(LABEL);
+				}
+				if (type == null) {
+					type = nodeDefaults.get(TYPE);
+				}
+				// \N is the node name
+				if ((label == null) || "\\N".equals(label)) {
+					label = id;
+				}
+				node = model.addNode(id, label, null, type);
+			} else {
+				if ((label != null) && !"\\N".equals(label)) {
+					node.setText(label);
+				}
+				if ((type != null) && (node instanceof DefaultGraphNode)) {
+					((DefaultGraphNode) node).setType(type);
+					retyped = true;
+				}
+			}
+			return node;
+		}
+
+	}
+
+	private static class Token {
+
+		public static final int EOF = -1;
+		public static final int ID = 0;
+		public static final int EDGE_OP = 1;
+
+		private final int type;
+		private final String text;
+		private final boolean quoted;
+
+		public Token(int type, String text, boolean quoted) {
+			this.type = type;
+			this.text = text;
+			this.quoted = quoted;
+		}
+
+		public boolean isKeyword(String keyword) {
+			return (type == ID) && !quoted && keyword.equalsIgnoreCase(text);
+		}
+
+		@Override
+		public String toString() {
+			return (type == ID ? text : (type == EDGE_OP ? "->" : (type == EOF ? "EOF" : String.valueOf((char) type))));
+		}
+
+	}
+
+	/**
+	 * Splits the DOT input into ids, edge operators and punctuation, skipping comments.
+	 * Punctuation tokens use the character as their type.
+	 */
+	private static class DotTokenizer {
+
+		private Reader reader;
+		private int next;
+		private int line;
+		private Token peeked;
+		private StringBuilder buffer;
+
+		public DotTokenizer(Reader reader) throws IOException {
+			this.reader = reader;
+			this.line = 1;
+			this.buffer = new StringBuilder();
+			this.next = reader.read();
+		}
+
+		public Token peek() throws IOException {
+			if (peeked == null) {
+				peeked = readToken();
+			}
+			return peeked;
+		}
+
+		public Token next() throws IOException {
+			Token token = peek();
+			peeked = null;
+			return token;
+		}
+
+		public IOException error(String message) {
+			return new IOException(message + " on line " + line + (peeked != null ? " near " + peeked : ""));
+		}
+
+		private int read() throws IOException {
+			int c = next;
+			next = reader.read();
+			if (c == '\n') {
+				line++;
+			}
+			return c;
+		}
+
+		private Token readToken() throws IOException {
+			skipWhitespaceAndComments();
+			if (next == -1) {
+				return new Token(Token.EOF, null, false);
+			}
+			int c = read();
+			switch (c) {
+				case '{':
+				case '}':
+				case '[':
+				case ']':
+				case ';':
+				case ',':
+				case '=':
+				case ':':
+				case '+':
+					return new Token(c, null, false);
+				case '"':
+					return readQuoted();
+				case '<':
+					return readHtml();
+				case '-':
+					if ((next == '>') || (next == '-')) {
+						read();
+						return new Token(Token.EDGE_OP, null, false);
+					}
+					// a negative number
+					break;
+			}
+			if (!isIdChar(c) && (c != '-')) {
+				throw new IOException("Unexpected character '" + (char) c + "' on line " + line);
+			}
+			buffer.setLength(0);
+			buffer.append((char) c);
+			while (isIdChar(next)) {
+				buffer.append((char) read());
+			}
+			return new Token(Token.ID, buffer.toString(), false);
+		}
+
+		private Token readQuoted() throws IOException {
+			buffer.setLength(0);
+			while ((next != '"') && (next != -1)) {
+				int c = read();
+				if ((c == '\\') && (next == '"')) {
+					c = read();
+				} else if ((c == '\\') && ((next == '\n') || (next == '\r'))) {
+					// line continuation
+					while ((next == '\n') || (next == '\r')) {
+						read();
+					}
+					continue;
+				}
+				buffer.append((char) c);
+			}
+			read();
+			return new Token(Token.ID, buffer.toString(), true);
+		}
+
+		private Token readHtml() throws IOException {
+			buffer.setLength(0);
+			int depth = 1;
+			while (next != -1) {
+				int c = read();
+				if (c == '<') {
+					depth++;
+				} else if ((c == '>') && (--depth == 0)) {
+					break;
+				}
+				buffer.append((char) c);
+			}
+			return new Token(Token.ID, buffer.toString(), true);
+		}
+
+		private void skipWhitespaceAndComments() throws IOException {
+			while (next != -1) {
+				if (Character.isWhitespace(next)) {
+					read();
+				} else if (next == '#') {
+					skipLine();
+				} else if (next == '/') {
+					read();
+					if (next == '/') {
+						skipLine();
+					} else if (next == '*') {
+						read();
+						int previous = 0;
+						while ((next != -1) && !((previous == '*') && (next == '/'))) {
+							previous = read();
+						}
+						read();
+					} else {
+						throw new IOException("Unexpected character '/' on line " + line);
+					}
+				} else {
+					return;
+				}
+			}
+		}
+
+		private void skipLine() throws IOException {
+			while ((next != -1) && (next != '\n')) {
+				read();
+			}
+		}
+
+		private static boolean isIdChar(int c) {
+			return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9'))
+					|| (c == '_') || (c == '.') || (c >= 0x80);
+		}
+
+	}
+
+}
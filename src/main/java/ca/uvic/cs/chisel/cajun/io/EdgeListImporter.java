@@ -0,0 +1,49 @@
+package ca.uvic.cs.chisel.cajun.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * Reads a plain text edge list.  Each line has a source node id, a destination node id and an
+ * optional arc type, separated by tabs or spaces.  A line with a single id adds a node.
+ * Blank lines and lines starting with <code>#</code> are ignored.
+ */
+public class EdgeListImporter extends GraphImporter {
+
+	private Charset charset;
+
+	public EdgeListImporter() {
+		this(Charset.forName("UTF-8"));
+	}
+
+	public EdgeListImporter(Charset charset) {
+		super();
+		this.charset = charset;
+	}
+
+	@Override
+	protected void read(InputStream in, DefaultGraphModel model) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if ((line.length() == 0) || line.startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split("\\s+", 3);
+			GraphNode src = getNode(model, parts[0]);
+			if (parts.length > 1) {
+				GraphNode dest = getNode(model, parts[1]);
+				Object type = (parts.length > 2 ? parts[2] : null);
+				addArc(model, null, src, dest, type);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+package ca.uvic.cs.chisel.cajun.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.zest.layouts.progress.ProgressEvent;
+import org.eclipse.zest.layouts.progress.ProgressListener;
+
+import ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel;
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * Base class for reading a graph file into a {@link DefaultGraphModel}.
+ * <p>
+ * The file is streamed, so only the model grows with the file size.  All the nodes and arcs
+ * are added in one batch update, so the model listeners get a single event at the end.
+ * Progress is reported as the percentage of the input that has been read.
+ * <p>
+ * If the model is already being shown in a graph then the import must run on the event
+ * dispatch thread.
+ */
+public abstract class GraphImporter {
+
+	private static final int TOTAL_STEPS = 100;
+
+	private List<ProgressListener> progressListeners;
+	// the next number to try for each source and destination id with more than one arc
+	private Map<String, Integer> nextArcNumbers;
+
+	public GraphImporter() {
+		this.progressListeners = new ArrayList<ProgressListener>();
+		this.nextArcNumbers = new HashMap<String, Integer>();
+	}
+
+	public void addProgressListener(ProgressListener listener) {
+		if (!progressListeners.contains(listener)) {
+			progressListeners.add(listener);
+		}
+	}
+
+	public void removeProgressListener(ProgressListener listener) {
+		progressListeners.remove(listener);
+	}
+
+	/**
+	 * Reads the file and adds its nodes and arcs to the model.
+	 */
+	public void importGraph(File file, DefaultGraphModel model) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			importGraph(in, file.length(), model);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the stream and adds the nodes and arcs to the model.  The stream isn't closed.
+	 * @param length the number of bytes in the stream, or -1 if not known
+	 */
+	public void importGraph(InputStream in, long length, DefaultGraphModel model) throws IOException {
+		ProgressInputStream progressIn = new ProgressInputStream(new BufferedInputStream(in), length);
+		fireProgressStarted();
+		model.beginUpdate();
+		try {
+			read(progressIn, model);
+		} finally {
+			nextArcNumbers.clear();
+			model.endUpdate();
+			fireProgressEnded();
+		}
+	}
+
+	/**
+	 * Reads the nodes and arcs from the stream into the model.
+	 * This is called inside a batch update.
+	 */
+	protected abstract void read(InputStream in, DefaultGraphModel model) throws IOException;
+
+	/**
+	 * Returns the node with the given id, adding it if it doesn't exist.
+	 * The id is used as the node's user object.
+	 */
+	protected GraphNode getNode(DefaultGraphModel model, String id) {
+		GraphNode node = model.getNode(id);
+		if (node == null) {
+			node = model.addNode(id, id, null, null);
+		}
+		return node;
+	}
+
+	/**
+	 * Adds an arc between the two nodes.  If the id is null or already used by another arc then
+	 * a unique id is made from the source and destination ids.
+	 */
+	protected GraphArc addArc(DefaultGraphModel model, String id, GraphNode src, GraphNode dest, Object type) {
+		if ((id == null) || (model.getArc(id) != null)) {
+			String baseId = src.getUserObject() + "->" + dest.getUserObject();
+			id = baseId;
+			if (model.getArc(id) != null) {
+				// start after the last number used, so many parallel arcs don't try every number
+				Integer next = nextArcNumbers.get(baseId);
+				int i = (next != null ? next.intValue() : 2);
+				for (id = baseId + "#" + i; model.getArc(id) != null; id = baseId + "#" + i) {
+					i++;
+				}
+				nextArcNumbers.put(baseId, Integer.valueOf(i + 1));
+			}
+		}
+		return model.addArc(id, src, dest, type);
+	}
+
+	private void fireProgressStarted() {
+		ProgressEvent event = new ProgressEvent(0, TOTAL_STEPS);
+		for (ProgressListener listener : new ArrayList<ProgressListener>(progressListeners)) {
+			listener.progressStarted(event);
+		}
+	}
+
+	private void fireProgressUpdated(int step) {
+		ProgressEvent event = new ProgressEvent(step, TOTAL_STEPS);
+		for (ProgressListener listener : new ArrayList<ProgressListener>(progressListeners)) {
+			listener.progressUpdated(event);
+		}
+	}
+
+	private void fireProgressEnded() {
+		ProgressEvent event = new ProgressEvent(TOTAL_STEPS, TOTAL_STEPS);
+		for (ProgressListener listener : new ArrayList<ProgressListener>(progressListeners)) {
+			listener.progressEnded(event);
+		}
+	}
+
+	/**
+	 * Counts the bytes read and fires a progress event each time another percent has been read.
+	 */
+	private class ProgressInputStream extends FilterInputStream {
+
+		private final long length;
+		private long bytesRead;
+		private int step;
+
+		public ProgressInputStream(InputStream in, long length) {
+			super(in);
+			this.length = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				bytesRead(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				bytesRead(n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			bytesRead(skipped);
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void bytesRead(long n) {
+			bytesRead += n;
+			if (length > 0) {
+				int newStep = (int) Math.min(TOTAL_STEPS, (bytesRead * TOTAL_STEPS) / length);
+				if (newStep > step) {
+					step = newStep;
+					fireProgressUpdated(step);
+				}
+			}
+		}
+
+	}
+
+}
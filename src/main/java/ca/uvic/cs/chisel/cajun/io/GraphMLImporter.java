@@ -0,0 +1,126 @@
+package ca.uvic.cs.chisel.cajun.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel;
+import ca.uvic.cs.chisel.cajun.graph.node.DefaultGraphNode;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * Reads a GraphML file with a StAX parser.
+ * <p>
+ * The node and edge ids become the user objects.  Data keys whose <code>attr.name</code> is
+ * "label" or "name" set the node text, and keys named "type" set the node or arc type.
+ * For edges a "label" key is used as the arc type if there is no "type" key.
+ * Nested graphs are flattened, a node that contains a nested graph is only added if an edge
+ * refers to it.  Hyperedges are ignored.
+ */
+public class GraphMLImporter extends GraphImporter {
+
+	private static final String LABEL = "label";
+	private static final String NAME = "name";
+	private static final String TYPE = "type";
+
+	@Override
+	protected void read(InputStream in, DefaultGraphModel model) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		// no DTDs or external entities
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+			try {
+				read(reader, model);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Error reading GraphML: " + e.getMessage(), e);
+		}
+	}
+
+	private void read(XMLStreamReader reader, DefaultGraphModel model) throws XMLStreamException {
+		// maps the key ids to their attribute names
+		Map<String, String> keyNames = new HashMap<String, String>();
+
+		// the element being read, only one node or edge is open at a time
+		String nodeId = null;
+		String edgeId = null, edgeSource = null, edgeTarget = null;
+		String label = null, type = null;
+		boolean retyped = false;
+
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String element = reader.getLocalName();
+				if ("key".equals(element)) {
+					String id = reader.getAttributeValue(null, "id");
+					String name = reader.getAttributeValue(null, "attr.name");
+					if ((id != null) && (name != null)) {
+						keyNames.put(id, name.toLowerCase());
+					}
+				} else if ("node".equals(element)) {
+					nodeId = reader.getAttributeValue(null, "id");
+					label = null;
+					type = null;
+				} else if ("edge".equals(element)) {
+					edgeId = reader.getAttributeValue(null, "id");
+					edgeSource = reader.getAttributeValue(null, "source");
+					edgeTarget = reader.getAttributeValue(null, "target");
+					label = null;
+					type = null;
+				} else if ("data".equals(element) && ((nodeId != null) || (edgeSource != null))) {
+					String name = keyNames.get(reader.getAttributeValue(null, "key"));
+					if (LABEL.equals(name) || NAME.equals(name)) {
+						label = reader.getElementText().trim();
+					} else if (TYPE.equals(name)) {
+						type = reader.getElementText().trim();
+					}
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				String element = reader.getLocalName();
+				if ("node".equals(element) && (nodeId != null)) {
+					retyped |= addNode(model, nodeId, label, type);
+					nodeId = null;
+				} else if ("edge".equals(element) && (edgeSource != null) && (edgeTarget != null)) {
+					GraphNode src = getNode(model, edgeSource);
+					GraphNode dest = getNode(model, edgeTarget);
+					addArc(model, edgeId, src, dest, (type != null ? type : label));
+					edgeId = edgeSource = edgeTarget = null;
+				}
+			}
+		}
+		if (retyped) {
+			model.recalculateNodeTypes();
+		}
+	}
+
+	/**
+	 * @return true if the type of an existing node was changed
+	 */
+	private boolean addNode(DefaultGraphModel model, String id, String label, String type) {
+		GraphNode node = model.getNode(id);
+		if (node == null) {
+			model.addNode(id, (label != null ? label : id), null, type);
+		} else {
+			// the node was already added by an edge
+			if (label != null) {
+				node.setText(label);
+			}
+			if ((type != null) && (node instanceof DefaultGraphNode)) {
+				((DefaultGraphNode) node).setType(type);
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,260 @@
+package ca.uvic.cs.chisel.cajun.io;
+
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uvic.cs.chisel.cajun.graph.DefaultGraphModel;
+import ca.uvic.cs.chisel.cajun.graph.GraphModel;
+import ca.uvic.cs.chisel.cajun.graph.arc.GraphArc;
+import ca.uvic.cs.chisel.cajun.graph.node.GraphNode;
+
+/**
+ * Saves a graph model and its node locations to a compact binary file, and restores it without
+ * running a layout.
+ * <p>
+ * The file starts with a magic number and a format version, followed by a table of all the
+ * strings (keys, text and types), then the nodes and then the arcs.  Nodes and arcs refer to
+ * strings by their index in the table, and arcs refer to nodes by their index.
+ * The file is read through a memory mapped {@link FileChannel}.
+ */
+public class GraphSnapshot {
+
+	/** "CAJS" */
+	private static final int MAGIC = 0x43414A53;
+	public static final int VERSION = 1;
+
+	private static final int FLAG_FIXED_LOCATION = 1;
+	private static final int FLAG_INVERTED = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private SnapshotResolver resolver;
+
+	public GraphSnapshot() {
+		this(new DefaultSnapshotResolver());
+	}
+
+	public GraphSnapshot(SnapshotResolver resolver) {
+		if (resolver == null) {
+			throw new NullPointerException("The snapshot resolver can't be null.");
+		}
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Writes all the nodes and arcs in the model, with the node locations, to the file.
+	 */
+	public void save(GraphModel model, File file) throws IOException {
+		GraphNode[] nodes = model.getAllNodes().toArray(new GraphNode[0]);
+		GraphArc[] arcs = model.getAllArcs().toArray(new GraphArc[0]);
+
+		// build the string table first so each string is only written once
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		Map<GraphNode, Integer> nodeIndexes = new IdentityHashMap<GraphNode, Integer>(nodes.length);
+		int[] nodeStrings = new int[nodes.length * 3];
+		for (int i = 0; i < nodes.length; i++) {
+			GraphNode node = nodes[i];
+			nodeIndexes.put(node, i);
+			nodeStrings[3 * i] = addString(strings, resolver.getKey(node.getUserObject()));
+			nodeStrings[3 * i + 1] = addString(strings, node.getText());
+			nodeStrings[3 * i + 2] = addString(strings, resolver.getTypeKey(node.getType()));
+		}
+		int[] arcStrings = new int[arcs.length * 2];
+		for (int i = 0; i < arcs.length; i++) {
+			arcStrings[2 * i] = addString(strings, resolver.getKey(arcs[i].getUserObject()));
+			arcStrings[2 * i + 1] = addString(strings, resolver.getTypeKey(arcs[i].getType()));
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(strings.size());
+			for (String s : strings.keySet()) {
+				byte[] bytes = s.getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeInt(nodes.length);
+			for (int i = 0; i < nodes.length; i++) {
+				GraphNode node = nodes[i];
+				Rectangle2D bounds = node.getBounds();
+				out.writeInt(nodeStrings[3 * i]);
+				out.writeInt(nodeStrings[3 * i + 1]);
+				out.writeInt(nodeStrings[3 * i + 2]);
+				out.writeDouble(bounds.getX());
+				out.writeDouble(bounds.getY());
+				out.writeByte(node.isFixedLocation() ? FLAG_FIXED_LOCATION : 0);
+			}
+
+			out.writeInt(arcs.length);
+			for (int i = 0; i < arcs.length; i++) {
+				GraphArc arc = arcs[i];
+				Integer src = nodeIndexes.get(arc.getSource());
+				Integer dest = nodeIndexes.get(arc.getDestination());
+				if ((src == null) || (dest == null)) {
+					throw new IOException("The arc " + arc + " is connected to a node that isn't in the model");
+				}
+				out.writeInt(arcStrings[2 * i]);
+				out.writeInt(src.intValue());
+				out.writeInt(dest.intValue());
+				out.writeInt(arcStrings[2 * i + 1]);
+				out.writeByte(arc.isInverted() ? FLAG_INVERTED : 0);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static int addString(Map<String, Integer> strings, String s) {
+		if (s == null) {
+			s = "";
+		}
+		Integer index = strings.get(s);
+		if (index == null) {
+			index = strings.size();
+			strings.put(s, index);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Adds the nodes and arcs saved in the file to the model in one batch update, and moves
+	 * the nodes back to their saved locations.  The whole file is read and checked first, so the
+	 * model isn't changed if the file is invalid.
+	 * @throws IOException if the file can't be read, or isn't a valid snapshot
+	 */
+	public void restore(File file, DefaultGraphModel model) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			restore(buffer, model);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void restore(ByteBuffer buffer, DefaultGraphModel model) throws IOException {
+		if (buffer.remaining() < 8) {
+			throw new IOException("Not a graph snapshot file");
+		}
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a graph snapshot file");
+		}
+		int version = buffer.getInt();
+		if (version > VERSION) {
+			throw new IOException("Unsupported graph snapshot version: " + version);
+		}
+
+		// each string has at least its length
+		int stringCount = readCount(buffer, 4, "string");
+		List<String> strings = new ArrayList<String>(stringCount);
+		byte[] bytes = new byte[256];
+		for (int i = 0; i < stringCount; i++) {
+			if (buffer.remaining() < 4) {
+				throw new IOException("The snapshot file is truncated, expected " + stringCount + " strings");
+			}
+			int length = buffer.getInt();
+			if ((length < 0) || (length > buffer.remaining())) {
+				throw new IOException("Invalid string length: " + length);
+			}
+			if (length > bytes.length) {
+				bytes = new byte[Math.max(length, 2 * bytes.length)];
+			}
+			buffer.get(bytes, 0, length);
+			strings.add(new String(bytes, 0, length, UTF8));
+		}
+
+		// three string indexes, the location and the flags
+		int nodeCount = readCount(buffer, 29, "node");
+		Object[] nodeUserObjects = new Object[nodeCount];
+		String[] nodeTexts = new String[nodeCount];
+		Object[] nodeTypes = new Object[nodeCount];
+		double[] nodeLocations = new double[2 * nodeCount];
+		int[] nodeFlags = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			nodeUserObjects[i] = resolver.getUserObject(strings.get(readIndex(buffer, strings.size(), "string")));
+			nodeTexts[i] = strings.get(readIndex(buffer, strings.size(), "string"));
+			nodeTypes[i] = resolver.getType(strings.get(readIndex(buffer, strings.size(), "string")));
+			nodeLocations[2 * i] = buffer.getDouble();
+			nodeLocations[2 * i + 1] = buffer.getDouble();
+			nodeFlags[i] = buffer.get();
+		}
+
+		// a string index, two node indexes, a string index and the flags
+		int arcCount = readCount(buffer, 17, "arc");
+		Object[] arcUserObjects = new Object[arcCount];
+		int[] arcNodes = new int[2 * arcCount];
+		Object[] arcTypes = new Object[arcCount];
+		int[] arcFlags = new int[arcCount];
+		for (int i = 0; i < arcCount; i++) {
+			arcUserObjects[i] = resolver.getUserObject(strings.get(readIndex(buffer, strings.size(), "string")));
+			arcNodes[2 * i] = readIndex(buffer, nodeCount, "node");
+			arcNodes[2 * i + 1] = readIndex(buffer, nodeCount, "node");
+			arcTypes[i] = resolver.getType(strings.get(readIndex(buffer, strings.size(), "string")));
+			arcFlags[i] = buffer.get();
+		}
+
+		model.beginUpdate();
+		try {
+			GraphNode[] nodes = new GraphNode[nodeCount];
+			for (int i = 0; i < nodeCount; i++) {
+				Object userObject = nodeUserObjects[i];
+				GraphNode node = model.addNode(userObject, nodeTexts[i], resolver.getIcon(userObject), nodeTypes[i]);
+				node.setLocation(nodeLocations[2 * i], nodeLocations[2 * i + 1]);
+				node.setFixedLocation((nodeFlags[i] & FLAG_FIXED_LOCATION) != 0);
+				nodes[i] = node;
+			}
+			for (int i = 0; i < arcCount; i++) {
+				GraphArc arc = model.addArc(arcUserObjects[i], nodes[arcNodes[2 * i]], nodes[arcNodes[2 * i + 1]], arcTypes[i]);
+				arc.setInverted((arcFlags[i] & FLAG_INVERTED) != 0);
+			}
+		} finally {
+			model.endUpdate();
+		}
+	}
+
+	/**
+	 * Reads a count, and checks that the buffer has enough bytes left for that many items.
+	 * @param itemSize the smallest number of bytes in each item
+	 */
+	private static int readCount(ByteBuffer buffer, int itemSize, String name) throws IOException {
+		if (buffer.remaining() < 4) {
+			throw new IOException("The snapshot file is truncated, expected the " + name + " count");
+		}
+		int count = buffer.getInt();
+		if ((count < 0) || ((long) count * itemSize > buffer.remaining())) {
+			throw new IOException("Invalid " + name + " count: " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads an index, and checks that it is less than the size.
+	 */
+	private static int readIndex(ByteBuffer buffer, int size, String name) throws IOException {
+		int index = buffer.getInt();
+		if ((index < 0) || (index >= size)) {
+			throw new IOException("Invalid " + name + " index: " + index);
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,32 @@
+package ca.uvic.cs.chisel.cajun.io;
+
+import javax.swing.Icon;
+
+/**
+ * Converts node and arc user objects and types to and from the string keys stored in a
+ * {@link GraphSnapshot}.
+ *
+ * @see DefaultSnapshotResolver
+ */
+public interface SnapshotResolver {
+
+	/**
+	 * @return the key for a node or arc user object, it must be unique within the graph
+	 */
+	public String getKey(Object userObject);
+
+	/**
+	 * @return the node or arc user object for the key
+	 */
+	public Object getUserObject(String key);
+
+	public String getTypeKey(Object type);
+
+	public Object getType(String typeKey);
+
+	/**
+	 * @return the icon for the restored node, can be null
+	 */
+	public Icon getIcon(Object userObject);
+
+}
@@ -0,0 +1,176 @@
+package ca.uvic.cs.chisel.cajun.util;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A copy on write list of listeners.  Adding and removing a listener copies the array, but
+ * firing an event doesn't allocate anything:
+ * <pre>
+ * Object[] array = listeners.getArray();
+ * for (int i = 0; i &lt; array.length; i++) {
+ *     MyListener listener = listeners.get(array, i);
+ *     if (listener != null) {
+ *         listener.somethingChanged(event);
+ *     }
+ * }
+ * </pre>
+ * Listeners added with {@link #addWeak(Object)} are only weakly referenced, so a listener
+ * from a view that was closed without removing it can still be garbage collected.
+ * The garbage collected entries are removed the next time a listener is added or removed.
+ * <p>
+ * Listeners can be added and removed during an event, the event still goes to the listeners
+ * that were in the list when it started.
+ */
+public class ListenerList<T> {
+
+	private static final Object[] EMPTY = new Object[0];
+
+	// holds the listeners, or WeakReferences to them
+	private volatile Object[] listeners;
+
+	public ListenerList() {
+		this.listeners = EMPTY;
+	}
+
+	/**
+	 * Adds the listener if it isn't already in the list.
+	 * @return true if the listener was added
+	 */
+	public boolean add(T listener) {
+		return add(listener, false);
+	}
+
+	/**
+	 * Adds a weak reference to the listener if it isn't already in the list.
+	 * @return true if the listener was added
+	 */
+	public boolean addWeak(T listener) {
+		return add(listener, true);
+	}
+
+	private synchronized boolean add(T listener, boolean weak) {
+		if (listener == null) {
+			throw new NullPointerException("The listener can't be null.");
+		}
+		Object[] array = purge(listeners);
+		if (indexOf(array, listener) != -1) {
+			listeners = array;
+			return false;
+		}
+		Object[] newArray = new Object[array.length + 1];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		newArray[array.length] = (weak ? new WeakReference<T>(listener) : listener);
+		listeners = newArray;
+		return true;
+	}
+
+	/**
+	 * @return true if the listener was removed
+	 */
+	public synchronized boolean remove(T listener) {
+		Object[] array = purge(listeners);
+		int index = indexOf(array, listener);
+		if (index == -1) {
+			listeners = array;
+			return false;
+		}
+		if (array.length == 1) {
+			listeners = EMPTY;
+		} else {
+			Object[] newArray = new Object[array.length - 1];
+			System.arraycopy(array, 0, newArray, 0, index);
+			System.arraycopy(array, index + 1, newArray, index, array.length - index - 1);
+			listeners = newArray;
+		}
+		return true;
+	}
+
+	public synchronized void clear() {
+		listeners = EMPTY;
+	}
+
+	public boolean contains(T listener) {
+		return (listener != null) && (indexOf(listeners, listener) != -1);
+	}
+
+	/**
+	 * @return true if there are no listeners, or only garbage collected weak listeners
+	 */
+	public boolean isEmpty() {
+		Object[] array = listeners;
+		for (int i = 0; i < array.length; i++) {
+			if (get(array, i) != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of listeners, which may include garbage collected weak listeners
+	 */
+	public int size() {
+		return listeners.length;
+	}
+
+	/**
+	 * Returns the current array of listeners.  The array is never changed, adding or removing a
+	 * listener replaces it.  Use {@link #get(Object[], int)} to get the listeners out of it.
+	 * @return the shared array, don't modify it
+	 */
+	public Object[] getArray() {
+		return listeners;
+	}
+
+	/**
+	 * @param array an array returned by {@link #getArray()}
+	 * @return the listener at the index, or null if it was weakly referenced and has been
+	 * garbage collected
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(Object[] array, int index) {
+		Object o = array[index];
+		if (o instanceof WeakReference<?>) {
+			return ((WeakReference<T>) o).get();
+		}
+		return (T) o;
+	}
+
+	private int indexOf(Object[] array, T listener) {
+		for (int i = 0; i < array.length; i++) {
+			if (listener.equals(get(array, i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the array without the garbage collected listeners, or the same array if there
+	 * aren't any
+	 */
+	private Object[] purge(Object[] array) {
+		int count = 0;
+		for (int i = 0; i < array.length; i++) {
+			if (get(array, i) != null) {
+				count++;
+			}
+		}
+		if (count == array.length) {
+			return array;
+		}
+		Object[] newArray = new Object[count];
+		for (int i = 0, j = 0; i < array.length; i++) {
+			if (get(array, i) != null) {
+				newArray[j++] = array[i];
+			}
+		}
+		return newArray;
+	}
+
+	@Override
+	public String toString() {
+		return "ListenerList: " + listeners.length + " listeners";
+	}
+
+}